@@ -0,0 +1,88 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Summarizes the slowest accounts from a recording made with {@code downloads.jfc}: per account, the number
+ * of recorded operations, their total and maximum duration, the slowest operation and its outcome.
+ * <p>
+ * Usage (JDK 21, no build needed): {@code java core/jfr/SlowestAccounts.java downloads.jfr [top]}.
+ */
+public class SlowestAccounts {
+    private static final String PREFIX = "io.github.mat3e.downloads.";
+
+    public static void main(String[] args) throws Exception {
+        var recording = Path.of(args[0]);
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        var accounts = new HashMap<String, AccountStats>();
+        var eventTypes = new TreeMap<String, Integer>();
+        for (var event : RecordingFile.readAllEvents(recording)) {
+            var type = event.getEventType().getName();
+            if (!type.startsWith(PREFIX) || !event.hasField("accountId") || event.getString("accountId") == null) {
+                continue;
+            }
+            eventTypes.merge(type.substring(PREFIX.length()), 1, Integer::sum);
+            accounts.computeIfAbsent(event.getString("accountId"), AccountStats::new).add(event);
+        }
+
+        System.out.println("Recorded events: " + eventTypes);
+        System.out.printf("%-32s %8s %12s %12s  %s%n", "account", "events", "total ms", "max ms", "slowest");
+        accounts.values().stream()
+                .sorted(Comparator.comparing(AccountStats::max).reversed())
+                .limit(top)
+                .forEach(stats -> System.out.printf("%-32s %8d %12.1f %12.1f  %s%n",
+                        stats.accountId,
+                        stats.events,
+                        millis(stats.total),
+                        millis(stats.max),
+                        stats.slowest));
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    private static class AccountStats {
+        private final String accountId;
+        private int events;
+        private Duration total = Duration.ZERO;
+        private Duration max = Duration.ZERO;
+        private String slowest = "";
+
+        AccountStats(String accountId) {
+            this.accountId = accountId;
+        }
+
+        Duration max() {
+            return max;
+        }
+
+        void add(RecordedEvent event) {
+            events++;
+            total = total.plus(event.getDuration());
+            if (event.getDuration().compareTo(max) > 0) {
+                max = event.getDuration();
+                slowest = describe(event);
+            }
+        }
+
+        private static String describe(RecordedEvent event) {
+            List<String> details = new ArrayList<>();
+            details.add(event.getEventType().getName().substring(PREFIX.length()));
+            for (var field : List.of("operation", "eventType", "assetCount", "outcome")) {
+                if (event.hasField(field)) {
+                    details.add(field + "=" + event.getValue(field));
+                }
+            }
+            return String.join(" ", details);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Fires concurrent reads at a running app and samples its threads and database connections meanwhile, to compare
+ * the servlet (JDBC) and the reactive (R2DBC) stacks.
+ * <p>
+ * Usage (JDK 21, no build needed): {@code java core/scripts/LoadTest.java [base url] [concurrent requests]}, with
+ * the app started either the default way or with {@code --spring.profiles.active=reactive}.
+ */
+public class LoadTest {
+    private static final String ASSETS = "/api/accounts/sample-account/assets";
+    private static final Map<String, String> GAUGES = Map.of(
+            "threads", "jvm.threads.live",
+            "jdbc connections", "hikaricp.connections.active",
+            "r2dbc connections", "r2dbc.pool.acquired");
+    private static final Pattern VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+
+    public static void main(String[] args) throws Exception {
+        var baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        var http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        var peaks = new ConcurrentHashMap<String, Double>();
+        var sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> GAUGES.forEach((label, metric) -> sample(http, baseUrl, metric)
+                .ifPresent(value -> peaks.merge(label, value, Math::max))), 0, 50, TimeUnit.MILLISECONDS);
+
+        var latencies = new long[requests];
+        var outcomes = new ConcurrentHashMap<String, AtomicInteger>();
+        var start = new CountDownLatch(1);
+        long began;
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                int request = i;
+                clients.submit(() -> {
+                    start.await();
+                    long sent = System.nanoTime();
+                    String outcome;
+                    try {
+                        outcome = "HTTP " + http.send(
+                                HttpRequest.newBuilder(URI.create(baseUrl + ASSETS)).timeout(Duration.ofMinutes(1)).build(),
+                                BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        outcome = e.getClass().getSimpleName();
+                    }
+                    latencies[request] = System.nanoTime() - sent;
+                    outcomes.computeIfAbsent(outcome, ignored -> new AtomicInteger()).incrementAndGet();
+                    return null;
+                });
+            }
+            began = System.nanoTime();
+            start.countDown();
+        }
+        long took = System.nanoTime() - began;
+        sampler.shutdownNow();
+
+        Arrays.sort(latencies);
+        System.out.printf("%d concurrent requests in %d ms%n", requests, took / 1_000_000);
+        System.out.printf("latency   p50 %6d ms   p99 %6d ms   max %6d ms%n",
+                latencies[requests / 2] / 1_000_000,
+                latencies[(int) (requests * 0.99)] / 1_000_000,
+                latencies[requests - 1] / 1_000_000);
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.printf("%-24s %6d%n", outcome, count.get()));
+        new TreeMap<>(peaks).forEach((label, peak) -> System.out.printf("peak %-19s %6.0f%n", label, peak));
+    }
+
+    private static Optional<Double> sample(HttpClient http, String baseUrl, String metric) {
+        try {
+            var response = http.send(
+                    HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + metric)).build(),
+                    BodyHandlers.ofString());
+            var value = VALUE.matcher(response.body());
+            return response.statusCode() == 200 && value.find()
+                    ? Optional.of(Double.parseDouble(value.group(1)))
+                    : Optional.empty();
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+# Time to the first successful request (actuator health) for default, AOT and AOT+CDS startup of the same jar.
+#
+# Usage (from the repository root):
+#   ./gradlew :core:cdsArchive -PstartupOptimized
+#   core/scripts/startup-benchmark.sh [runs]
+#
+# LAZY=true adds lazy initialization to every mode, APP_ARGS are passed to the app in every run.
+set -euo pipefail
+
+runs=${1:-5}
+port=${PORT:-8080}
+cds_dir="$(dirname "$0")/../build/cds"
+app_args=(--server.port="$port" --spring.kafka.listener.auto-startup=false --spring.kafka.admin.auto-create=false ${APP_ARGS:-})
+if [[ "${LAZY:-false}" == "true" ]]; then
+  app_args+=(--spring.main.lazy-initialization=true)
+fi
+
+cd "$cds_dir"
+jar=$(ls -- *.jar | head -n 1)
+
+# prints milliseconds from start till the first successful request
+measure_once() {
+  local start end pid
+  start=$(date +%s%N)
+  java "$@" -jar "$jar" "${app_args[@]}" > /dev/null 2>&1 &
+  pid=$!
+  until curl -fs "http://localhost:$port/actuator/health" > /dev/null; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "app failed to start: java $* -jar $jar" >&2
+      exit 1
+    fi
+    sleep 0.01
+  done
+  end=$(date +%s%N)
+  kill "$pid"
+  wait "$pid" 2> /dev/null || true
+  echo $(((end - start) / 1000000))
+}
+
+measure() {
+  local mode=$1
+  shift
+  local times=()
+  for ((run = 0; run < runs; run++)); do
+    times+=("$(measure_once "$@")")
+  done
+  local sorted
+  sorted=$(printf '%s\n' "${times[@]}" | sort -n)
+  printf '%-8s median %6d ms   min %6d ms   max %6d ms\n' \
+    "$mode" \
+    "$(echo "$sorted" | sed -n "$(((runs + 1) / 2))p")" \
+    "$(echo "$sorted" | head -n 1)" \
+    "$(echo "$sorted" | tail -n 1)"
+}
+
+measure default
+measure aot -Dspring.aot.enabled=true
+measure aot+cds -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true
@@ -0,0 +1,119 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Loads a million assets (1000 accounts, 1000 assets each, from a catalog of popular assets and ~250 countries) the
+ * way rows come from JDBC: a fresh {@code String} per column. Retained heap per asset is printed after each iteration,
+ * measured against the heap before loading anything, so it includes the {@link CodeDictionary} entries too (created
+ * along with the accounts, the same as {@link StoredCodes} caches fill up along with loading). A single iteration per
+ * fork, so each one starts from an empty heap.
+ * <p>
+ * {@code plain} keeps the previous representation (copies per row), {@code encoded} goes through {@link Account}.
+ */
+@Fork(value = 3, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@State(Scope.Benchmark)
+public class AssetFootprintBenchmark {
+    private static final int ACCOUNTS = 1_000;
+    private static final int ASSETS_PER_ACCOUNT = 1_000;
+    private static final int CATALOG = 20_000;
+    private static final int COUNTRIES = 250;
+
+    @Param({"plain", "encoded"})
+    String representation;
+
+    private List<Object> loaded;
+    private long baseline;
+
+    @Setup(Level.Iteration)
+    public void measureBaseline() {
+        loaded = null;
+        baseline = usedHeap();
+    }
+
+    @Benchmark
+    public List<Object> load() {
+        loaded = new ArrayList<>(ACCOUNTS);
+        var codes = new CodeDictionary();
+        for (int account = 0; account < ACCOUNTS; account++) {
+            loaded.add(switch (representation) {
+                case "plain" -> loadPlain(account);
+                case "encoded" -> loadEncoded(account, codes);
+                default -> throw new IllegalArgumentException(representation);
+            });
+        }
+        return loaded;
+    }
+
+    private static List<PlainDownloadedAsset> loadPlain(int account) {
+        var assets = new ArrayList<PlainDownloadedAsset>(ASSETS_PER_ACCOUNT);
+        for (int i = 0; i < ASSETS_PER_ACCOUNT; i++) {
+            assets.add(new PlainDownloadedAsset(null, assetIdRow(account, i), countryCodeRow(account, i), null));
+        }
+        return assets;
+    }
+
+    private static Account loadEncoded(int account, AssetCodes codes) {
+        var assets = new ArrayList<Asset>(ASSETS_PER_ACCOUNT);
+        for (int i = 0; i < ASSETS_PER_ACCOUNT; i++) {
+            assets.add(Asset.withId(assetIdRow(account, i)).inCountry(countryCodeRow(account, i)));
+        }
+        // Asset instances are just the input here, Account keeps its own DownloadedAsset instances
+        return Account.restore(AccountId.valueOf("account-" + account), assets, ASSETS_PER_ACCOUNT, 0, codes);
+    }
+
+    private static String assetIdRow(int account, int i) {
+        return "asset-" + (account * 31 + i) % CATALOG;
+    }
+
+    private static String countryCodeRow(int account, int i) {
+        int country = (account + i) % COUNTRIES;
+        return new String(new char[]{(char) ('A' + country / 26), (char) ('A' + country % 26)});
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRetainedHeap() {
+        long withAssets = usedHeap();
+        loaded = null;
+        System.out.printf("%n%s: %d bytes retained per asset%n",
+                representation,
+                (withAssets - baseline) / ((long) ACCOUNTS * ASSETS_PER_ACCOUNT));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Shape of {@code DownloadedAsset} before dictionary encoding.
+     */
+    record PlainDownloadedAsset(Integer id, String assetId, String countryCode, Integer version) {
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Cost of the "downloads per 30 days" check for a very large account: {@link SlidingWindowCounter} admission vs
+ * counting download times of the whole {@link Account}, plus rebuilding the counter from the times once.
+ */
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@State(Scope.Benchmark)
+public class DownloadWindowBenchmark {
+    private static final Duration WINDOW = Duration.ofDays(30);
+    private static final long NOW = Instant.parse("2024-06-01T00:00:00Z").toEpochMilli();
+
+    @Param({"10000"})
+    int assets;
+
+    private Account account;
+    private List<Instant> downloadTimes;
+    private SlidingWindowCounter counter;
+
+    @Setup(Level.Trial)
+    public void load() {
+        var random = new SplittableRandom(42);
+        var assigned = new ArrayList<Asset>(assets);
+        downloadTimes = new ArrayList<>(assets);
+        for (int i = 0; i < assets; i++) {
+            assigned.add(Asset.withId("asset-" + i).inCountry("US"));
+            // spread over the last 90 days, so about a third is within the window
+            downloadTimes.add(Instant.ofEpochMilli(NOW - random.nextLong(3 * WINDOW.toMillis())));
+        }
+        account = Account.restore(
+                AccountId.valueOf("benchmark"),
+                assigned,
+                downloadTimes,
+                assets,
+                0,
+                new CodeDictionary());
+        counter = rebuildCounter();
+    }
+
+    @Benchmark
+    public boolean counterAdmission() {
+        boolean admitted = counter.tryAdd(NOW, Integer.MAX_VALUE);
+        counter.remove(NOW);
+        return admitted;
+    }
+
+    @Benchmark
+    public long scanAdmission() {
+        var from = Instant.ofEpochMilli(NOW).minus(WINDOW);
+        return account.downloadTimes().stream().filter(downloadedAt -> !downloadedAt.isBefore(from)).count();
+    }
+
+    @Benchmark
+    public SlidingWindowCounter counterRebuild() {
+        return rebuildCounter();
+    }
+
+    private SlidingWindowCounter rebuildCounter() {
+        var rebuilt = new SlidingWindowCounter(WINDOW, 30, NOW);
+        long from = rebuilt.windowStart(NOW);
+        for (var downloadedAt : downloadTimes) {
+            if (downloadedAt.toEpochMilli() >= from) {
+                rebuilt.add(downloadedAt.toEpochMilli());
+            }
+        }
+        return rebuilt;
+    }
+}
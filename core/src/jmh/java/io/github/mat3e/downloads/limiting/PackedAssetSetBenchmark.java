@@ -0,0 +1,116 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Lookup latency of {@link PackedAssetSet} vs the previous list of row objects scanned linearly, at the size of very
+ * large accounts. Retained heap per asset of both is printed on setup.
+ */
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@State(Scope.Benchmark)
+public class PackedAssetSetBenchmark {
+    private static final int COUNTRIES = 250;
+
+    @Param({"10000", "50000"})
+    int assets;
+
+    private PackedAssetSet packed;
+    private final CodeDictionary codes = new CodeDictionary();
+    private List<PlainDownloadedAsset> plain;
+    private Asset[] lookedUp;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void load() {
+        long before = usedHeap();
+        plain = new ArrayList<>(assets);
+        for (int i = 0; i < assets; i++) {
+            plain.add(new PlainDownloadedAsset(i, "asset-" + i, country(i), 0));
+        }
+        long withPlain = usedHeap();
+        packed = new PackedAssetSet(assets);
+        for (int i = 0; i < assets; i++) {
+            packed.add(pack("asset-" + i, country(i)));
+        }
+        long withPacked = usedHeap();
+        System.out.printf("%nbytes per asset: plain %d, packed %d%n",
+                (withPlain - before) / assets,
+                (withPacked - withPlain) / assets);
+
+        var random = new SplittableRandom(42);
+        lookedUp = new Asset[1024];
+        for (int i = 0; i < lookedUp.length; i++) {
+            int asset = random.nextInt(assets);
+            // every other lookup misses: same asset, different country
+            lookedUp[i] = Asset.withId("asset-" + asset).inCountry(country(asset + i % 2));
+        }
+    }
+
+    @Benchmark
+    public boolean packedContains() {
+        var asset = nextLookedUp();
+        return packed.contains(pack(asset.getId(), asset.getCountryCode()));
+    }
+
+    @Benchmark
+    public int[] packedOtherCountries() {
+        var asset = nextLookedUp();
+        return packed.otherCountries(pack(asset.getId(), asset.getCountryCode()));
+    }
+
+    @Benchmark
+    public boolean plainContains() {
+        var asset = nextLookedUp();
+        return plain.stream().anyMatch(existing -> existing.assetId().equals(asset.getId())
+                && existing.countryCode().equals(asset.getCountryCode()));
+    }
+
+    private Asset nextLookedUp() {
+        return lookedUp[next++ & (lookedUp.length - 1)];
+    }
+
+    private long pack(String assetId, String countryCode) {
+        return PackedAssetSet.pack(codes.encodeAsset(assetId), codes.encodeCountry(countryCode));
+    }
+
+    private static String country(int i) {
+        int country = i % COUNTRIES;
+        return new String(new char[]{(char) ('A' + country / 26), (char) ('A' + country % 26)});
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Shape of {@code DownloadedAsset} kept per asset before packing.
+     */
+    record PlainDownloadedAsset(Integer id, String assetId, String countryCode, Integer version) {
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.DownloadsApplication;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Compares storage modes behind the same {@link LimitingFacade}, e.g. {@code ./gradlew :core:jmh}.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MICROSECONDS)
+@Threads(4)
+public class StorageBenchmark {
+    private static final int PRELOADED_ASSETS = 100;
+
+    @State(Scope.Benchmark)
+    public static class App {
+        @Param({"aggregate", "packed-blob", "journal", "mvstore"})
+        String storage;
+
+        ConfigurableApplicationContext context;
+        LimitingFacade limiting;
+        final AtomicInteger accounts = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            var directory = Files.createTempDirectory("storage-benchmark");
+            context = new SpringApplicationBuilder(DownloadsApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "downloads.limiting.storage=" + storage,
+                            "downloads.limiting.journal.directory=" + directory.resolve("journal"),
+                            "downloads.limiting.mvstore.file=" + directory.resolve("accounts.mv"),
+                            // file database, the same as the embedded deployment from application.yaml
+                            "spring.datasource.url=jdbc:h2:file:" + directory.resolve("benchmark") + ";CASE_INSENSITIVE_IDENTIFIERS=TRUE",
+                            "spring.kafka.listener.auto-startup=false",
+                            "spring.kafka.admin.auto-create=false",
+                            "logging.level.root=WARN")
+                    .run();
+            limiting = context.getBean(LimitingFacade.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Downloader {
+        AccountId id;
+        int downloads;
+
+        @Setup(Level.Trial)
+        public void create(App app) {
+            id = AccountId.valueOf("benchmark-" + app.accounts.incrementAndGet());
+            app.limiting.overrideAccountLimit(id, PRELOADED_ASSETS + 1);
+            for (int i = 0; i < PRELOADED_ASSETS; i++) {
+                app.limiting.assignDownloadedAsset(id, Asset.withId("preloaded-" + i).inCountry("US"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void assignAndRemove(App app, Downloader downloader) {
+        var asset = Asset.withId("asset-" + downloader.downloads++).inCountry("US");
+        app.limiting.assignDownloadedAsset(downloader.id, asset);
+        app.limiting.removeDownloadedAsset(downloader.id, asset);
+    }
+
+    @Benchmark
+    public Optional<List<Asset>> findForAccount(App app, Downloader downloader) {
+        return app.limiting.findForAccount(downloader.id);
+    }
+}
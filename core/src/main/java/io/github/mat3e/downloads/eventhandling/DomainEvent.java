@@ -5,6 +5,13 @@ import java.time.Instant;
 public interface DomainEvent {
     Instant occurredOn();
 
+    /**
+     * @return id of the aggregate (e.g. account) the event is about, if any
+     */
+    default String aggregateId() {
+        return null;
+    }
+
     default boolean suspicious() {
         return false;
     }
@@ -0,0 +1,71 @@
+package io.github.mat3e.downloads.eventhandling;
+
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Runs tasks concurrently on a pool of workers, but one after another for the same key (e.g. the same aggregate).
+ * <p>
+ * Tasks for the same key are chained, so a slow or failing task delays just the later tasks for its key. Retries wait
+ * without occupying the workers.
+ */
+public class KeyOrderedExecutor<K> implements AutoCloseable {
+    private final ExecutorService workers;
+    private final Map<K, CompletableFuture<Void>> lastTaskByKey = new ConcurrentHashMap<>();
+
+    public KeyOrderedExecutor(int workers) {
+        this.workers = Executors.newFixedThreadPool(workers);
+    }
+
+    public CompletableFuture<Void> execute(K key, Runnable task) {
+        return chain(key, () -> CompletableFuture.runAsync(task, workers));
+    }
+
+    public CompletableFuture<Void> execute(K key, Runnable task, BackOff backOff, Predicate<Throwable> retryable) {
+        return chain(key, () -> retrying(task, backOff.start(), retryable, workers));
+    }
+
+    private CompletableFuture<Void> chain(K key, Supplier<CompletableFuture<Void>> execution) {
+        var chained = lastTaskByKey.compute(key, (ignored, previous) -> previous == null
+                ? execution.get()
+                : previous.<Void>handle((result, failure) -> null).thenCompose(ignoredResult -> execution.get()));
+        chained.whenComplete((result, failure) -> lastTaskByKey.remove(key, chained));
+        return chained;
+    }
+
+    private CompletableFuture<Void> retrying(
+            Runnable task,
+            BackOffExecution backOff,
+            Predicate<Throwable> retryable,
+            Executor executor) {
+        return CompletableFuture.runAsync(task, executor).exceptionallyCompose(failure -> {
+            var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            long delay = retryable.test(cause) ? backOff.nextBackOff() : BackOffExecution.STOP;
+            if (delay == BackOffExecution.STOP) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            return retrying(task, backOff, retryable, CompletableFuture.delayedExecutor(delay, MILLISECONDS, workers));
+        });
+    }
+
+    int pendingKeys() {
+        return lastTaskByKey.size();
+    }
+
+    @Override
+    public void close() {
+        workers.close();
+    }
+}
@@ -10,6 +10,13 @@ public class BusinessException extends RuntimeException {
     public BusinessException(String message) {
         super(message);
     }
+
+    /**
+     * @return whether the exception signals a missing resource, i.e. gets {@code 404 Not Found} via REST API
+     */
+    public boolean isNotFound() {
+        return false;
+    }
 }
 
 class EntityNotFoundException extends BusinessException {
@@ -17,6 +24,11 @@ class EntityNotFoundException extends BusinessException {
         super(capitalize(entityName) + " with id " + id + " not found");
     }
 
+    @Override
+    public boolean isNotFound() {
+        return true;
+    }
+
     private static String capitalize(String entityName) {
         return entityName.substring(0, 1).toUpperCase(Locale.ENGLISH) + entityName.substring(1).toLowerCase(Locale.ENGLISH);
     }
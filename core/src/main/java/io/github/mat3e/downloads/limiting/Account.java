@@ -4,105 +4,276 @@ import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
 import io.github.mat3e.downloads.limiting.api.AccountId;
 import io.github.mat3e.downloads.limiting.api.Asset;
 import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.InsertOnlyProperty;
 import org.springframework.data.relational.core.mapping.MappedCollection;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.Clock;
+import java.time.Instant;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.toUnmodifiableList;
+import static java.util.Collections.nCopies;
+import static java.util.Collections.unmodifiableList;
 
-@AllArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Table("downloading_accounts")
 class Account {
+    /* stamp of assets assigned before download times were recorded */
+    private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+    /* never packed, as codes are non-negative */
+    private static final long NOT_HELD = -1L;
+
+    static Account restore(AccountId id, List<Asset> assets, int limit, int version, AssetCodes codes) {
+        return restore(id, assets, nCopies(assets.size(), null), limit, version, codes);
+    }
+
+    /**
+     * @param downloadTimes aligned with {@code assets}, {@code null} when unknown
+     */
+    static Account restore(
+            AccountId id,
+            List<Asset> assets,
+            List<Instant> downloadTimes,
+            int limit,
+            int version,
+            AssetCodes codes) {
+        var rows = new ArrayList<DownloadedAsset>(assets.size());
+        for (int i = 0; i < assets.size(); i++) {
+            rows.add(DownloadedAsset.newFrom(assets.get(i), downloadTimes.get(i)));
+        }
+        return new Account(id.getId(), rows, limit, version, codes);
+    }
 
     @Id
     @EqualsAndHashCode.Include
     private final String id;
+    /* always DownloadedAssets, see the constructor */
     @MappedCollection(idColumn = "account")
     private final List<DownloadedAsset> assets;
+    /* read along with assets, but owned (and versioned) by AccountSetting */
+    @InsertOnlyProperty
     @Column("limitation")
     private final Integer limit;
     @Version
     private final Integer version;
+    /* read along with the limit, never written; see sourceVersion() */
+    @ReadOnlyProperty
+    @Column("limit_version")
+    private Integer limitVersion;
+    @Transient
+    private final AssetCodes codes;
+
+    /**
+     * @param codes the {@link StoredCodes} bean when read by Spring Data
+     */
+    Account(
+            String id,
+            List<DownloadedAsset> assets,
+            Integer limit,
+            Integer version,
+            @Value("#{@storedCodes}") AssetCodes codes) {
+        this.id = id;
+        this.assets = new DownloadedAssets(assets, codes);
+        this.limit = limit;
+        this.version = version;
+        this.codes = codes;
+    }
+
+    /* withers for Spring Data, as it can't pass the codes to the constructor when setting generated values */
+    Account withAssets(List<DownloadedAsset> assets) {
+        return copy(assets, version);
+    }
+
+    Account withVersion(Integer version) {
+        return copy(assets, version);
+    }
 
     AccountId id() {
         return AccountId.valueOf(id);
     }
 
+    Integer limit() {
+        return limit;
+    }
+
+    Integer version() {
+        return version;
+    }
+
+    /**
+     * @return version of the whole row, growing with every change of either the assets or the limit
+     */
+    int sourceVersion() {
+        return (version == null ? 0 : version) + (limitVersion == null ? 0 : limitVersion);
+    }
+
+    int assetCount() {
+        return packedAssets().size();
+    }
+
     List<Asset> assets() {
-        return assets.stream()
-                .map(downloadedAsset -> Asset.withId(downloadedAsset.assetId).inCountry(downloadedAsset.countryCode))
-                .collect(toUnmodifiableList());
+        var packedAssets = packedAssets();
+        var result = new ArrayList<Asset>(packedAssets.size());
+        for (int position = 0; position < packedAssets.size(); position++) {
+            long asset = packedAssets.get(position);
+            result.add(Asset.withId(codes.decodeAsset(PackedAssetSet.assetCode(asset)))
+                    .inCountry(codes.decodeCountry(PackedAssetSet.countryCode(asset))));
+        }
+        return unmodifiableList(result);
+    }
+
+    /**
+     * @return when each of {@link #assets()} was assigned, {@code null} for assets assigned before it was recorded
+     */
+    List<Instant> downloadTimes() {
+        var packedAssets = packedAssets();
+        var result = new ArrayList<Instant>(packedAssets.size());
+        for (int position = 0; position < packedAssets.size(); position++) {
+            result.add(downloadTime(packedAssets.stamp(position)));
+        }
+        return unmodifiableList(result);
     }
 
     List<SuspiciousLimitingEvent> assignAsset(Asset asset, Clock clock) {
-        if (alreadyHas(asset)) {
+        if (packedAssets().contains(find(asset))) {
             return List.of(SuspiciousLimitingEvent.assetDuplicated(clock, id(), asset));
         }
-        if (assets.size() >= limit) {
+        if (packedAssets().size() >= limit) {
             throw new AccountLimitExceeded(limit);
         }
-        var events = new ArrayList<SuspiciousLimitingEvent>();
-        findSimilarTo(asset).forEach(downloadedAsset -> events.add(SuspiciousLimitingEvent.assetAlreadyInDifferentCountry(
-                clock,
-                id(),
-                asset,
-                downloadedAsset.countryCode)));
-        assets.add(DownloadedAsset.newFrom(asset));
+        // encoded just when stored, as encoded values are never evicted
+        long packedAsset = pack(asset);
+        var events = Arrays.stream(packedAssets().otherCountries(packedAsset))
+                .mapToObj(existingCountry -> SuspiciousLimitingEvent.assetAlreadyInDifferentCountry(
+                        clock,
+                        id(),
+                        asset,
+                        codes.decodeCountry(existingCountry)))
+                .toList();
+        packedAssets().add(packedAsset, clock.millis());
         return events;
     }
 
-    private Stream<DownloadedAsset> findSimilarTo(Asset asset) {
-        return assets.stream().filter(existingAsset -> existingAsset.hasSameIdAndDifferentCountryAs(asset));
-    }
-
-    private boolean alreadyHas(Asset asset) {
-        return assets.stream().anyMatch(existingAsset -> existingAsset.hasSameIdAndCountryAs(asset));
-    }
-
     List<SuspiciousLimitingEvent> unassignAsset(Asset downloadedAsset, Clock clock) {
-        boolean anyRemoved = assets.removeIf(existingAsset -> existingAsset.hasSameIdAndCountryAs(downloadedAsset));
+        boolean anyRemoved = packedAssets().remove(find(downloadedAsset));
         if (anyRemoved) {
             return emptyList();
         }
         return List.of(SuspiciousLimitingEvent.unnecessaryRemoval(clock, id(), downloadedAsset));
     }
 
+    /**
+     * Removes the assets unless downloaded later than found expired, e.g. removed and downloaded again since then.
+     *
+     * @return number of removed assets
+     */
+    int expireAssets(List<ExpiredAsset> expired) {
+        var expiredAt = new HashMap<Long, Long>(expired.size());
+        for (var asset : expired) {
+            long packedAsset = find(asset.asset());
+            if (packedAsset != NOT_HELD) {
+                expiredAt.merge(packedAsset, asset.downloadedAt().toEpochMilli(), Math::max);
+            }
+        }
+        if (expiredAt.isEmpty()) {
+            return 0;
+        }
+        return packedAssets().removeAll((packedAsset, stamp) -> {
+            var downloadedAt = expiredAt.get(packedAsset);
+            return downloadedAt != null && stamp <= downloadedAt;
+        });
+    }
+
+    private Account copy(List<DownloadedAsset> assets, Integer version) {
+        var copy = new Account(id, assets, limit, version, codes);
+        copy.limitVersion = limitVersion;
+        return copy;
+    }
+
+    private PackedAssetSet packedAssets() {
+        return ((DownloadedAssets) assets).packed;
+    }
+
+    private static Instant downloadTime(long stamp) {
+        return stamp == UNKNOWN_TIME ? null : Instant.ofEpochMilli(stamp);
+    }
+
+    private long pack(Asset asset) {
+        return PackedAssetSet.pack(codes.encodeAsset(asset.getId()), codes.encodeCountry(asset.getCountryCode()));
+    }
+
+    /* without registering anything, so lookups of arbitrary assets don't grow the dictionaries */
+    private long find(Asset asset) {
+        int assetCode = codes.findAsset(asset.getId());
+        int countryCode = codes.findCountry(asset.getCountryCode());
+        if (assetCode == AssetCodes.ABSENT || countryCode == AssetCodes.ABSENT) {
+            return NOT_HELD;
+        }
+        return PackedAssetSet.pack(assetCode, countryCode);
+    }
+
+    /**
+     * Assets kept packed, with {@link DownloadedAsset} rows materialized just when Spring Data writes them.
+     */
+    private static class DownloadedAssets extends AbstractList<DownloadedAsset> {
+        private final PackedAssetSet packed;
+        private final AssetCodes codes;
+
+        DownloadedAssets(List<DownloadedAsset> rows, AssetCodes codes) {
+            this.codes = codes;
+            packed = new PackedAssetSet(rows.size());
+            rows.forEach(row -> packed.add(
+                    row.packed(codes),
+                    row.downloadedAt == null ? UNKNOWN_TIME : row.downloadedAt.toEpochMilli()));
+        }
+
+        @Override
+        public DownloadedAsset get(int index) {
+            long asset = packed.get(index);
+            return new DownloadedAsset(
+                    null,
+                    codes.decodeAsset(PackedAssetSet.assetCode(asset)),
+                    codes.decodeCountry(PackedAssetSet.countryCode(asset)),
+                    downloadTime(packed.stamp(index)),
+                    null);
+        }
+
+        @Override
+        public int size() {
+            return packed.size();
+        }
+    }
+
     @RequiredArgsConstructor
     @Table("downloaded_assets")
     private static class DownloadedAsset {
-        static DownloadedAsset newFrom(Asset asset) {
-            return new DownloadedAsset(null, asset.getId(), asset.getCountryCode(), null);
+        static DownloadedAsset newFrom(Asset asset, Instant downloadedAt) {
+            return new DownloadedAsset(null, asset.getId(), asset.getCountryCode(), downloadedAt, null);
         }
 
         @Id
         private final Integer id;
         private final String assetId;
         private final String countryCode;
+        private final Instant downloadedAt;
         @Version
         private final Integer version;
 
-        boolean hasSameIdAndDifferentCountryAs(Asset asset) {
-            return hasSameIdAs(asset) && !countryCode.equals(asset.getCountryCode());
-        }
-
-        boolean hasSameIdAndCountryAs(Asset asset) {
-            return hasSameIdAs(asset) && countryCode.equals(asset.getCountryCode());
-        }
-
-        private boolean hasSameIdAs(Asset asset) {
-            return assetId.equals(asset.getId());
+        long packed(AssetCodes codes) {
+            return PackedAssetSet.pack(codes.encodeAsset(assetId), codes.encodeCountry(countryCode));
         }
     }
 }
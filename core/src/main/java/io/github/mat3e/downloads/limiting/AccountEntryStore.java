@@ -0,0 +1,93 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.AccountJournal.Entry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * Embedded storage keeping each account as a single {@link Entry}, outside the database.
+ * <p>
+ * Versions are checked per entry, the same way as {@code @Version} columns are checked in the database.
+ */
+interface AccountEntryStore extends AutoCloseable {
+    Optional<Entry> find(String id);
+
+    /**
+     * @param change gets the existing entry (or {@code null}) and returns the same instance when nothing changes
+     */
+    Entry write(String id, UnaryOperator<Entry> change);
+
+    /**
+     * @return codes of the assets of the entries, owned by the store
+     */
+    AssetCodes codes();
+
+    default AccountRepository accounts() {
+        return new EntryAccountRepository(this);
+    }
+
+    default AccountSettingRepository settings() {
+        return new EntryAccountSettingRepository(this);
+    }
+
+    @Override
+    void close();
+}
+
+@RequiredArgsConstructor
+class EntryAccountRepository implements AccountRepository {
+    private final AccountEntryStore store;
+
+    @Override
+    public Account save(Account account) {
+        var id = account.id().getId();
+        return store.write(id, existing -> {
+            if (account.version() == null) {
+                if (existing != null) {
+                    throw new DuplicateKeyException("Account " + id + " already exists");
+                }
+                return Entry.newAccount(id, account.limit(), account.assets());
+            }
+            if (existing == null || existing.version() != account.version()) {
+                throw new OptimisticLockingFailureException("Account " + id + " changed meanwhile");
+            }
+            return existing.withAssets(account.assets());
+        }).toAccount(store.codes());
+    }
+
+    @Override
+    public Optional<Account> findById(String id) {
+        return store.find(id).map(entry -> entry.toAccount(store.codes()));
+    }
+}
+
+@RequiredArgsConstructor
+class EntryAccountSettingRepository implements AccountSettingRepository {
+    private final AccountEntryStore store;
+
+    @Override
+    public boolean upsertLimit(AccountSetting setting) {
+        var changed = new AtomicBoolean();
+        store.write(setting.id().getId(), existing -> {
+            if (existing != null && existing.limit() == setting.limit()) {
+                return existing;
+            }
+            changed.set(true);
+            return existing == null
+                    ? Entry.newAccount(setting.id().getId(), setting.limit(), List.of())
+                    : existing.withLimit(setting.limit());
+        });
+        return changed.get();
+    }
+
+    @Override
+    public Optional<AccountSetting> findById(String id) {
+        return store.find(id).map(Entry::toSetting);
+    }
+}
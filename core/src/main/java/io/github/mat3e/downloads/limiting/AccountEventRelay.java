@@ -0,0 +1,91 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.event.out.AssetChangeLogged;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Passes {@link AccountEventStore} log to {@link ReportingFacade} incrementally, as {@link AssetChangeLogged}.
+ * <p>
+ * Position is kept in {@code account_event_readers}, starting from the end of the log the first time, so restarts
+ * continue where the last run stopped. Events are read once they are {@code settle} old, as appends running
+ * concurrently can commit lower positions later. When instances relay concurrently, the one which moves the position
+ * first wins, the other stops, but the events it passed meanwhile are passed twice (consumers tell them by position).
+ */
+@Slf4j
+class AccountEventRelay implements AutoCloseable {
+    private static final int CHUNK_SIZE = 500;
+    private static final String READER = "reporting";
+
+    private final AccountEventStore store;
+    private final ReportingFacade reporting;
+    private final Clock clock;
+    private final Duration settle;
+    private final ScheduledExecutorService scheduler;
+
+    AccountEventRelay(
+            AccountEventStore store,
+            ReportingFacade reporting,
+            Clock clock,
+            Duration settle,
+            Duration interval) {
+        this.store = store;
+        this.reporting = reporting;
+        this.clock = clock;
+        this.settle = settle;
+        store.readPosition(READER);
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("account-event-relay").factory());
+        scheduler.scheduleWithFixedDelay(this::relaySafely, interval.toMillis(), interval.toMillis(), MILLISECONDS);
+    }
+
+    /**
+     * @return how many events were passed
+     */
+    synchronized int relay() {
+        var notAfter = clock.instant().minus(settle);
+        long position = store.readPosition(READER);
+        int relayed = 0;
+        int read;
+        do {
+            var events = store.after(position, notAfter, CHUNK_SIZE);
+            if (events.isEmpty()) {
+                break;
+            }
+            events.forEach(event -> reporting.recordEvent(new AssetChangeLogged(
+                    event.position(),
+                    event.accountId(),
+                    event.asset(),
+                    event.type() == AccountEvent.Type.ASSIGNED,
+                    event.occurredAt())));
+            long next = events.getLast().position();
+            if (!store.moveReadPosition(READER, position, next)) {
+                log.warn("Account events relayed concurrently from " + position + ", stopping");
+                return relayed + events.size();
+            }
+            position = next;
+            read = events.size();
+            relayed += read;
+        } while (read == CHUNK_SIZE);
+        return relayed;
+    }
+
+    private void relaySafely() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            log.error("Relaying account events failed, will retry from the last relayed position", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+}
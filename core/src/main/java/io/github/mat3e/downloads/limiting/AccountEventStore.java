@@ -0,0 +1,288 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A single change of the assets of an account, as appended to {@code account_events}.
+ *
+ * @param position global order of the log, for reading it incrementally
+ * @param version  of the account after the change
+ */
+record AccountEvent(long position, AccountId accountId, int version, Type type, Asset asset, Instant occurredAt) {
+    enum Type {ASSIGNED, UNASSIGNED}
+
+    static AccountEvent assigned(Asset asset, Instant occurredAt) {
+        return new AccountEvent(0, null, 0, Type.ASSIGNED, asset, occurredAt);
+    }
+
+    static AccountEvent unassigned(Asset asset, Instant occurredAt) {
+        return new AccountEvent(0, null, 0, Type.UNASSIGNED, asset, occurredAt);
+    }
+}
+
+/**
+ * Event-sourced storage of assets: each change is appended to {@code account_events}, an account is the latest
+ * {@code account_snapshots} entry ({@link AssetBlob}) replayed with the events after it. A snapshot is written every
+ * {@code snapshotEvery} events, which caps the replay.
+ * <p>
+ * Limits stay in {@code downloading_accounts} ({@link AccountSettingRepository}). Each event carries the version of the
+ * account after it, so concurrent appends for the same version fail on the unique key.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class AccountEventStore implements AccountSource {
+    private static final String SELECT_LIMIT = "select limitation from downloading_accounts where id = :id";
+    private static final String SELECT_SNAPSHOT = """
+            select version, packed_assets from account_snapshots
+            where account = :id""";
+    private static final String SELECT_TAIL = """
+            select id, account, version, type, asset_id, country_code, occurred_at from account_events
+            where account = :id and version > :after
+            order by version""";
+    private static final String SELECT_AFTER = """
+            select id, account, version, type, asset_id, country_code, occurred_at from account_events
+            where id > :after
+            order by id
+            limit :limit""";
+    private static final String LAST_POSITION = "select coalesce(max(id), 0) from account_events";
+    private static final String SELECT_READ = "select last_id from account_event_readers where reader = :reader";
+    private static final String INSERT_READ = """
+            insert into account_event_readers (reader, last_id)
+            values (:reader, :position)""";
+    private static final String UPDATE_READ = """
+            update account_event_readers
+            set last_id = :position
+            where reader = :reader and last_id = :expected""";
+    private static final String INSERT_EVENT = """
+            insert into account_events (account, version, type, asset_id, country_code, occurred_at)
+            values (:id, :version, :type, :assetId, :countryCode, :occurredAt)""";
+    private static final String UPDATE_SNAPSHOT = """
+            update account_snapshots
+            set version = :version, packed_assets = :packedAssets
+            where account = :id and version < :version""";
+    private static final String INSERT_SNAPSHOT = """
+            insert into account_snapshots (account, version, packed_assets)
+            values (:id, :version, :packedAssets)""";
+
+    private final NamedParameterJdbcOperations jdbc;
+    private final TransactionOperations transactions;
+    private final StoredCodes codes;
+    private final int snapshotEvery;
+
+    @Override
+    public Optional<Account> findById(String id) {
+        var params = Map.of("id", id);
+        return jdbc.queryForList(SELECT_LIMIT, params, Integer.class).stream().findFirst().map(limit -> {
+            var state = new LinkedHashMap<Asset, Instant>();
+            int version = jdbc.query(SELECT_SNAPSHOT, params, (row, number) -> {
+                var snapshot = AssetBlob.read(row.getBytes("packed_assets"), codes);
+                for (int i = 0; i < snapshot.assets().size(); i++) {
+                    state.put(snapshot.assets().get(i), snapshot.downloadTimes().get(i));
+                }
+                return row.getInt("version");
+            }).stream().findFirst().orElse(0);
+            for (var event : jdbc.query(SELECT_TAIL, Map.of("id", id, "after", version), AccountEventStore::event)) {
+                switch (event.type()) {
+                    case ASSIGNED -> state.put(event.asset(), event.occurredAt());
+                    case UNASSIGNED -> state.remove(event.asset());
+                }
+                version = event.version();
+            }
+            return Account.restore(
+                    AccountId.valueOf(id),
+                    new ArrayList<>(state.keySet()),
+                    new ArrayList<>(state.values()),
+                    limit,
+                    version,
+                    codes);
+        });
+    }
+
+    /**
+     * @param changed account after the changes, still with the version it was loaded with
+     * @throws OptimisticLockingFailureException when anything was appended for the account meanwhile
+     */
+    void append(Account changed, List<AccountEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        var id = changed.id().getId();
+        int version = changed.version();
+        var batch = new MapSqlParameterSource[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            var event = events.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("id", id)
+                    .addValue("version", ++version)
+                    .addValue("type", event.type().name())
+                    .addValue("assetId", event.asset().getId())
+                    .addValue("countryCode", event.asset().getCountryCode())
+                    .addValue("occurredAt", Timestamp.from(event.occurredAt()));
+        }
+        try {
+            transactions.executeWithoutResult(status -> jdbc.batchUpdate(INSERT_EVENT, batch));
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException("Account " + id + " changed meanwhile", e);
+        }
+        if (version / snapshotEvery > changed.version() / snapshotEvery) {
+            snapshot(changed, version);
+        }
+    }
+
+    /**
+     * @return events appended to the log after the given position, oldest first, up to the first one which occurred
+     * after {@code notAfter}: appends running at the moment can still take lower positions, so nothing behind it is
+     * settled either
+     */
+    List<AccountEvent> after(long position, Instant notAfter, int limit) {
+        var events = jdbc.query(SELECT_AFTER, Map.of("after", position, "limit", limit), AccountEventStore::event);
+        var settled = new ArrayList<AccountEvent>(events.size());
+        for (var event : events) {
+            if (event.occurredAt().isAfter(notAfter)) {
+                break;
+            }
+            settled.add(event);
+        }
+        return settled;
+    }
+
+    /**
+     * @return position the reader has read the log up to, the end of the log for a new reader
+     */
+    long readPosition(String reader) {
+        var params = Map.of("reader", reader);
+        return jdbc.queryForList(SELECT_READ, params, Long.class).stream().findFirst().orElseGet(() -> {
+            long last = jdbc.queryForObject(LAST_POSITION, Map.of(), Long.class);
+            try {
+                jdbc.update(INSERT_READ, Map.of("reader", reader, "position", last));
+                return last;
+            } catch (DuplicateKeyException startedConcurrently) {
+                return jdbc.queryForObject(SELECT_READ, params, Long.class);
+            }
+        });
+    }
+
+    /**
+     * @return whether the position moved, i.e. no other instance of the reader moved it since {@code expected}
+     */
+    boolean moveReadPosition(String reader, long expected, long position) {
+        return jdbc.update(UPDATE_READ, Map.of("reader", reader, "expected", expected, "position", position)) == 1;
+    }
+
+    /* just caps the replay, so failing doesn't fail the change */
+    private void snapshot(Account changed, int version) {
+        var params = Map.<String, Object>of(
+                "id", changed.id().getId(),
+                "version", version,
+                "packedAssets", new AssetBlob(changed.assets(), changed.downloadTimes()).toBytes(codes));
+        try {
+            if (jdbc.update(UPDATE_SNAPSHOT, params) == 0) {
+                jdbc.update(INSERT_SNAPSHOT, params);
+            }
+        } catch (DuplicateKeyException newerSnapshot) {
+            // written concurrently, for the same or a later version
+        } catch (DataAccessException e) {
+            log.warn("Snapshot of account " + changed.id() + " not written: " + e.getMessage());
+        }
+    }
+
+    private static AccountEvent event(ResultSet row, int number) throws SQLException {
+        return new AccountEvent(
+                row.getLong("id"),
+                AccountId.valueOf(row.getString("account")),
+                row.getInt("version"),
+                AccountEvent.Type.valueOf(row.getString("type")),
+                Asset.withId(row.getString("asset_id")).inCountry(row.getString("country_code")),
+                row.getTimestamp("occurred_at").toInstant());
+    }
+}
+
+/**
+ * Lets {@link Account} decide, like {@link AggregateAssetAssignment}, but instead of saving the whole account appends
+ * what changed to {@link AccountEventStore}.
+ */
+@RequiredArgsConstructor
+class EventSourcedAssetAssignment implements AssetAssignment {
+    private final Clock clock;
+    private final AccountEventStore store;
+
+    @Override
+    public List<SuspiciousLimitingEvent> assign(AccountId accountId, Asset asset) {
+        return appending(accountId, account -> account.assignAsset(asset, clock))
+                .orElseThrow(() -> BusinessException.notFound("Account", accountId.getId()));
+    }
+
+    @Override
+    public List<SuspiciousLimitingEvent> unassign(AccountId accountId, Asset asset) {
+        return appending(accountId, account -> account.unassignAsset(asset, clock))
+                .orElseThrow(() -> BusinessException.notFound("Account", accountId.getId()));
+    }
+
+    @Override
+    public AssignedBatch assignAll(AccountId accountId, List<Asset> assets) {
+        return appending(accountId, account -> {
+            var batch = new AssignedBatch();
+            assets.forEach(asset -> batch.assign(asset, () -> account.assignAsset(asset, clock)));
+            return batch;
+        }).orElseGet(() -> AssignedBatch.allRejected(
+                assets,
+                BusinessException.notFound("Account", accountId.getId())));
+    }
+
+    @Override
+    public int unassignAll(AccountId accountId, List<ExpiredAsset> expired) {
+        return appending(accountId, account -> account.expireAssets(expired)).orElse(0);
+    }
+
+    private <T> Optional<T> appending(AccountId accountId, Function<Account, T> accountCommand) {
+        return AccountStorageEvent.load(store, accountId).map(account -> {
+            var before = account.assets();
+            var result = accountCommand.apply(account);
+            store.append(account, changes(before, account));
+            return result;
+        });
+    }
+
+    /* assets are only appended or removed, so comparing the sets is enough */
+    private List<AccountEvent> changes(List<Asset> before, Account after) {
+        var now = clock.instant();
+        var assetsAfter = after.assets();
+        var kept = new HashSet<>(assetsAfter);
+        var events = new ArrayList<AccountEvent>();
+        before.stream()
+                .filter(asset -> !kept.contains(asset))
+                .forEach(removed -> events.add(AccountEvent.unassigned(removed, now)));
+        var existing = new HashSet<>(before);
+        var downloadTimes = after.downloadTimes();
+        for (int i = 0; i < assetsAfter.size(); i++) {
+            if (!existing.contains(assetsAfter.get(i))) {
+                events.add(AccountEvent.assigned(assetsAfter.get(i), downloadTimes.get(i)));
+            }
+        }
+        return events;
+    }
+}
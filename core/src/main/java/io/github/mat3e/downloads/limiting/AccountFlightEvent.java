@@ -0,0 +1,102 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Java Flight Recorder event about a single account. Fields are filled just when the event is enabled or going to be
+ * committed, so with recording off it costs about as much as the (usually eliminated) allocation.
+ * <p>
+ * Usage: {@code start(...)} of a subclass, then {@link #record(Supplier, ToIntFunction)}.
+ */
+@Category({"Downloads", "Limiting"})
+@StackTrace(false)
+abstract class AccountFlightEvent extends Event {
+    static final String OK = "ok";
+
+    @Label("Operation")
+    String operation;
+    @Label("Account Id")
+    String accountId;
+    @Label("Asset Count")
+    @Description("Assets returned by or passed to the operation, for storage: assets of the account")
+    int assetCount;
+    @Label("Outcome")
+    @Description("ok or the simple name of the exception, e.g. AccountLimitExceeded")
+    String outcome;
+
+    void begin(String operation, AccountId accountId) {
+        if (isEnabled()) {
+            this.operation = operation;
+            this.accountId = accountId.getId();
+            begin();
+        }
+    }
+
+    /**
+     * Runs the action as the event, {@code assetCount} is applied to its result just when the event is recorded.
+     */
+    <T> T record(Supplier<T> action, ToIntFunction<T> assetCount) {
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException | Error failure) {
+            if (shouldCommit()) {
+                outcome = failure.getClass().getSimpleName();
+                commit();
+            }
+            throw failure;
+        }
+        if (shouldCommit()) {
+            this.assetCount = assetCount.applyAsInt(result);
+            outcome = OK;
+            commit();
+        }
+        return result;
+    }
+}
+
+@Name(LimitingOperationEvent.NAME)
+@Label("Limiting Operation")
+@Description("LimitingFacade call")
+class LimitingOperationEvent extends AccountFlightEvent {
+    static final String NAME = "io.github.mat3e.downloads.LimitingOperation";
+
+    static LimitingOperationEvent start(String operation, AccountId accountId) {
+        var event = new LimitingOperationEvent();
+        event.begin(operation, accountId);
+        return event;
+    }
+}
+
+@Name(AccountStorageEvent.NAME)
+@Label("Account Storage")
+@Description("Loading or saving the whole Account aggregate")
+class AccountStorageEvent extends AccountFlightEvent {
+    static final String NAME = "io.github.mat3e.downloads.AccountStorage";
+
+    static Optional<Account> load(AccountSource repository, AccountId accountId) {
+        return start("load", accountId).record(
+                () -> repository.findById(accountId),
+                found -> found.map(Account::assetCount).orElse(0));
+    }
+
+    static Account save(AccountRepository repository, Account account) {
+        return start("save", account.id()).record(() -> repository.save(account), Account::assetCount);
+    }
+
+    private static AccountStorageEvent start(String operation, AccountId accountId) {
+        var event = new AccountStorageEvent();
+        event.begin(operation, accountId);
+        return event;
+    }
+}
@@ -0,0 +1,263 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only, memory-mapped log of {@link JournalAccountStore} entries, compacted into snapshots.
+ * <p>
+ * Each record holds the whole new state of an entry: {@code [length][checksum][sequence][entry]}. Replaying starts
+ * from the last snapshot and stops at the first torn record or at the first one which doesn't continue the sequence
+ * (leftovers from before the last compaction).
+ */
+class AccountJournal implements AutoCloseable {
+    private static final String JOURNAL_FILE = "accounts.journal";
+    private static final String SNAPSHOT_FILE = "accounts.snapshot";
+    private static final int INITIAL_CAPACITY = 16 * 1024 * 1024;
+    /* length, checksum and sequence */
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+
+    private final Path directory;
+    private final boolean syncOnWrite;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long sequence;
+
+    AccountJournal(Path directory, boolean syncOnWrite) {
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        try {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(directory.resolve(JOURNAL_FILE), CREATE, READ, WRITE);
+            buffer = channel.map(READ_WRITE, 0, Math.max(channel.size(), INITIAL_CAPACITY));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param codes giving the canonical instances of replayed asset ids and country codes
+     */
+    synchronized void replay(AssetCodes codes, Consumer<Entry> consumer) {
+        long snapshotSequence = replaySnapshot(codes, consumer);
+        sequence = snapshotSequence;
+        buffer.position(0);
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            long recordSequence = buffer.getLong();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            var payload = new byte[length];
+            buffer.get(payload);
+            if (checksum != checksum(recordSequence, payload)) {
+                buffer.position(start);
+                break;
+            }
+            if (recordSequence <= snapshotSequence) {
+                continue;
+            }
+            if (recordSequence != sequence + 1) {
+                buffer.position(start);
+                break;
+            }
+            consumer.accept(Entry.read(payload, codes));
+            sequence = recordSequence;
+        }
+    }
+
+    private long replaySnapshot(AssetCodes codes, Consumer<Entry> consumer) {
+        var snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            long snapshotSequence = input.readLong();
+            int entries = input.readInt();
+            for (int i = 0; i < entries; i++) {
+                consumer.accept(Entry.read(input, codes));
+            }
+            return snapshotSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void append(Entry entry) {
+        var payload = entry.toBytes();
+        long recordSequence = sequence + 1;
+        ensureCapacity(HEADER_BYTES + payload.length + Integer.BYTES);
+        int start = buffer.position();
+        buffer.putInt(payload.length)
+                .putLong(checksum(recordSequence, payload))
+                .putLong(recordSequence)
+                .put(payload);
+        // marks the end, so replaying doesn't even look at the leftovers after compaction
+        buffer.putInt(buffer.position(), 0);
+        if (syncOnWrite) {
+            buffer.force(start, buffer.position() - start);
+        }
+        sequence = recordSequence;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        int position = buffer.position();
+        try {
+            buffer.force();
+            buffer = channel.map(READ_WRITE, 0, Math.max(2L * buffer.capacity(), position + bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.position(position);
+    }
+
+    /**
+     * Writes all the entries as a new snapshot and starts the journal over. Entries must not change meanwhile.
+     */
+    synchronized void compact(Collection<Entry> entries) {
+        var snapshot = directory.resolve(SNAPSHOT_FILE);
+        var tempSnapshot = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (var file = new FileOutputStream(tempSnapshot.toFile());
+             var output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeLong(sequence);
+            output.writeInt(entries.size());
+            for (var entry : entries) {
+                entry.write(output);
+            }
+            output.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tempSnapshot, snapshot, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.position(0);
+        buffer.putInt(0, 0);
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long checksum(long recordSequence, byte[] payload) {
+        var crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (recordSequence >>> shift));
+        }
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    /**
+     * State of a single account. Limit and assets are versioned independently, the same as in the database.
+     */
+    record Entry(String id, int limit, int limitVersion, int version, List<Asset> assets) {
+        static Entry newAccount(String id, int limit, List<Asset> assets) {
+            return new Entry(id, limit, 0, 0, List.copyOf(assets));
+        }
+
+        static Entry read(byte[] payload, AssetCodes codes) {
+            try {
+                return read(new DataInputStream(new ByteArrayInputStream(payload)), codes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static Entry read(DataInput input, AssetCodes codes) throws IOException {
+            var id = input.readUTF();
+            int limit = input.readInt();
+            int limitVersion = input.readInt();
+            int version = input.readInt();
+            int assetCount = input.readInt();
+            var assets = new ArrayList<Asset>(assetCount);
+            for (int i = 0; i < assetCount; i++) {
+                var assetId = codes.decodeAsset(codes.encodeAsset(input.readUTF()));
+                assets.add(Asset.withId(assetId).inCountry(codes.decodeCountry(codes.encodeCountry(input.readUTF()))));
+            }
+            return new Entry(id, limit, limitVersion, version, List.copyOf(assets));
+        }
+
+        Entry withLimit(int newLimit) {
+            return new Entry(id, newLimit, limitVersion + 1, version, assets);
+        }
+
+        Entry withAssets(List<Asset> newAssets) {
+            return new Entry(id, limit, limitVersion, version + 1, List.copyOf(newAssets));
+        }
+
+        Account toAccount(AssetCodes codes) {
+            return Account.restore(AccountId.valueOf(id), assets, limit, version, codes);
+        }
+
+        AccountSetting toSetting() {
+            return new AccountSetting(id, limit, limitVersion);
+        }
+
+        byte[] toBytes() {
+            var bytes = new ByteArrayOutputStream();
+            try (var output = new DataOutputStream(bytes)) {
+                write(output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private void write(DataOutput output) throws IOException {
+            output.writeUTF(id);
+            output.writeInt(limit);
+            output.writeInt(limitVersion);
+            output.writeInt(version);
+            output.writeInt(assets.size());
+            for (var asset : assets) {
+                output.writeUTF(asset.getId());
+                output.writeUTF(asset.getCountryCode());
+            }
+        }
+    }
+}
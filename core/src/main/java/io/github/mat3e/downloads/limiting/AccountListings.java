@@ -0,0 +1,237 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.eventhandling.KeyOrderedExecutor;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Read model of accounts: assets (as {@link AssetBlob}), limit and asset count in a single {@code account_listings}
+ * row, so {@link LimitingFacade#findForAccount} is a primary key lookup which doesn't touch the tables written by
+ * the changes.
+ * <p>
+ * {@link LimitingFacade} reports each changed account, its listing is refreshed asynchronously from the source, one
+ * refresh at a time per account. A listing keeps the version of the source it was built from, so a refresh which read
+ * the source before another one (e.g. a retry) never overwrites a newer listing. Listings are stale meanwhile:
+ * {@code account.listings.staleness} is how long the oldest change not refreshed yet waits,
+ * {@code account.listings.lag} how long changes take to get refreshed. When a refresh keeps failing, the listing is
+ * dropped, so reads fall back to the source rather than stay stale.
+ */
+@Slf4j
+class AccountListings implements AutoCloseable {
+    private static final String FIND = "select packed_assets from account_listings where account = :id";
+    private static final String UPDATE = """
+            update account_listings
+            set limitation = :limit, asset_count = :assetCount, packed_assets = :packedAssets,
+                refreshed_at = :refreshedAt, version = :version
+            where account = :id""";
+    private static final String REFRESH = UPDATE + " and version < :version";
+    /* rows changed behind the facade keep their version, so rebuild rewrites listings of the same one */
+    private static final String REBUILD = UPDATE + " and version <= :version";
+    private static final String INSERT = """
+            insert into account_listings (account, limitation, asset_count, packed_assets, refreshed_at, version)
+            values (:id, :limit, :assetCount, :packedAssets, :refreshedAt, :version)""";
+    private static final String DELETE = "delete from account_listings where account = :id";
+    private static final String SOURCE = """
+            select a.id, a.limitation, coalesce(a.version, 0) + a.limit_version as source_version,
+                d.asset_id, d.country_code, d.downloaded_at
+            from downloading_accounts a left join downloaded_assets d on d.account = a.id
+            order by a.id, d.downloading_accounts_key""";
+
+    private final AccountSource source;
+    private final NamedParameterJdbcOperations jdbc;
+    private final StoredCodes codes;
+    private final Clock clock;
+    private final KeyOrderedExecutor<AccountId> refreshes;
+    /* System.nanoTime() of the oldest change not refreshed yet, per account */
+    private final Map<AccountId, Long> pendingSince = new ConcurrentHashMap<>();
+    private final Timer lag;
+
+    AccountListings(
+            AccountSource source,
+            NamedParameterJdbcOperations jdbc,
+            StoredCodes codes,
+            Clock clock,
+            int workers,
+            MeterRegistry meterRegistry) {
+        this.source = source;
+        this.jdbc = jdbc;
+        this.codes = codes;
+        this.clock = clock;
+        refreshes = new KeyOrderedExecutor<>(workers);
+        lag = Timer.builder("account.listings.lag")
+                .description("Time from changing an account till its listing is refreshed")
+                .register(meterRegistry);
+        Gauge.builder("account.listings.staleness", this, AccountListings::stalenessSeconds)
+                .description("How long the oldest change not reflected in the listings waits")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("account.listings.pending", pendingSince, Map::size)
+                .description("Accounts with changes not reflected in their listings yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return assets of the account, empty when the account has no listing (yet)
+     */
+    Optional<List<Asset>> find(AccountId accountId) {
+        return jdbc.query(FIND, Map.of("id", accountId.getId()), (row, number) -> row.getBytes("packed_assets"))
+                .stream()
+                .findFirst()
+                .map(bytes -> AssetBlob.read(bytes, codes).assets());
+    }
+
+    void changed(AccountId accountId) {
+        pendingSince.putIfAbsent(accountId, System.nanoTime());
+        var backOff = new ExponentialBackOff(100, 2);
+        backOff.setMaxAttempts(5);
+        refreshes.execute(accountId, () -> refresh(accountId), backOff, DataAccessException.class::isInstance)
+                .whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        log.warn("Listing of account " + accountId + " not refreshed, dropping it", failure);
+                        drop(accountId);
+                    }
+                });
+    }
+
+    /**
+     * Writes listings of all the accounts again, streaming the source tables. Listings refreshed from a newer version
+     * of the source meanwhile are left as they are.
+     *
+     * @param streaming JDBC operations with a fetch size set, so rows are not read all at once
+     * @return how many listings were written
+     */
+    int rebuild(JdbcOperations streaming) {
+        var rebuilt = new int[1];
+        var current = new RebuiltAccount[1];
+        streaming.query(SOURCE, row -> {
+            var id = row.getString("id");
+            if (current[0] == null || !current[0].id.equals(id)) {
+                if (current[0] != null && rebuildOne(current[0])) {
+                    rebuilt[0]++;
+                }
+                current[0] = new RebuiltAccount(
+                        id,
+                        row.getObject("limitation", Integer.class),
+                        row.getInt("source_version"));
+            }
+            var assetId = row.getString("asset_id");
+            if (assetId != null) {
+                var downloadedAt = row.getTimestamp("downloaded_at");
+                current[0].assets.add(Asset.withId(assetId).inCountry(row.getString("country_code")));
+                current[0].downloadTimes.add(downloadedAt == null ? null : downloadedAt.toInstant());
+            }
+        });
+        if (current[0] != null && rebuildOne(current[0])) {
+            rebuilt[0]++;
+        }
+        log.info("Rebuilt " + rebuilt[0] + " account listings");
+        return rebuilt[0];
+    }
+
+    private void refresh(AccountId accountId) {
+        Long since = pendingSince.remove(accountId);
+        source.findById(accountId).ifPresentOrElse(
+                account -> {
+                    var params = params(
+                            accountId.getId(),
+                            account.limit(),
+                            account.sourceVersion(),
+                            new AssetBlob(account.assets(), account.downloadTimes()));
+                    // nothing updated when missing (inserted then) or already at this or a newer version
+                    if (jdbc.update(REFRESH, params) == 0) {
+                        try {
+                            jdbc.update(INSERT, params);
+                        } catch (DuplicateKeyException insertedMeanwhile) {
+                            jdbc.update(REFRESH, params);
+                        }
+                    }
+                },
+                () -> drop(accountId));
+        if (since != null) {
+            lag.record(System.nanoTime() - since, NANOSECONDS);
+        }
+    }
+
+    private boolean rebuildOne(RebuiltAccount account) {
+        var params = params(
+                account.id,
+                account.limit,
+                account.version,
+                new AssetBlob(account.assets, account.downloadTimes));
+        if (jdbc.update(REBUILD, params) > 0) {
+            return true;
+        }
+        try {
+            return jdbc.update(INSERT, params) > 0;
+        } catch (DuplicateKeyException refreshedMeanwhile) {
+            return false;
+        }
+    }
+
+    /**
+     * @param limit {@code null} for accounts without one yet
+     */
+    private Map<String, Object> params(String id, Integer limit, int version, AssetBlob assets) {
+        var params = new HashMap<String, Object>();
+        params.put("id", id);
+        params.put("limit", limit);
+        params.put("version", version);
+        params.put("assetCount", assets.assets().size());
+        params.put("packedAssets", assets.toBytes(codes));
+        params.put("refreshedAt", Timestamp.from(clock.instant()));
+        return params;
+    }
+
+    private void drop(AccountId accountId) {
+        try {
+            jdbc.update(DELETE, Map.of("id", accountId.getId()));
+        } catch (DataAccessException e) {
+            log.error("Stale listing of account " + accountId + " not dropped", e);
+        }
+    }
+
+    private double stalenessSeconds() {
+        long now = System.nanoTime();
+        return pendingSince.values().stream()
+                .mapToLong(since -> now - since)
+                .max()
+                .orElse(0) / 1e9;
+    }
+
+    @Override
+    public void close() {
+        refreshes.close();
+    }
+
+    private record RebuiltAccount(
+            String id,
+            Integer limit,
+            int version,
+            List<Asset> assets,
+            List<Instant> downloadTimes) {
+        RebuiltAccount(String id, Integer limit, int version) {
+            this(id, limit, version, new ArrayList<>(), new ArrayList<>());
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package io.github.mat3e.downloads.limiting;
 
 import io.github.mat3e.downloads.limiting.api.AccountId;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.Repository;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
-interface AccountRepository extends Repository<Account, String> {
-    Account save(Account account);
-
+/**
+ * Reading side of {@link AccountRepository}, for storages changing accounts in other ways (e.g. appending events).
+ */
+interface AccountSource {
     default Optional<Account> findById(AccountId id) {
         return findById(id.getId());
     }
@@ -15,12 +21,70 @@ interface AccountRepository extends Repository<Account, String> {
     Optional<Account> findById(String id);
 }
 
-interface AccountSettingRepository extends Repository<AccountSetting, String> {
-    AccountSetting save(AccountSetting account);
+interface AccountRepository extends Repository<Account, String>, AccountSource {
+    Account save(Account account);
+
+    @Override
+    Optional<Account> findById(String id);
+}
 
+interface AccountSettingRepository extends Repository<AccountSetting, String>, LimitUpsert {
     default Optional<AccountSetting> findById(AccountId id) {
         return findById(id.getId());
     }
 
     Optional<AccountSetting> findById(String id);
 }
+
+interface LimitUpsert {
+    /**
+     * Inserts or updates the limit with a single statement, matching the existing row only when the limit differs.
+     *
+     * @return whether anything changed
+     */
+    boolean upsertLimit(AccountSetting setting);
+}
+
+interface DownloadTimes {
+    /**
+     * @return when the account downloaded anything, just at or after {@code from}, in any order; assets removed
+     * since then included
+     */
+    List<Instant> since(AccountId accountId, Instant from);
+
+    void record(AccountId accountId, Instant downloadedAt);
+
+    /**
+     * @return how many downloads were forgotten
+     */
+    int forgetBefore(Instant before);
+}
+
+interface DownloadTimeRepository extends Repository<Account, String>, DownloadTimes {
+    @Override
+    default List<Instant> since(AccountId accountId, Instant from) {
+        return findDownloadTimes(accountId.getId(), Timestamp.from(from)).stream().map(Timestamp::toInstant).toList();
+    }
+
+    @Override
+    default void record(AccountId accountId, Instant downloadedAt) {
+        insertDownload(accountId.getId(), Timestamp.from(downloadedAt));
+    }
+
+    @Override
+    default int forgetBefore(Instant before) {
+        return deleteDownloadsBefore(Timestamp.from(before));
+    }
+
+    /* range scan of download_log_in_time index */
+    @Query("select downloaded_at from download_log where account = :accountId and downloaded_at >= :from")
+    List<Timestamp> findDownloadTimes(String accountId, Timestamp from);
+
+    @Modifying
+    @Query("insert into download_log (account, downloaded_at) values (:accountId, :downloadedAt)")
+    void insertDownload(String accountId, Timestamp downloadedAt);
+
+    @Modifying
+    @Query("delete from download_log where downloaded_at < :before")
+    int deleteDownloadsBefore(Timestamp before);
+}
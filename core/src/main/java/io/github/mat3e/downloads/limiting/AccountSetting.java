@@ -22,8 +22,9 @@ class AccountSetting {
     @EqualsAndHashCode.Include
     private final String id;
     @Column("limitation")
-    private Integer limit;
+    private final Integer limit;
     @Version
+    @Column("limit_version")
     private final Integer version;
 
     AccountId id() {
@@ -34,9 +35,8 @@ class AccountSetting {
         return limit;
     }
 
-    void overrideLimit(int newLimit) {
-        assertAllowedLimit(newLimit);
-        this.limit = newLimit;
+    Integer version() {
+        return version;
     }
 
     private static void assertAllowedLimit(int limit) {
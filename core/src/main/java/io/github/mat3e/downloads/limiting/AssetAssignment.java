@@ -0,0 +1,116 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.LimitingFacade.RejectedAsset;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Storage strategy for changing {@link Account}'s assets, including the limit decision.
+ */
+interface AssetAssignment {
+    List<SuspiciousLimitingEvent> assign(AccountId accountId, Asset asset);
+
+    List<SuspiciousLimitingEvent> unassign(AccountId accountId, Asset asset);
+
+    default AssignedBatch assignAll(AccountId accountId, List<Asset> assets) {
+        var batch = new AssignedBatch();
+        assets.forEach(asset -> batch.assign(asset, () -> assign(accountId, asset)));
+        return batch;
+    }
+
+    /**
+     * Removes many expired assets of the same account at once, skipping the ones already gone and the ones downloaded
+     * again after {@link ExpiredAsset#downloadedAt()} (i.e. after they were found expired).
+     *
+     * @return how many assets were actually removed
+     */
+    int unassignAll(AccountId accountId, List<ExpiredAsset> expired);
+
+    /**
+     * Result of assigning many assets to the same account, where rejections are collected rather than thrown.
+     */
+    record AssignedBatch(List<SuspiciousLimitingEvent> events, List<RejectedAsset> rejections) {
+        static AssignedBatch allRejected(List<Asset> assets, BusinessException reason) {
+            var batch = new AssignedBatch();
+            assets.forEach(asset -> batch.rejections.add(new RejectedAsset(asset, reason)));
+            return batch;
+        }
+
+        AssignedBatch() {
+            this(new ArrayList<>(), new ArrayList<>());
+        }
+
+        void assign(Asset asset, Supplier<List<SuspiciousLimitingEvent>> assignment) {
+            try {
+                events.addAll(assignment.get());
+            } catch (BusinessException rejection) {
+                rejections.add(new RejectedAsset(asset, rejection));
+            }
+        }
+    }
+}
+
+/**
+ * Default strategy: load the whole {@link Account}, let it decide and save it back ({@code @Version} catches races).
+ */
+@RequiredArgsConstructor
+class AggregateAssetAssignment implements AssetAssignment {
+    private final Clock clock;
+    private final AccountRepository accountRepository;
+
+    @Override
+    public List<SuspiciousLimitingEvent> assign(AccountId accountId, Asset asset) {
+        return saving(accountId, account -> account.assignAsset(asset, clock));
+    }
+
+    @Override
+    public List<SuspiciousLimitingEvent> unassign(AccountId accountId, Asset asset) {
+        return saving(accountId, account -> account.unassignAsset(asset, clock));
+    }
+
+    @Override
+    public AssignedBatch assignAll(AccountId accountId, List<Asset> assets) {
+        return AccountStorageEvent.load(accountRepository, accountId)
+                .map(account -> {
+                    var batch = new AssignedBatch();
+                    assets.forEach(asset -> batch.assign(asset, () -> account.assignAsset(asset, clock)));
+                    AccountStorageEvent.save(accountRepository, account);
+                    return batch;
+                })
+                .orElseGet(() -> AssignedBatch.allRejected(
+                        assets,
+                        BusinessException.notFound("Account", accountId.getId())));
+    }
+
+    @Override
+    public int unassignAll(AccountId accountId, List<ExpiredAsset> expired) {
+        return AccountStorageEvent.load(accountRepository, accountId)
+                .map(account -> {
+                    int removed = account.expireAssets(expired);
+                    if (removed > 0) {
+                        AccountStorageEvent.save(accountRepository, account);
+                    }
+                    return removed;
+                })
+                .orElse(0);
+    }
+
+    private List<SuspiciousLimitingEvent> saving(
+            AccountId accountId,
+            Function<Account, List<SuspiciousLimitingEvent>> accountCommand) {
+        var account = AccountStorageEvent.load(accountRepository, accountId)
+                .orElseThrow(() -> BusinessException.notFound("Account", accountId.getId()));
+        var events = accountCommand.apply(account);
+        AccountStorageEvent.save(accountRepository, account);
+        return events;
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.mat3e.downloads.limiting;
+
+/**
+ * Dictionary encoding of asset ids and country codes: each distinct value gets a non-negative code and a single
+ * canonical instance, shared by all the loaded accounts instead of a copy per asset ({@link PackedAssetSet}).
+ * <p>
+ * Just the values of stored assets should be encoded - lookups and removals of arbitrary values go through the
+ * {@code find} methods, which don't register anything.
+ */
+interface AssetCodes {
+    int ABSENT = -1;
+
+    /**
+     * @return code of the asset id, registered when seen for the first time
+     */
+    int encodeAsset(String assetId);
+
+    /**
+     * @return code of the asset id or {@link #ABSENT} when it was never encoded (so nothing can hold it)
+     */
+    int findAsset(String assetId);
+
+    String decodeAsset(int code);
+
+    /**
+     * @return code of the country, registered when seen for the first time
+     */
+    int encodeCountry(String countryCode);
+
+    /**
+     * @return code of the country or {@link #ABSENT} when it was never encoded (so nothing can hold it)
+     */
+    int findCountry(String countryCode);
+
+    String decodeCountry(int code);
+}
@@ -0,0 +1,88 @@
+package io.github.mat3e.downloads.limiting;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link AssetCodes}, for whatever goes without the {@link StoredCodes} lookup tables: a single
+ * {@link AccountEntryStore} kept outside the database or a single account loaded without blocking. Codes are dense
+ * and local to the instance.
+ * <p>
+ * Values are never evicted, but just the values of stored assets are encoded, so the dictionary is bounded by what
+ * its owner ever held, the same as the lookup tables.
+ */
+final class CodeDictionary implements AssetCodes {
+    private final Values assetIds = new Values();
+    private final Values countryCodes = new Values();
+
+    @Override
+    public int encodeAsset(String assetId) {
+        return assetIds.encode(assetId);
+    }
+
+    @Override
+    public int findAsset(String assetId) {
+        return assetIds.find(assetId);
+    }
+
+    @Override
+    public String decodeAsset(int code) {
+        return assetIds.decode(code);
+    }
+
+    @Override
+    public int encodeCountry(String countryCode) {
+        return countryCodes.encode(countryCode);
+    }
+
+    @Override
+    public int findCountry(String countryCode) {
+        return countryCodes.find(countryCode);
+    }
+
+    @Override
+    public String decodeCountry(int code) {
+        return countryCodes.decode(code);
+    }
+
+    private static final class Values {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[16];
+        private int size;
+
+        int encode(String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null can't be encoded");
+            }
+            var code = codes.get(value);
+            return code != null ? code : register(value);
+        }
+
+        int find(String value) {
+            if (value == null) {
+                return ABSENT;
+            }
+            var code = codes.get(value);
+            return code != null ? code : ABSENT;
+        }
+
+        String decode(int code) {
+            return values[code];
+        }
+
+        private synchronized int register(String value) {
+            var existing = codes.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size] = value;
+            // published after the value, so whoever gets the code can decode it
+            codes.put(value, size);
+            return size++;
+        }
+    }
+}
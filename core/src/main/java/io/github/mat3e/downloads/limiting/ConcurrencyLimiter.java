@@ -0,0 +1,222 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit of concurrent calls to {@link LimitingFacade}, so a slow database gets fewer calls at once instead of
+ * a growing queue for its connection pool.
+ * <p>
+ * AIMD on measured latency: a call slower than {@code latencyThreshold} (or failing other than with a
+ * {@link BusinessException}) cuts the limit by {@code backoffRatio}, a fast call made while the limit was at least half
+ * used raises it by one in every {@code limit} calls, i.e. by about one per "round". Writes can take the whole limit,
+ * reads just up to {@code readShare} of it (at least a single call), so writes get through first when overloaded.
+ */
+public class ConcurrencyLimiter {
+    public enum Priority {WRITE, READ}
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final double readShare;
+    private final Duration retryAfter;
+    private final Duration maxWait;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Counter readsShed;
+    private final Counter writesShed;
+    private double limit;
+    private int inFlight;
+
+    ConcurrencyLimiter(Settings settings, MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(Settings settings, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        minLimit = settings.minLimit();
+        maxLimit = settings.maxLimit();
+        latencyThresholdNanos = settings.latencyThreshold().toNanos();
+        backoffRatio = settings.backoffRatio();
+        readShare = settings.readShare();
+        retryAfter = settings.retryAfter();
+        maxWait = settings.maxWait();
+        this.nanoTime = nanoTime;
+        limit = settings.initialLimit();
+        Gauge.builder("limiting.concurrency.limit", this, ConcurrencyLimiter::limit)
+                .description("Current adaptive limit of concurrent calls")
+                .register(meterRegistry);
+        Gauge.builder("limiting.concurrency.in-flight", this, ConcurrencyLimiter::inFlight)
+                .description("Calls running at the moment")
+                .register(meterRegistry);
+        readsShed = shedCounter(meterRegistry, Priority.READ);
+        writesShed = shedCounter(meterRegistry, Priority.WRITE);
+    }
+
+    /**
+     * @throws ConcurrencyLimitExceeded right away when there is no room for the call
+     */
+    public <T> T tryCall(Priority priority, Supplier<T> call) {
+        return measured(tryAcquire(priority), call);
+    }
+
+    /**
+     * Non-blocking {@link #tryCall} for calls completing later, e.g. reactive ones: the permit has to be released when
+     * the call completes.
+     *
+     * @throws ConcurrencyLimitExceeded right away when there is no room for the call
+     */
+    Permit tryAcquire(Priority priority) {
+        lock.lock();
+        try {
+            if (!admits(priority)) {
+                (priority == Priority.READ ? readsShed : writesShed).increment();
+                throw new ConcurrencyLimitExceeded(retryAfter);
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        return new Permit();
+    }
+
+    /**
+     * Waits for room for the call, for up to {@code maxWait}, then makes the call anyway. Meant for consumers, which
+     * should slow down rather than fail.
+     */
+    public <T> T call(Priority priority, Supplier<T> call) {
+        lock.lock();
+        try {
+            long waitNanos = maxWait.toNanos();
+            while (!admits(priority) && waitNanos > 0) {
+                waitNanos = released.awaitNanos(waitNanos);
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        return measured(new Permit(), call);
+    }
+
+    double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean admits(Priority priority) {
+        double allowed = priority == Priority.WRITE ? limit : Math.max(1, limit * readShare);
+        return inFlight < (int) allowed;
+    }
+
+    private static <T> T measured(Permit permit, Supplier<T> call) {
+        boolean failed = true;
+        try {
+            var result = call.get();
+            failed = false;
+            return result;
+        } catch (BusinessException rejected) {
+            failed = false;
+            throw rejected;
+        } finally {
+            permit.release(failed);
+        }
+    }
+
+    private void release(boolean overloaded) {
+        lock.lock();
+        try {
+            if (overloaded) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A call taking room in the limit, measured from when it was admitted.
+     */
+    final class Permit {
+        private final long started = nanoTime.getAsLong();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Gives the room back (just once), cutting the limit when the call was slow or failed.
+         *
+         * @param failed other than with a {@link BusinessException}
+         */
+        void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release(failed || nanoTime.getAsLong() - started > latencyThresholdNanos);
+            }
+        }
+    }
+
+    private static Counter shedCounter(MeterRegistry meterRegistry, Priority priority) {
+        return Counter.builder("limiting.concurrency.shed")
+                .description("Calls rejected for exceeding the concurrency limit")
+                .tag("priority", priority.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param readShare part of the limit available for reads, the rest is kept for writes
+     * @param maxWait   how long {@link #call} waits before making the call over the limit
+     */
+    public record Settings(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            Duration latencyThreshold,
+            double backoffRatio,
+            double readShare,
+            Duration retryAfter,
+            Duration maxWait) {
+        public Settings {
+            if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+                throw new IllegalArgumentException("Concurrency limits must be at least 1 and ordered: min, initial, max");
+            }
+        }
+    }
+
+    @Getter
+    public static class ConcurrencyLimitExceeded extends RuntimeException {
+        private final Duration retryAfter;
+
+        ConcurrencyLimitExceeded(Duration retryAfter) {
+            super("Service overloaded, retry after " + retryAfter.toSeconds() + " s");
+            this.retryAfter = retryAfter;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Admits assets with a conditional SQL statement pair instead of loading the whole {@link Account}.
+ * <p>
+ * Denormalized {@code asset_count} is incremented only while below {@code limitation} and the unique index rejects
+ * duplicates, so the database makes the limit decision in a single round trip, without optimistic locking retries.
+ * Events are the same as the ones produced by {@link Account}.
+ * <p>
+ * Other storage modes don't maintain the counter, so it's recounted from {@code downloaded_assets} when the mode starts
+ * ({@link AssetSlotRepository#recountAssets()}).
+ */
+@RequiredArgsConstructor
+class ConditionalSqlAssetAssignment implements AssetAssignment {
+    private final Clock clock;
+    private final AssetSlotRepository slots;
+    private final TransactionOperations transactions;
+
+    @Override
+    public List<SuspiciousLimitingEvent> assign(AccountId accountId, Asset asset) {
+        return transactions.execute(status -> {
+            if (!slots.claimSlot(accountId.getId())) {
+                return rejected(accountId, asset);
+            }
+            try {
+                slots.insertAsset(
+                        accountId.getId(),
+                        asset.getId(),
+                        asset.getCountryCode(),
+                        clock.instant(),
+                        slots.nextAssetKey(accountId.getId()));
+            } catch (DuplicateKeyException alreadyAssigned) {
+                slots.releaseSlot(accountId.getId());
+                return List.of(SuspiciousLimitingEvent.assetDuplicated(clock, accountId, asset));
+            }
+            return slots.findOtherCountries(accountId.getId(), asset.getId(), asset.getCountryCode()).stream()
+                    .map(existingCountry -> SuspiciousLimitingEvent.assetAlreadyInDifferentCountry(
+                            clock,
+                            accountId,
+                            asset,
+                            existingCountry))
+                    .toList();
+        });
+    }
+
+    private List<SuspiciousLimitingEvent> rejected(AccountId accountId, Asset asset) {
+        int limit = slots.findLimit(accountId.getId())
+                .orElseThrow(() -> BusinessException.notFound("Account", accountId.getId()));
+        if (slots.countAssets(accountId.getId(), asset.getId(), asset.getCountryCode()) > 0) {
+            return List.of(SuspiciousLimitingEvent.assetDuplicated(clock, accountId, asset));
+        }
+        throw new AccountLimitExceeded(limit);
+    }
+
+    @Override
+    public List<SuspiciousLimitingEvent> unassign(AccountId accountId, Asset asset) {
+        return transactions.execute(status -> {
+            if (!slots.lockAccount(accountId.getId())) {
+                throw BusinessException.notFound("Account", accountId.getId());
+            }
+            return slots.findAssetKey(accountId.getId(), asset.getId(), asset.getCountryCode())
+                    .map(removedKey -> {
+                        remove(accountId, asset, removedKey);
+                        return List.<SuspiciousLimitingEvent>of();
+                    })
+                    .orElseGet(() -> List.of(SuspiciousLimitingEvent.unnecessaryRemoval(clock, accountId, asset)));
+        });
+    }
+
+    @Override
+    public int unassignAll(AccountId accountId, List<ExpiredAsset> expired) {
+        return transactions.execute(status -> {
+            if (!slots.lockAccount(accountId.getId())) {
+                return 0;
+            }
+            int removed = 0;
+            for (var expiredAsset : expired) {
+                var asset = expiredAsset.asset();
+                var removedKey = slots.findAssetKeyDownloadedBefore(
+                        accountId.getId(),
+                        asset.getId(),
+                        asset.getCountryCode(),
+                        expiredAsset.downloadedAt());
+                if (removedKey.isPresent()) {
+                    remove(accountId, asset, removedKey.get());
+                    removed++;
+                }
+            }
+            return removed;
+        });
+    }
+
+    private void remove(AccountId accountId, Asset asset, int removedKey) {
+        slots.deleteAsset(accountId.getId(), asset.getId(), asset.getCountryCode());
+        slots.releaseSlot(accountId.getId());
+        slots.shiftAssetKeys(accountId.getId(), removedKey);
+    }
+}
+
+interface AssetSlotRepository extends Repository<Account, String> {
+    /**
+     * Fixes the counters left behind by other storage modes, leaving accounts with packed assets alone.
+     *
+     * @return how many accounts had a wrong count
+     */
+    @Modifying
+    @Query("""
+            update downloading_accounts
+            set asset_count = (select count(*) from downloaded_assets where account = downloading_accounts.id)
+            where packed_assets is null
+              and asset_count <> (select count(*) from downloaded_assets where account = downloading_accounts.id)""")
+    int recountAssets();
+
+    @Modifying
+    @Query("""
+            update downloading_accounts
+            set asset_count = asset_count + 1, version = version + 1
+            where id = :accountId and asset_count < limitation""")
+    boolean claimSlot(String accountId);
+
+    @Modifying
+    @Query("update downloading_accounts set asset_count = asset_count - 1, version = version + 1 where id = :accountId")
+    void releaseSlot(String accountId);
+
+    @Modifying
+    @Query("update downloading_accounts set version = version + 1 where id = :accountId")
+    boolean lockAccount(String accountId);
+
+    @Query("select limitation from downloading_accounts where id = :accountId")
+    Optional<Integer> findLimit(String accountId);
+
+    @Query("select coalesce(max(downloading_accounts_key) + 1, 0) from downloaded_assets where account = :accountId")
+    int nextAssetKey(String accountId);
+
+    @Modifying
+    @Query("""
+            insert into downloaded_assets (asset_id, country_code, downloaded_at, version, account, downloading_accounts_key)
+            values (:assetId, :countryCode, :downloadedAt, 0, :accountId, :key)""")
+    void insertAsset(String accountId, String assetId, String countryCode, Instant downloadedAt, int key);
+
+    @Query("""
+            select count(*) from downloaded_assets
+            where account = :accountId and asset_id = :assetId and country_code = :countryCode""")
+    int countAssets(String accountId, String assetId, String countryCode);
+
+    @Query("""
+            select country_code from downloaded_assets
+            where account = :accountId and asset_id = :assetId and country_code <> :countryCode
+            order by downloading_accounts_key""")
+    List<String> findOtherCountries(String accountId, String assetId, String countryCode);
+
+    @Query("""
+            select downloading_accounts_key from downloaded_assets
+            where account = :accountId and asset_id = :assetId and country_code = :countryCode""")
+    Optional<Integer> findAssetKey(String accountId, String assetId, String countryCode);
+
+    /**
+     * Like {@link #findAssetKey(String, String, String)}, but skips the asset downloaded (again) after the given time.
+     */
+    @Query("""
+            select downloading_accounts_key from downloaded_assets
+            where account = :accountId and asset_id = :assetId and country_code = :countryCode
+              and downloaded_at <= :downloadedAt""")
+    Optional<Integer> findAssetKeyDownloadedBefore(
+            String accountId,
+            String assetId,
+            String countryCode,
+            Instant downloadedAt);
+
+    @Modifying
+    @Query("""
+            delete from downloaded_assets
+            where account = :accountId and asset_id = :assetId and country_code = :countryCode""")
+    void deleteAsset(String accountId, String assetId, String countryCode);
+
+    @Modifying
+    @Query("""
+            update downloaded_assets
+            set downloading_accounts_key = downloading_accounts_key - 1
+            where account = :accountId and downloading_accounts_key > :removedKey""")
+    void shiftAssetKeys(String accountId, int removedKey);
+}
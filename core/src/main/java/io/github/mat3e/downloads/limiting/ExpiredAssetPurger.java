@@ -0,0 +1,234 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Time to live of downloaded assets, counted from {@code downloaded_at}: global and overridden per account. Assets
+ * without a time to live (or without {@code downloaded_at}) never expire.
+ */
+record AssetTtl(Duration global, Map<String, Duration> accounts) {
+    boolean enabled() {
+        return global != null || !accounts.isEmpty();
+    }
+
+    Optional<Duration> of(AccountId accountId) {
+        return Optional.ofNullable(accounts.getOrDefault(accountId.getId(), global));
+    }
+
+    /**
+     * @return the shortest time to live, i.e. assets downloaded later than {@code now} minus it are surely not expired
+     */
+    Duration shortest() {
+        return Stream.concat(Stream.ofNullable(global), accounts.values().stream())
+                .min(Duration::compareTo)
+                .orElseThrow();
+    }
+}
+
+/**
+ * Deletes expired assets in the background, in chunks read with a range scan over {@code downloaded_at}. Assets are
+ * removed through {@link LimitingFacade}, one change per account and chunk, so versions, counters and reads of the
+ * touched accounts stay consistent.
+ * <p>
+ * Throttled to spend at most {@code dutyCycle} of the time purging (a chunk taking 10 ms with 0.1 duty cycle is
+ * followed by 90 ms pause), on a single low priority thread, so foreground traffic keeps the database.
+ * <p>
+ * Exposes {@code assets.purged} counter, {@code assets.purge.chunks} timer and {@code assets.purge.lag} gauge: how
+ * long the oldest expired asset seen by the current pass has been expired, 0 after a complete pass.
+ */
+@Slf4j
+class ExpiredAssetPurger implements AutoCloseable {
+    private final AssetTtl ttl;
+    private final ExpiredAssetScan scan;
+    private final LimitingFacade facade;
+    private final Clock clock;
+    private final int chunkSize;
+    private final double dutyCycle;
+    private final Counter purged;
+    private final Timer chunks;
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+
+    ExpiredAssetPurger(
+            AssetTtl ttl,
+            ExpiredAssetScan scan,
+            LimitingFacade facade,
+            Clock clock,
+            int chunkSize,
+            double dutyCycle,
+            Duration interval,
+            MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.scan = scan;
+        this.facade = facade;
+        this.clock = clock;
+        this.chunkSize = chunkSize;
+        this.dutyCycle = dutyCycle;
+        purged = Counter.builder("assets.purged")
+                .description("Expired assets deleted")
+                .register(meterRegistry);
+        chunks = Timer.builder("assets.purge.chunks")
+                .description("Time of deleting a single chunk of expired assets")
+                .register(meterRegistry);
+        Gauge.builder("assets.purge.lag", lagSeconds, AtomicLong::get)
+                .description("How long the oldest expired asset not deleted yet has been expired")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("asset-purger")
+                .priority(Thread.MIN_PRIORITY)
+                .factory());
+        if (ttl.enabled()) {
+            scheduler.scheduleWithFixedDelay(this::purgeSafely, interval.toMillis(), interval.toMillis(), MILLISECONDS);
+        }
+    }
+
+    /**
+     * A single pass over the assets expired at the moment.
+     *
+     * @return how many assets were deleted
+     */
+    int purge() {
+        if (!ttl.enabled()) {
+            return 0;
+        }
+        var now = clock.instant();
+        var notAfter = now.minus(ttl.shortest());
+        int total = 0;
+        ExpiredAsset after = null;
+        List<ExpiredAsset> chunk;
+        do {
+            long started = System.nanoTime();
+            chunk = scan.next(notAfter, after, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            after = chunk.getLast();
+            var expired = chunk.stream().filter(asset -> asset.expiredAt(now, ttl)).toList();
+            expired.stream().findFirst().ifPresent(oldest -> lagSeconds.set(oldest.expiredFor(now, ttl).toSeconds()));
+            total += delete(expired);
+            long took = System.nanoTime() - started;
+            chunks.record(took, NANOSECONDS);
+            pauseAfter(took);
+        } while (chunk.size() == chunkSize && !scheduler.isShutdown());
+        lagSeconds.set(0);
+        return total;
+    }
+
+    private int delete(List<ExpiredAsset> expired) {
+        int deleted = 0;
+        var byAccount = expired.stream().collect(groupingBy(ExpiredAsset::accountId, LinkedHashMap::new, toList()));
+        for (var account : byAccount.entrySet()) {
+            try {
+                deleted += facade.expireAssets(account.getKey(), account.getValue());
+            } catch (RuntimeException failure) {
+                // e.g. changed concurrently, the next pass tries again
+                log.warn("Expired assets of account " + account.getKey() + " not deleted: " + failure.getMessage());
+            }
+        }
+        purged.increment(deleted);
+        return deleted;
+    }
+
+    private void pauseAfter(long workNanos) {
+        long pauseNanos = (long) (workNanos * (1 - dutyCycle) / dutyCycle);
+        try {
+            Thread.sleep(Duration.ofNanos(pauseNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void purgeSafely() {
+        try {
+            int deleted = purge();
+            if (deleted > 0) {
+                log.info("Deleted " + deleted + " expired assets");
+            }
+        } catch (RuntimeException e) {
+            log.error("Purging expired assets failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+}
+
+record ExpiredAsset(int id, AccountId accountId, Asset asset, Instant downloadedAt) {
+    boolean expiredAt(Instant now, AssetTtl ttl) {
+        return ttl.of(accountId).map(accountTtl -> !downloadedAt.plus(accountTtl).isAfter(now)).orElse(false);
+    }
+
+    Duration expiredFor(Instant now, AssetTtl ttl) {
+        return Duration.between(downloadedAt.plus(ttl.of(accountId).orElseThrow()), now);
+    }
+}
+
+/**
+ * Keyset-paginated range scan of {@code downloads_in_time} index, oldest assets first.
+ */
+class ExpiredAssetScan {
+    private static final String FIRST_CHUNK = """
+            select id, account, asset_id, country_code, downloaded_at from downloaded_assets
+            where downloaded_at <= :notAfter
+            order by downloaded_at, id
+            limit :chunkSize""";
+    private static final String NEXT_CHUNK = """
+            select id, account, asset_id, country_code, downloaded_at from downloaded_assets
+            where downloaded_at <= :notAfter
+              and (downloaded_at > :afterTime or (downloaded_at = :afterTime and id > :afterId))
+            order by downloaded_at, id
+            limit :chunkSize""";
+
+    private final NamedParameterJdbcOperations jdbc;
+
+    ExpiredAssetScan(NamedParameterJdbcOperations jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * @param after the last asset of the previous chunk, {@code null} for the first one
+     */
+    List<ExpiredAsset> next(Instant notAfter, ExpiredAsset after, int chunkSize) {
+        var params = new LinkedHashMap<String, Object>();
+        params.put("notAfter", Timestamp.from(notAfter));
+        params.put("chunkSize", chunkSize);
+        if (after != null) {
+            params.put("afterTime", Timestamp.from(after.downloadedAt()));
+            params.put("afterId", after.id());
+        }
+        return jdbc.query(after == null ? FIRST_CHUNK : NEXT_CHUNK, params, (row, number) ->
+                new ExpiredAsset(
+                        row.getInt("id"),
+                        AccountId.valueOf(row.getString("account")),
+                        Asset.withId(row.getString("asset_id")).inCountry(row.getString("country_code")),
+                        row.getTimestamp("downloaded_at").toInstant()));
+    }
+}
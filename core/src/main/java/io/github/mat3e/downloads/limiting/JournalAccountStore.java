@@ -0,0 +1,94 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.AccountJournal.Entry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Embedded storage for edge deployments: accounts in a concurrent map, every change appended to {@link AccountJournal}
+ * and periodically compacted into a snapshot. Restart replays the last snapshot and the journal.
+ */
+@Slf4j
+class JournalAccountStore implements AccountEntryStore {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final CodeDictionary codes = new CodeDictionary();
+    /* changes share the lock, compaction needs all of them to finish */
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final AccountJournal journal;
+    private final ScheduledExecutorService compactor;
+
+    JournalAccountStore(Path directory, Duration snapshotInterval, boolean syncOnWrite) {
+        journal = new AccountJournal(directory, syncOnWrite);
+        journal.replay(codes, entry -> entries.put(entry.id(), entry));
+        compactor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("journal-compactor").factory());
+        compactor.scheduleWithFixedDelay(
+                this::compactSafely,
+                snapshotInterval.toMillis(),
+                snapshotInterval.toMillis(),
+                MILLISECONDS);
+    }
+
+    @Override
+    public Optional<Entry> find(String id) {
+        return Optional.ofNullable(entries.get(id));
+    }
+
+    @Override
+    public AssetCodes codes() {
+        return codes;
+    }
+
+    @Override
+    public Entry write(String id, UnaryOperator<Entry> change) {
+        var lock = compactionLock.readLock();
+        lock.lock();
+        try {
+            return entries.compute(id, (ignored, existing) -> {
+                var changed = change.apply(existing);
+                if (changed != existing) {
+                    journal.append(changed);
+                }
+                return changed;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void compact() {
+        var lock = compactionLock.writeLock();
+        lock.lock();
+        try {
+            journal.compact(List.copyOf(entries.values()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.error("Journal compaction failed, will retry", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.close();
+        journal.close();
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.Map;
+
+/**
+ * Custom {@link AccountSettingRepository} part, with SQL depending on the database (H2 and MariaDB are supported).
+ */
+class LimitUpsertImpl implements LimitUpsert {
+    private static final String H2_MERGE = """
+            merge into downloading_accounts existing
+            using (select cast(:id as varchar(32)) as id, cast(:limit as integer) as limitation) incoming
+            on existing.id = incoming.id
+            when matched and existing.limitation is distinct from incoming.limitation then
+                update set limitation = incoming.limitation, limit_version = existing.limit_version + 1
+            when not matched then
+                insert (id, limitation) values (incoming.id, incoming.limitation)""";
+    /*
+     * MariaDB reports found (not changed) rows by default, so ON DUPLICATE KEY UPDATE can't tell an insert from
+     * an unchanged row - conditional update goes first, then a plain insert (a duplicate means a concurrent insert)
+     */
+    private static final String MARIADB_UPDATE = """
+            update downloading_accounts
+            set limitation = :limit, limit_version = limit_version + 1
+            where id = :id and not limitation <=> :limit""";
+    private static final String MARIADB_INSERT = """
+            insert into downloading_accounts (id, limitation)
+            values (:id, :limit)""";
+
+    private final NamedParameterJdbcOperations jdbc;
+    private final boolean h2;
+
+    LimitUpsertImpl(NamedParameterJdbcOperations jdbc, DataSource dataSource) throws MetaDataAccessException {
+        this.jdbc = jdbc;
+        this.h2 = "H2".equals(JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+    }
+
+    @Override
+    public boolean upsertLimit(AccountSetting setting) {
+        var params = Map.of("id", setting.id().getId(), "limit", setting.limit());
+        if (h2) {
+            return jdbc.update(H2_MERGE, params) > 0;
+        }
+        if (jdbc.update(MARIADB_UPDATE, params) > 0) {
+            return true;
+        }
+        try {
+            return jdbc.update(MARIADB_INSERT, params) > 0;
+        } catch (DuplicateKeyException insertedMeanwhile) {
+            return false;
+        }
+    }
+}
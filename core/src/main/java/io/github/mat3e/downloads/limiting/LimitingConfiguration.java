@@ -1,15 +1,41 @@
 package io.github.mat3e.downloads.limiting;
 
 import io.github.mat3e.downloads.reporting.ReportingFacade;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
 
 @Configuration
 @RequiredArgsConstructor
+@ImportRuntimeHints(LimitingRuntimeHints.class)
 class LimitingConfiguration {
+    static final String STORAGE_PROPERTY = "downloads.limiting.storage";
+    /* assets as downloaded_assets rows, for the features reading them directly */
+    private static final String NORMALIZED_STORAGE =
+            "'${" + STORAGE_PROPERTY + ":aggregate}' matches 'aggregate|conditional-sql'";
+    private static final String READ_MODEL_ENABLED =
+            "${downloads.limiting.read-model.enabled:false} and " + NORMALIZED_STORAGE;
+
     /* just IO dependencies and other modules */
     private final Clock clock;
     private final AccountRepository accountRepository;
@@ -17,7 +43,308 @@ class LimitingConfiguration {
     private final ReportingFacade reportingFacade;
 
     @Bean
-    LimitingFacade facade() {
-        return new LimitingFacade(clock, accountRepository, accountSettingRepository, reportingFacade);
+    DownloadWindow downloadWindow(
+            @Value("${downloads.limiting.window.downloads:0}") int downloads,
+            @Value("${downloads.limiting.window.length:30d}") Duration length,
+            @Value("${downloads.limiting.window.buckets:30}") int buckets,
+            @Value("${downloads.limiting.window.refresh:5s}") Duration refresh) {
+        return new DownloadWindow(downloads, length, buckets, refresh);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${downloads.limiting.window.downloads:0} > 0")
+    DownloadLogPurger downloadLogPurger(
+            DownloadTimes downloadTimes,
+            DownloadWindow downloadWindow,
+            @Value("${downloads.limiting.window.purge-interval:1h}") Duration interval) {
+        return new DownloadLogPurger(downloadTimes, clock, downloadWindow, interval);
+    }
+
+    /* codes of assets in packed_assets, registered in their own transactions so they outlive rolled back changes */
+    @Bean
+    StoredCodes storedCodes(NamedParameterJdbcOperations jdbc, PlatformTransactionManager transactionManager) {
+        var registering = new TransactionTemplate(transactionManager);
+        registering.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return new StoredCodes(jdbc, registering);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "aggregate", matchIfMissing = true)
+    LimitingFacade facade(DownloadWindow downloadWindow, DownloadTimes downloadTimes) {
+        return new LimitingFacade(
+                accountRepository,
+                accountSettingRepository,
+                downloadWindow.limiting(new AggregateAssetAssignment(clock, accountRepository), clock, downloadTimes),
+                reportingFacade);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "conditional-sql")
+    LimitingFacade conditionalSqlFacade(
+            AssetSlotRepository assetSlotRepository,
+            PlatformTransactionManager transactionManager,
+            DownloadWindow downloadWindow,
+            DownloadTimes downloadTimes) {
+        // before admitting anything, as other modes don't keep asset_count right
+        assetSlotRepository.recountAssets();
+        return new LimitingFacade(
+                accountRepository,
+                accountSettingRepository,
+                downloadWindow.limiting(
+                        new ConditionalSqlAssetAssignment(
+                                clock,
+                                assetSlotRepository,
+                                new TransactionTemplate(transactionManager)),
+                        clock,
+                        downloadTimes),
+                reportingFacade);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "packed-blob")
+    LimitingFacade packedBlobFacade(
+            NamedParameterJdbcOperations jdbc,
+            StoredCodes storedCodes,
+            DownloadWindow downloadWindow,
+            DownloadTimes downloadTimes,
+            Environment environment) {
+        failOnRowFeatures("packed-blob", environment);
+        var packedAccounts = new PackedBlobAccountRepository(jdbc, storedCodes);
+        return new LimitingFacade(
+                packedAccounts,
+                accountSettingRepository,
+                downloadWindow.limiting(new AggregateAssetAssignment(clock, packedAccounts), clock, downloadTimes),
+                reportingFacade);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "event-sourced")
+    AccountEventStore accountEventStore(
+            NamedParameterJdbcOperations jdbc,
+            PlatformTransactionManager transactionManager,
+            StoredCodes storedCodes,
+            @Value("${downloads.limiting.event-sourced.snapshot-every:100}") int snapshotEvery) {
+        return new AccountEventStore(jdbc, new TransactionTemplate(transactionManager), storedCodes, snapshotEvery);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "event-sourced")
+    LimitingFacade eventSourcedFacade(
+            AccountEventStore accountEventStore,
+            DownloadWindow downloadWindow,
+            DownloadTimes downloadTimes,
+            Environment environment) {
+        failOnRowFeatures("event-sourced", environment);
+        return new LimitingFacade(
+                accountEventStore,
+                accountSettingRepository,
+                downloadWindow.limiting(
+                        new EventSourcedAssetAssignment(clock, accountEventStore),
+                        clock,
+                        downloadTimes),
+                reportingFacade);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "event-sourced")
+    AccountEventRelay accountEventRelay(
+            AccountEventStore accountEventStore,
+            @Value("${downloads.limiting.event-sourced.relay.settle:1s}") Duration settle,
+            @Value("${downloads.limiting.event-sourced.relay.interval:5s}") Duration interval) {
+        return new AccountEventRelay(accountEventStore, reportingFacade, clock, settle, interval);
+    }
+
+    /* one-off, e.g. with --downloads.limiting.packed-blob.migrate=pack before switching the storage */
+    @Bean
+    @ConditionalOnProperty(name = "downloads.limiting.packed-blob.migrate")
+    ApplicationRunner packedBlobMigration(
+            NamedParameterJdbcOperations jdbc,
+            PlatformTransactionManager transactionManager,
+            StoredCodes storedCodes,
+            @Value("${downloads.limiting.packed-blob.migrate}") PackedBlobMigration.Direction direction) {
+        var migration = new PackedBlobMigration(jdbc, new TransactionTemplate(transactionManager), storedCodes);
+        return arguments -> migration.migrate(direction);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "journal")
+    JournalAccountStore journalAccountStore(
+            @Value("${downloads.limiting.journal.directory:./journal}") Path directory,
+            @Value("${downloads.limiting.journal.snapshot-interval:1m}") Duration snapshotInterval,
+            @Value("${downloads.limiting.journal.sync-on-write:false}") boolean syncOnWrite) {
+        return new JournalAccountStore(directory, snapshotInterval, syncOnWrite);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "journal")
+    LimitingFacade journalFacade(
+            JournalAccountStore journalAccountStore,
+            DownloadWindow downloadWindow,
+            Environment environment) {
+        failOnDatabaseFeatures("journal", downloadWindow, environment);
+        return new LimitingFacade(
+                clock,
+                journalAccountStore.accounts(),
+                journalAccountStore.settings(),
+                reportingFacade);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "mvstore")
+    MvStoreAccountStore mvStoreAccountStore(
+            @Value("${downloads.limiting.mvstore.file:./accounts.mv}") Path file,
+            @Value("${downloads.limiting.mvstore.sync-on-write:false}") boolean syncOnWrite) {
+        return new MvStoreAccountStore(file, syncOnWrite);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORAGE_PROPERTY, havingValue = "mvstore")
+    LimitingFacade mvStoreFacade(
+            MvStoreAccountStore mvStoreAccountStore,
+            DownloadWindow downloadWindow,
+            Environment environment) {
+        failOnDatabaseFeatures("mvstore", downloadWindow, environment);
+        return new LimitingFacade(
+                clock,
+                mvStoreAccountStore.accounts(),
+                mvStoreAccountStore.settings(),
+                reportingFacade);
+    }
+
+    /* the window keeps download_log in the database, which embedded storages are meant to go without */
+    private static void failOnDatabaseFeatures(String storage, DownloadWindow downloadWindow, Environment environment) {
+        failOnUnsupported(downloadWindow.enabled(), storage, "downloads.limiting.window.downloads");
+        failOnRowFeatures(storage, environment);
+    }
+
+    /* just NORMALIZED_STORAGE keeps downloaded_assets rows, read directly by these */
+    private static void failOnRowFeatures(String storage, Environment environment) {
+        var accountTtls = Binder.get(environment)
+                .bind("downloads.limiting.asset-ttl.accounts", Bindable.mapOf(String.class, Duration.class));
+        failOnUnsupported(
+                environment.containsProperty("downloads.limiting.asset-ttl.global") || accountTtls.isBound(),
+                storage,
+                "downloads.limiting.asset-ttl");
+        failOnUnsupported(
+                environment.getProperty("downloads.limiting.read-model.enabled", boolean.class, false),
+                storage,
+                "downloads.limiting.read-model.enabled=true");
+        failOnUnsupported(
+                environment.getProperty("downloads.limiting.suspicious-scan.run", boolean.class, false),
+                storage,
+                "downloads.limiting.suspicious-scan.run=true");
+    }
+
+    private static void failOnUnsupported(boolean unsupported, String storage, String setting) {
+        if (unsupported) {
+            throw new IllegalStateException(storage + " storage doesn't support " + setting);
+        }
+    }
+
+    @Bean
+    @ConditionalOnExpression(NORMALIZED_STORAGE)
+    ExpiredAssetPurger expiredAssetPurger(
+            LimitingFacade facade,
+            NamedParameterJdbcOperations jdbc,
+            MeterRegistry meterRegistry,
+            Environment environment,
+            @Value("${downloads.limiting.asset-ttl.global:#{null}}") Duration globalTtl,
+            @Value("${downloads.limiting.asset-ttl.purge.interval:1h}") Duration interval,
+            @Value("${downloads.limiting.asset-ttl.purge.chunk-size:500}") int chunkSize,
+            @Value("${downloads.limiting.asset-ttl.purge.duty-cycle:0.1}") double dutyCycle) {
+        var accountTtls = Binder.get(environment)
+                .bind("downloads.limiting.asset-ttl.accounts", Bindable.mapOf(String.class, Duration.class))
+                .orElse(Map.of());
+        return new ExpiredAssetPurger(
+                new AssetTtl(globalTtl, accountTtls),
+                new ExpiredAssetScan(jdbc),
+                facade,
+                clock,
+                chunkSize,
+                dutyCycle,
+                interval,
+                meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnExpression(READ_MODEL_ENABLED)
+    AccountListings accountListings(
+            LimitingFacade facade,
+            NamedParameterJdbcOperations jdbc,
+            StoredCodes storedCodes,
+            MeterRegistry meterRegistry,
+            @Value("${downloads.limiting.read-model.workers:2}") int workers) {
+        var listings = new AccountListings(accountRepository, jdbc, storedCodes, clock, workers, meterRegistry);
+        facade.serveReadsFrom(listings);
+        return listings;
+    }
+
+    /* e.g. with --downloads.limiting.read-model.rebuild=true when enabling the read model */
+    @Bean
+    @ConditionalOnExpression(READ_MODEL_ENABLED + " and ${downloads.limiting.read-model.rebuild:false}")
+    ApplicationRunner accountListingsRebuild(AccountListings listings, DataSource dataSource) {
+        var streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(1000);
+        return arguments -> listings.rebuild(streaming);
+    }
+
+    @Bean
+    @ConditionalOnExpression(NORMALIZED_STORAGE)
+    SuspiciousActivityScan suspiciousActivityScan(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${downloads.limiting.suspicious-scan.countries-per-account:5}") int countriesPerAccount,
+            @Value("${downloads.limiting.suspicious-scan.accounts-per-asset:100}") int accountsPerAsset,
+            @Value("${downloads.limiting.suspicious-scan.parallelism:0}") int parallelism) {
+        var streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(1000);
+        var readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return new SuspiciousActivityScan(
+                streaming,
+                readOnly,
+                reportingFacade,
+                clock,
+                new SuspiciousActivityScan.Thresholds(countriesPerAccount, accountsPerAsset),
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /* one-off, e.g. with --downloads.limiting.suspicious-scan.run=true from a scheduled job */
+    @Bean
+    @ConditionalOnExpression(NORMALIZED_STORAGE + " and ${downloads.limiting.suspicious-scan.run:false}")
+    ApplicationRunner suspiciousActivityScanRun(SuspiciousActivityScan scan) {
+        return arguments -> scan.scan();
+    }
+
+    @Bean
+    ConcurrencyLimiter concurrencyLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${downloads.limiting.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${downloads.limiting.concurrency.min-limit:2}") int minLimit,
+            @Value("${downloads.limiting.concurrency.max-limit:200}") int maxLimit,
+            @Value("${downloads.limiting.concurrency.latency-threshold:250ms}") Duration latencyThreshold,
+            @Value("${downloads.limiting.concurrency.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${downloads.limiting.concurrency.read-share:0.8}") double readShare,
+            @Value("${downloads.limiting.concurrency.retry-after:1s}") Duration retryAfter,
+            @Value("${downloads.limiting.concurrency.max-wait:30s}") Duration maxWait) {
+        return new ConcurrencyLimiter(
+                new ConcurrencyLimiter.Settings(
+                        initialLimit,
+                        minLimit,
+                        maxLimit,
+                        latencyThreshold,
+                        backoffRatio,
+                        readShare,
+                        retryAfter,
+                        maxWait),
+                meterRegistry);
+    }
+
+    @Bean
+    RequestRateLimiter requestRateLimiter(
+            @Value("${downloads.limiting.request-rate.per-second:10}") double perSecond,
+            @Value("${downloads.limiting.request-rate.burst:20}") int burst,
+            @Value("${downloads.limiting.request-rate.idle-eviction:5m}") Duration idleEviction) {
+        return new RequestRateLimiter(new RequestRateLimiter.RequestRate(perSecond, burst), idleEviction);
     }
 }
@@ -3,56 +3,135 @@ package io.github.mat3e.downloads.limiting;
 import io.github.mat3e.downloads.exceptionhandling.BusinessException;
 import io.github.mat3e.downloads.limiting.api.AccountId;
 import io.github.mat3e.downloads.limiting.api.Asset;
-import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
 import io.github.mat3e.downloads.reporting.ReportingFacade;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
-@RequiredArgsConstructor
+import static lombok.AccessLevel.PACKAGE;
+
+@RequiredArgsConstructor(access = PACKAGE)
 public class LimitingFacade {
-    private final Clock clock;
-    private final AccountRepository accountRepository;
+    private final AccountSource accountSource;
     private final AccountSettingRepository accountSettingRepository;
+    private final AssetAssignment assetAssignment;
     private final ReportingFacade reporting;
+    /* popular accounts get bursts of reads, concurrent ones share a single load */
+    private final SingleFlight<AccountId, Optional<List<Asset>>> accountReads = new SingleFlight<>();
+    /* read model, when enabled */
+    private volatile AccountListings listings;
+
+    public LimitingFacade(
+            Clock clock,
+            AccountRepository accountRepository,
+            AccountSettingRepository accountSettingRepository,
+            ReportingFacade reporting) {
+        this(
+                accountRepository,
+                accountSettingRepository,
+                new AggregateAssetAssignment(clock, accountRepository),
+                reporting);
+    }
 
-    public void overrideAccountLimit(AccountId accountId, int newLimit) {
-        accountSettingRepository.findById(accountId).ifPresentOrElse(
-                existingAccount -> {
-                    existingAccount.overrideLimit(newLimit);
-                    accountSettingRepository.save(existingAccount);
-                },
-                () -> accountSettingRepository.save(AccountSetting.newFor(accountId, newLimit)));
+    /**
+     * @return whether the limit actually changed (e.g. redelivered messages don't change anything)
+     */
+    public boolean overrideAccountLimit(AccountId accountId, int newLimit) {
+        return changing(
+                "override",
+                accountId,
+                () -> accountSettingRepository.upsertLimit(AccountSetting.newFor(accountId, newLimit)),
+                changed -> 0);
     }
 
     public void assignDownloadedAsset(AccountId accountId, Asset downloadedAsset) {
-        saveFlushingEvents(
-                getAccountBy(accountId),
-                account -> account.assignAsset(downloadedAsset, clock));
+        changing("assign", accountId, () -> assetAssignment.assign(accountId, downloadedAsset), events -> 1)
+                .forEach(reporting::recordEvent);
     }
 
-    public void removeDownloadedAsset(AccountId accountId, Asset downloadedAsset) {
-        saveFlushingEvents(
-                getAccountBy(accountId),
-                account -> account.unassignAsset(downloadedAsset, clock));
+    /**
+     * Assigns many assets to the same account at once, e.g. when ingesting records in batches.
+     *
+     * @return assets which were not assigned, e.g. because of {@link AccountLimitExceeded}
+     */
+    public List<RejectedAsset> assignDownloadedAssets(AccountId accountId, List<Asset> downloadedAssets) {
+        var batch = changing(
+                "assignBatch",
+                accountId,
+                () -> assetAssignment.assignAll(accountId, downloadedAssets),
+                assigned -> downloadedAssets.size() - assigned.rejections().size());
+        batch.events().forEach(reporting::recordEvent);
+        return batch.rejections();
     }
 
-    private Account getAccountBy(AccountId accountId) {
-        return accountRepository.findById(accountId)
-                .orElseThrow(() -> BusinessException.notFound("Account", accountId.getId()));
+    public void removeDownloadedAsset(AccountId accountId, Asset downloadedAsset) {
+        changing("remove", accountId, () -> assetAssignment.unassign(accountId, downloadedAsset), events -> 1)
+                .forEach(reporting::recordEvent);
     }
 
-    private void saveFlushingEvents(Account account, Function<Account, List<SuspiciousLimitingEvent>> accountCommand) {
-        accountCommand.apply(account).forEach(reporting::recordEvent);
-        accountRepository.save(account);
+    /**
+     * Removes assets which outlived their time to live. Assets removed (or removed and downloaded again) meanwhile are
+     * skipped, not reported.
+     *
+     * @return how many assets were removed
+     */
+    int expireAssets(AccountId accountId, List<ExpiredAsset> expiredAssets) {
+        return changing(
+                "expire",
+                accountId,
+                () -> assetAssignment.unassignAll(accountId, expiredAssets),
+                removed -> removed);
     }
 
+    /**
+     * Concurrent calls for the same account share a single load. Changes made through this facade are visible to
+     * all the calls started after the change, unless served from {@link AccountListings}, which follow the changes
+     * asynchronously.
+     */
     public Optional<List<Asset>> findForAccount(AccountId accountId) {
-        return accountRepository.findById(accountId).map(Account::assets);
+        return LimitingOperationEvent.start("find", accountId).record(
+                () -> accountReads.load(accountId, () -> read(accountId)),
+                found -> found.map(List::size).orElse(0));
+    }
+
+    /**
+     * Reports changed accounts to the listings and reads from them, falling back to the source for accounts without a
+     * listing.
+     */
+    void serveReadsFrom(AccountListings listings) {
+        this.listings = listings;
+    }
+
+    private Optional<List<Asset>> read(AccountId accountId) {
+        var currentListings = listings;
+        if (currentListings != null) {
+            var listed = currentListings.find(accountId);
+            if (listed.isPresent()) {
+                return listed;
+            }
+        }
+        return AccountStorageEvent.load(accountSource, accountId).map(Account::assets);
+    }
+
+    private <T> T changing(String operation, AccountId accountId, Supplier<T> change, ToIntFunction<T> assetCount) {
+        try {
+            return LimitingOperationEvent.start(operation, accountId).record(change, assetCount);
+        } finally {
+            accountReads.forget(accountId);
+            var currentListings = listings;
+            if (currentListings != null) {
+                currentListings.changed(accountId);
+            }
+        }
+    }
+
+    public record RejectedAsset(Asset asset, BusinessException reason) {
     }
 
     @Getter
@@ -60,8 +139,31 @@ public class LimitingFacade {
         private final int limit;
 
         AccountLimitExceeded(int limit) {
-            super("Allowed limit of " + limit + " downloaded asset" + (limit > 1 ? "" : "s") + " exceeded");
+            this(limit, "Allowed limit of " + limit + " downloaded asset" + (limit > 1 ? "" : "s") + " exceeded");
+        }
+
+        AccountLimitExceeded(int limit, String message) {
+            super(message);
             this.limit = limit;
         }
     }
+
+    /**
+     * Too many assets assigned within the sliding window, even though the account is below its absolute limit.
+     */
+    @Getter
+    public static class DownloadWindowExceeded extends AccountLimitExceeded {
+        private final Duration window;
+
+        DownloadWindowExceeded(int limit, Duration window) {
+            super(limit, "Allowed limit of " + limit + " downloads per " + describe(window) + " exceeded");
+            this.window = window;
+        }
+
+        private static String describe(Duration window) {
+            return window.toHoursPart() == 0 && window.toMinutesPart() == 0 && window.toSecondsPart() == 0
+                    ? window.toDays() + " days"
+                    : window.toString();
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.stream.Stream;
+
+/**
+ * Reachability metadata for the native image, for what Spring AOT can't fully discover by itself.
+ */
+class LimitingRuntimeHints implements RuntimeHintsRegistrar {
+    private static final String EVENT_IN = "io.github.mat3e.downloads.limiting.event.in.";
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), Asset.class, AccountId.class);
+        // AccountId converted from the path with valueOf, Asset bound from path and query with its constructor
+        hints.reflection().registerType(AccountId.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(Asset.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        // (de)serialized by JsonDeserializer/JsonSerializer from the type mapping and headers, not from signatures
+        Stream.of(
+                "AccountLimitEventListener$Message",
+                "AssetDownloadEventListener$Message",
+                "AssetDownloadEventListener$Rejection",
+                "RequestRateEventListener$Message"
+        ).forEach(message -> hints.reflection().registerType(
+                TypeReference.of(EVENT_IN + message),
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS,
+                MemberCategory.DECLARED_FIELDS));
+        // mapped by Spring Data JDBC
+        Stream.of(Account.class.getName(), Account.class.getName() + "$DownloadedAsset", AccountSetting.class.getName())
+                .forEach(entity -> hints.reflection().registerType(
+                        TypeReference.of(entity),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.INVOKE_DECLARED_METHODS,
+                        MemberCategory.DECLARED_FIELDS));
+        hints.resources().registerPattern("db/migration/*.sql");
+    }
+}
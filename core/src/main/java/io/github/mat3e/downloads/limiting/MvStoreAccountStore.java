@@ -0,0 +1,100 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.AccountJournal.Entry;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.tx.Transaction;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.tx.TransactionStore;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Embedded storage straight in H2's MVStore, without SQL, JDBC and mapping: an account is a single serialized
+ * {@link Entry} under its id.
+ * <p>
+ * Each operation is an MVStore transaction. Reads see the last committed entries, changes lock the entry they read,
+ * so a concurrent change of the same account fails fast instead of waiting.
+ */
+class MvStoreAccountStore implements AccountEntryStore {
+    private static final String ACCOUNTS_MAP = "accounts";
+
+    private final MVStore store;
+    private final TransactionStore transactions;
+    private final boolean syncOnWrite;
+    private final CodeDictionary codes = new CodeDictionary();
+
+    MvStoreAccountStore(Path file, boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+        store = new MVStore.Builder()
+                .fileName(file.toString())
+                .compress()
+                .open();
+        transactions = new TransactionStore(store);
+        transactions.init();
+    }
+
+    @Override
+    public Optional<Entry> find(String id) {
+        return Optional.ofNullable(inTransaction(accounts -> accounts.get(id))).map(bytes -> Entry.read(bytes, codes));
+    }
+
+    @Override
+    public AssetCodes codes() {
+        return codes;
+    }
+
+    @Override
+    public Entry write(String id, UnaryOperator<Entry> change) {
+        var result = inTransaction(accounts -> {
+            var existingBytes = accounts.lock(id);
+            var existing = existingBytes == null ? null : Entry.read(existingBytes, codes);
+            var changed = change.apply(existing);
+            if (changed == existing) {
+                return existingBytes;
+            }
+            var changedBytes = changed.toBytes();
+            if (existing == null) {
+                if (accounts.putIfAbsent(id, changedBytes) != null) {
+                    throw new OptimisticLockingFailureException("Account " + id + " created meanwhile");
+                }
+            } else {
+                accounts.put(id, changedBytes);
+            }
+            return changedBytes;
+        });
+        if (syncOnWrite) {
+            store.commit();
+        }
+        return Entry.read(result, codes);
+    }
+
+    private byte[] inTransaction(Function<TransactionMap<String, byte[]>, byte[]> operation) {
+        Transaction transaction = transactions.begin();
+        try {
+            var result = operation.apply(transaction.openMap(ACCOUNTS_MAP));
+            transaction.commit();
+            return result;
+        } catch (MVStoreException e) {
+            if (e.getErrorCode() == DataUtils.ERROR_TRANSACTION_LOCKED) {
+                throw new OptimisticLockingFailureException("Account changed concurrently", e);
+            }
+            throw e;
+        } finally {
+            if (transaction.getStatus() != Transaction.STATUS_CLOSED) {
+                transaction.rollback();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        transactions.close();
+        store.close();
+    }
+}
@@ -0,0 +1,224 @@
+package io.github.mat3e.downloads.limiting;
+
+import java.util.Arrays;
+
+/**
+ * Insertion-ordered, open-addressing hash set of assets packed into longs: asset id code in the high half, country
+ * code in the low half (codes from {@link AssetCodes}). There is no object per asset.
+ * <p>
+ * Lookups by both codes and by the asset code alone are O(1). Removal is O(n), as it keeps the order compact, so many
+ * entries should be removed at once with {@link #removeAll}.
+ * <p>
+ * Each entry can carry a {@code long} stamp (e.g. when it was added), 0 when added without one.
+ */
+final class PackedAssetSet {
+    /* slots hold position + 1, so zeroed arrays are empty */
+    private static final int EMPTY = 0;
+
+    static long pack(int assetCode, int countryCode) {
+        return ((long) assetCode << 32) | (countryCode & 0xFFFFFFFFL);
+    }
+
+    static int assetCode(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    static int countryCode(long packed) {
+        return (int) packed;
+    }
+
+    private long[] entries;
+    private long[] stamps;
+    /* position + 1 of the previous entry with the same asset code */
+    private int[] previousSameAsset;
+    private int size;
+    private int[] slots;
+    /* position + 1 of the latest entry with the asset code */
+    private int[] assetSlots;
+    private int mask;
+
+    PackedAssetSet(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        entries = new long[capacity];
+        stamps = new long[capacity];
+        previousSameAsset = new int[capacity];
+        allocateSlots(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int position) {
+        if (position >= size) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        return entries[position];
+    }
+
+    long stamp(int position) {
+        if (position >= size) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        return stamps[position];
+    }
+
+    /**
+     * @return stamp of the given entry, {@code missing} when the entry is not in the set
+     */
+    long stampOf(long packed, long missing) {
+        int position = find(packed);
+        return position < 0 ? missing : stamps[position];
+    }
+
+    boolean contains(long packed) {
+        return find(packed) >= 0;
+    }
+
+    /**
+     * @return codes of countries the same asset is already in, other than the given one, in insertion order
+     */
+    int[] otherCountries(long packed) {
+        int country = countryCode(packed);
+        var found = new int[2];
+        int count = 0;
+        for (int position = latestWithAsset(assetCode(packed)); position >= 0;
+             position = previousSameAsset[position] - 1) {
+            int existingCountry = countryCode(entries[position]);
+            if (existingCountry != country) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, 2 * count);
+                }
+                found[count++] = existingCountry;
+            }
+        }
+        var inInsertionOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            inInsertionOrder[i] = found[count - 1 - i];
+        }
+        return inInsertionOrder;
+    }
+
+    boolean add(long packed) {
+        return add(packed, 0);
+    }
+
+    boolean add(long packed, long stamp) {
+        if (contains(packed)) {
+            return false;
+        }
+        if (size == entries.length) {
+            int capacity = entries.length + (entries.length >> 1);
+            entries = Arrays.copyOf(entries, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+            previousSameAsset = Arrays.copyOf(previousSameAsset, capacity);
+            allocateSlots(capacity);
+            reindex();
+        }
+        entries[size] = packed;
+        stamps[size] = stamp;
+        index(size++);
+        return true;
+    }
+
+    boolean remove(long packed) {
+        int position = find(packed);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+        System.arraycopy(stamps, position + 1, stamps, position, size - position - 1);
+        size--;
+        reindex();
+        return true;
+    }
+
+    /**
+     * Removes the matching entries in a single pass, keeping the order of the rest.
+     *
+     * @return number of removed entries
+     */
+    int removeAll(EntryPredicate predicate) {
+        int kept = 0;
+        for (int position = 0; position < size; position++) {
+            if (!predicate.test(entries[position], stamps[position])) {
+                entries[kept] = entries[position];
+                stamps[kept++] = stamps[position];
+            }
+        }
+        int removed = size - kept;
+        if (removed > 0) {
+            size = kept;
+            reindex();
+        }
+        return removed;
+    }
+
+    private int find(long packed) {
+        for (int slot = mix(packed) & mask; ; slot = (slot + 1) & mask) {
+            int position = slots[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (entries[position] == packed) {
+                return position;
+            }
+        }
+    }
+
+    private int latestWithAsset(int assetCode) {
+        for (int slot = mix(assetCode) & mask; ; slot = (slot + 1) & mask) {
+            int position = assetSlots[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (assetCode(entries[position]) == assetCode) {
+                return position;
+            }
+        }
+    }
+
+    private void index(int position) {
+        long packed = entries[position];
+        int slot = mix(packed) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = position + 1;
+
+        int assetCode = assetCode(packed);
+        for (int assetSlot = mix(assetCode) & mask; ; assetSlot = (assetSlot + 1) & mask) {
+            int latest = assetSlots[assetSlot] - 1;
+            if (latest < 0 || assetCode(entries[latest]) == assetCode) {
+                previousSameAsset[position] = latest + 1;
+                assetSlots[assetSlot] = position + 1;
+                return;
+            }
+        }
+    }
+
+    private void reindex() {
+        Arrays.fill(slots, EMPTY);
+        Arrays.fill(assetSlots, EMPTY);
+        for (int position = 0; position < size; position++) {
+            index(position);
+        }
+    }
+
+    private void allocateSlots(int capacity) {
+        // load factor of at most 0.5
+        int slotCount = Integer.highestOneBit(capacity) << 2;
+        slots = new int[slotCount];
+        assetSlots = new int[slotCount];
+        mask = slotCount - 1;
+    }
+
+    private static int mix(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    interface EntryPredicate {
+        boolean test(long packed, long stamp);
+    }
+}
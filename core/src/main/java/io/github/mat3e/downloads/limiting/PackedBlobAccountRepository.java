@@ -0,0 +1,316 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * {@link AccountRepository} keeping all the assets of an account in a single {@code packed_assets} column of
+ * {@code downloading_accounts} ({@link AssetBlob}), instead of a row per asset in {@code downloaded_assets}. Loading
+ * is a single row read, saving a single row write, versioned the same way as the aggregate.
+ */
+@RequiredArgsConstructor
+class PackedBlobAccountRepository implements AccountRepository {
+    private static final String SELECT = """
+            select id, limitation, version, packed_assets from downloading_accounts
+            where id = :id""";
+    private static final String INSERT = """
+            insert into downloading_accounts (id, limitation, version, asset_count, packed_assets)
+            values (:id, :limit, 0, :assetCount, :packedAssets)""";
+    private static final String UPDATE = """
+            update downloading_accounts
+            set packed_assets = :packedAssets, asset_count = :assetCount, version = version + 1
+            where id = :id and version = :version""";
+
+    private final NamedParameterJdbcOperations jdbc;
+    private final StoredCodes codes;
+
+    @Override
+    public Account save(Account account) {
+        var id = account.id().getId();
+        var blob = new AssetBlob(account.assets(), account.downloadTimes());
+        var params = new HashMap<String, Object>();
+        params.put("id", id);
+        params.put("limit", account.limit());
+        params.put("version", account.version());
+        params.put("assetCount", blob.assets().size());
+        params.put("packedAssets", blob.toBytes(codes));
+        int version;
+        if (account.version() == null) {
+            jdbc.update(INSERT, params);
+            version = 0;
+        } else if (jdbc.update(UPDATE, params) == 0) {
+            throw new OptimisticLockingFailureException("Account " + id + " changed meanwhile");
+        } else {
+            version = account.version() + 1;
+        }
+        return Account.restore(account.id(), blob.assets(), blob.downloadTimes(), account.limit(), version, codes);
+    }
+
+    @Override
+    public Optional<Account> findById(String id) {
+        return jdbc.query(SELECT, Map.of("id", id), (row, number) -> {
+            var blob = AssetBlob.read(row.getBytes("packed_assets"), codes);
+            return Account.restore(
+                    AccountId.valueOf(row.getString("id")),
+                    blob.assets(),
+                    blob.downloadTimes(),
+                    row.getInt("limitation"),
+                    row.getInt("version"),
+                    codes);
+        }).stream().findFirst();
+    }
+}
+
+/**
+ * Binary form of the assets of an account, in order:
+ * <pre>
+ * byte    format version (2)
+ * varint  number of assets, then for each:
+ *         varint code of the asset id ({@link StoredCodes})
+ *         varint code of the country ({@link StoredCodes})
+ *         varlong download time in epoch millis + 1, 0 when unknown
+ * </pre>
+ * The format version comes first, so the layout can change while old blobs stay readable. Version 1, written before
+ * the lookup tables, had the values themselves (each country just once per account):
+ * <pre>
+ * byte    format version (1)
+ * varint  number of countries, then for each: varint length, UTF-8 country code
+ * varint  number of assets, then for each:
+ *         varint length, UTF-8 asset id
+ *         varint index of the country above
+ *         varlong download time in epoch millis + 1, 0 when unknown
+ * </pre>
+ */
+record AssetBlob(List<Asset> assets, List<Instant> downloadTimes) {
+    static final byte VALUES_FORMAT = 1;
+    static final byte FORMAT_VERSION = 2;
+    private static final AssetBlob EMPTY = new AssetBlob(List.of(), List.of());
+
+    /**
+     * @param bytes {@code null} for accounts without assets written yet
+     */
+    static AssetBlob read(byte[] bytes, StoredCodes codes) {
+        if (bytes == null) {
+            return EMPTY;
+        }
+        var input = ByteBuffer.wrap(bytes);
+        byte version = input.get();
+        return switch (version) {
+            case FORMAT_VERSION -> readCodes(input, codes);
+            case VALUES_FORMAT -> readValues(input);
+            default -> throw new IllegalStateException("Unknown packed assets format: " + version);
+        };
+    }
+
+    private static AssetBlob readCodes(ByteBuffer input, StoredCodes codes) {
+        int assetCount = readVarInt(input);
+        var assets = new ArrayList<Asset>(assetCount);
+        var downloadTimes = new ArrayList<Instant>(assetCount);
+        for (int i = 0; i < assetCount; i++) {
+            var assetId = codes.decodeAsset(readVarInt(input));
+            assets.add(Asset.withId(assetId).inCountry(codes.decodeCountry(readVarInt(input))));
+            downloadTimes.add(readDownloadTime(input));
+        }
+        return new AssetBlob(assets, downloadTimes);
+    }
+
+    private static AssetBlob readValues(ByteBuffer input) {
+        var countries = new String[readVarInt(input)];
+        for (int i = 0; i < countries.length; i++) {
+            countries[i] = readString(input);
+        }
+        int assetCount = readVarInt(input);
+        var assets = new ArrayList<Asset>(assetCount);
+        var downloadTimes = new ArrayList<Instant>(assetCount);
+        for (int i = 0; i < assetCount; i++) {
+            var assetId = readString(input);
+            assets.add(Asset.withId(assetId).inCountry(countries[readVarInt(input)]));
+            downloadTimes.add(readDownloadTime(input));
+        }
+        return new AssetBlob(assets, downloadTimes);
+    }
+
+    byte[] toBytes(StoredCodes codes) {
+        // about 2 bytes of codes (more for a big catalog) and 6 bytes of time per asset
+        var output = new ByteArrayOutputStream(16 + 8 * assets.size());
+        output.write(FORMAT_VERSION);
+        writeVarLong(output, assets.size());
+        for (int i = 0; i < assets.size(); i++) {
+            var asset = assets.get(i);
+            writeVarLong(output, codes.encodeAsset(asset.getId()));
+            writeVarLong(output, codes.encodeCountry(asset.getCountryCode()));
+            writeDownloadTime(output, downloadTimes.get(i));
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeDownloadTime(ByteArrayOutputStream output, Instant downloadedAt) {
+        writeVarLong(output, downloadedAt == null ? 0 : downloadedAt.toEpochMilli() + 1);
+    }
+
+    private static Instant readDownloadTime(ByteBuffer input) {
+        long stamp = readVarLong(input);
+        return stamp == 0 ? null : Instant.ofEpochMilli(stamp - 1);
+    }
+
+    /* 7 bits per byte, the highest bit set when more bytes follow */
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static String readString(ByteBuffer input) {
+        var bytes = new byte[readVarInt(input)];
+        input.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer input) {
+        return Math.toIntExact(readVarLong(input));
+    }
+
+    private static long readVarLong(ByteBuffer input) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = input.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+    }
+}
+
+/**
+ * Moves assets between the layouts, an account per transaction: {@link #pack()} from {@code downloaded_assets} rows
+ * into {@code packed_assets}, {@link #unpack()} back. Both bump the version of each account moved, so writers still
+ * using the other layout fail on optimistic locking instead of losing changes. Repeating either one is safe.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class PackedBlobMigration {
+    enum Direction {PACK, UNPACK}
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String NEXT_UNPACKED = """
+            select id from downloading_accounts
+            where id > :after and packed_assets is null
+            order by id
+            limit :chunkSize""";
+    private static final String NEXT_PACKED = """
+            select id from downloading_accounts
+            where id > :after and packed_assets is not null
+            order by id
+            limit :chunkSize""";
+    private static final String SELECT_ROWS = """
+            select asset_id, country_code, downloaded_at from downloaded_assets
+            where account = :id
+            order by downloading_accounts_key""";
+    private static final String DELETE_ROWS = "delete from downloaded_assets where account = :id";
+    private static final String INSERT_ROW = """
+            insert into downloaded_assets (asset_id, country_code, downloaded_at, version, account, downloading_accounts_key)
+            values (:assetId, :countryCode, :downloadedAt, 0, :id, :key)""";
+    private static final String SELECT_BLOB = "select packed_assets from downloading_accounts where id = :id";
+    private static final String WRITE_BLOB = """
+            update downloading_accounts
+            set packed_assets = :packedAssets, asset_count = :assetCount, version = version + 1
+            where id = :id""";
+
+    private final NamedParameterJdbcOperations jdbc;
+    private final TransactionOperations transactions;
+    private final StoredCodes codes;
+
+    /**
+     * @return how many accounts were moved
+     */
+    int migrate(Direction direction) {
+        int migrated = direction == Direction.PACK ? pack() : unpack();
+        log.info("Moved assets of " + migrated + " accounts, " + direction);
+        return migrated;
+    }
+
+    int pack() {
+        return forEachAccount(NEXT_UNPACKED, id -> {
+            var assets = new ArrayList<Asset>();
+            var downloadTimes = new ArrayList<Instant>();
+            jdbc.query(SELECT_ROWS, Map.of("id", id), row -> {
+                assets.add(Asset.withId(row.getString("asset_id")).inCountry(row.getString("country_code")));
+                var downloadedAt = row.getTimestamp("downloaded_at");
+                downloadTimes.add(downloadedAt == null ? null : downloadedAt.toInstant());
+            });
+            writeBlob(id, new AssetBlob(assets, downloadTimes).toBytes(codes), assets.size());
+            jdbc.update(DELETE_ROWS, Map.of("id", id));
+        });
+    }
+
+    int unpack() {
+        return forEachAccount(NEXT_PACKED, id -> {
+            var blob = AssetBlob.read(jdbc.queryForObject(SELECT_BLOB, Map.of("id", id), byte[].class), codes);
+            for (int key = 0; key < blob.assets().size(); key++) {
+                var asset = blob.assets().get(key);
+                var downloadedAt = blob.downloadTimes().get(key);
+                var params = new HashMap<String, Object>();
+                params.put("id", id);
+                params.put("assetId", asset.getId());
+                params.put("countryCode", asset.getCountryCode());
+                params.put("downloadedAt", downloadedAt == null ? null : Timestamp.from(downloadedAt));
+                params.put("key", key);
+                jdbc.update(INSERT_ROW, params);
+            }
+            writeBlob(id, null, blob.assets().size());
+        });
+    }
+
+    private int forEachAccount(String nextAccounts, Consumer<String> migration) {
+        int migrated = 0;
+        var after = "";
+        List<String> chunk;
+        do {
+            chunk = jdbc.queryForList(
+                    nextAccounts,
+                    Map.of("after", after, "chunkSize", CHUNK_SIZE),
+                    String.class);
+            for (var id : chunk) {
+                try {
+                    transactions.executeWithoutResult(status -> migration.accept(id));
+                    migrated++;
+                } catch (DataIntegrityViolationException e) {
+                    // e.g. rows of the other layout left by an interrupted migration, to be cleaned up by hand
+                    log.warn("Assets of account " + id + " not moved: " + e.getMessage());
+                }
+                after = id;
+            }
+        } while (chunk.size() == CHUNK_SIZE);
+        return migrated;
+    }
+
+    private void writeBlob(String id, byte[] packedAssets, int assetCount) {
+        var params = new HashMap<String, Object>();
+        params.put("id", id);
+        params.put("packedAssets", packedAssets);
+        params.put("assetCount", assetCount);
+        jdbc.update(WRITE_BLOB, params);
+    }
+}
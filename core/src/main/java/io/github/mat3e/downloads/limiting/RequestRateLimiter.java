@@ -0,0 +1,143 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Per-account request rate limiting in front of {@link LimitingFacade}, decided in memory, without any I/O.
+ * <p>
+ * Each account has a token bucket kept as a single timestamp: when the bucket is full again. Taking a token moves it
+ * forward by one token's worth of time with a CAS, passing time refills the bucket. Buckets which stay full for
+ * {@code idleEviction} are evicted, as they don't differ from new ones.
+ */
+public class RequestRateLimiter implements AutoCloseable {
+    private final RequestRate defaultRate;
+    private final Map<String, RequestRate> rates = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongSupplier nanoTime;
+    private final long idleEvictionNanos;
+    private final ScheduledExecutorService evictor;
+
+    RequestRateLimiter(RequestRate defaultRate, Duration idleEviction) {
+        this(defaultRate, idleEviction, System::nanoTime);
+    }
+
+    RequestRateLimiter(RequestRate defaultRate, Duration idleEviction, LongSupplier nanoTime) {
+        this.defaultRate = defaultRate;
+        this.nanoTime = nanoTime;
+        idleEvictionNanos = idleEviction.toNanos();
+        evictor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("rate-limit-evictor").factory());
+        evictor.scheduleWithFixedDelay(this::evictIdle, idleEvictionNanos, idleEvictionNanos, NANOSECONDS);
+    }
+
+    /**
+     * @throws RequestRateExceeded when the account has no tokens left
+     */
+    public void acquire(AccountId accountId) {
+        var id = accountId.getId();
+        long now = nanoTime.getAsLong();
+        long waitNanos = buckets.computeIfAbsent(id, ignored -> new TokenBucket(rates.getOrDefault(id, defaultRate), now))
+                .tryTake(now);
+        if (waitNanos > 0) {
+            throw new RequestRateExceeded(Duration.ofNanos(waitNanos));
+        }
+    }
+
+    /**
+     * @param rate new rate of the account, {@code null} for the default one
+     */
+    public void overrideRate(AccountId accountId, RequestRate rate) {
+        var id = accountId.getId();
+        if (rate == null) {
+            rates.remove(id);
+        } else {
+            rates.put(id, rate);
+        }
+        // next request starts a bucket with the new rate
+        buckets.remove(id);
+    }
+
+    void evictIdle() {
+        long now = nanoTime.getAsLong();
+        buckets.values().removeIf(bucket -> bucket.fullFor(now) >= idleEvictionNanos);
+    }
+
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    @Override
+    public void close() {
+        evictor.close();
+    }
+
+    /**
+     * @param perSecond tokens added each second
+     * @param burst     bucket capacity, i.e. how many requests in a row are allowed after a break
+     */
+    public record RequestRate(double perSecond, int burst) {
+        public RequestRate {
+            if (perSecond <= 0 || burst < 1) {
+                throw new BusinessException("Request rate must be positive and allow at least a single request");
+            }
+        }
+
+        long nanosPerToken() {
+            return Math.max(1, (long) (1_000_000_000 / perSecond));
+        }
+    }
+
+    @Getter
+    public static class RequestRateExceeded extends BusinessException {
+        private final Duration retryAfter;
+
+        RequestRateExceeded(Duration retryAfter) {
+            super("Too many requests, retry after " + retryAfter.toMillis() + " ms");
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    private static final class TokenBucket {
+        private final long nanosPerToken;
+        private final long capacityNanos;
+        private final AtomicLong fullAt;
+
+        TokenBucket(RequestRate rate, long now) {
+            nanosPerToken = rate.nanosPerToken();
+            capacityNanos = nanosPerToken * rate.burst();
+            fullAt = new AtomicLong(now);
+        }
+
+        /**
+         * @return 0 when a token was taken, nanoseconds till the next one otherwise
+         */
+        long tryTake(long now) {
+            while (true) {
+                long current = fullAt.get();
+                long next = (current - now > 0 ? current : now) + nanosPerToken;
+                long waitNanos = next - capacityNanos - now;
+                if (waitNanos > 0) {
+                    return waitNanos;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        long fullFor(long now) {
+            return now - fullAt.get();
+        }
+    }
+}
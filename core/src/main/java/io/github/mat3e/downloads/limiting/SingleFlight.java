@@ -0,0 +1,51 @@
+package io.github.mat3e.downloads.limiting;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller loads, the ones arriving meanwhile wait for its result
+ * instead of loading again. Nothing is kept once the load finishes, so it's not a cache.
+ * <p>
+ * Writers should {@link #forget(Object)} the key once they're done, so that later reads start a new load rather than
+ * joining one which might have read the state from before the write.
+ */
+final class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    V load(K key, Supplier<V> loader) {
+        var flight = new CompletableFuture<V>();
+        var ongoing = flights.putIfAbsent(key, flight);
+        if (ongoing != null) {
+            return join(ongoing);
+        }
+        try {
+            var result = loader.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    void forget(K key) {
+        flights.remove(key);
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
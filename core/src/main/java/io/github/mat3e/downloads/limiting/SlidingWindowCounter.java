@@ -0,0 +1,96 @@
+package io.github.mat3e.downloads.limiting;
+
+import java.time.Duration;
+
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
+
+/**
+ * Number of events within a sliding window of time, counted in a ring of buckets. Adding, removing and counting are
+ * O(1) regardless of how many events there are (rotating the ring is amortized over the buckets passed).
+ * <p>
+ * The window is accurate to a bucket: it covers the current bucket and {@code buckets - 1} whole buckets before it.
+ */
+final class SlidingWindowCounter {
+    private final long bucketMillis;
+    private final int[] counts;
+    /* index of the latest bucket since epoch, i.e. time / bucketMillis */
+    private long latest;
+    private int total;
+
+    SlidingWindowCounter(Duration window, int buckets, long nowMillis) {
+        bucketMillis = Math.max(1, window.toMillis() / buckets);
+        counts = new int[buckets];
+        latest = floorDiv(nowMillis, bucketMillis);
+    }
+
+    /**
+     * @return start of the oldest bucket counted at the given time, i.e. the beginning of the window
+     */
+    long windowStart(long nowMillis) {
+        return (floorDiv(nowMillis, bucketMillis) - counts.length + 1) * bucketMillis;
+    }
+
+    /**
+     * Adds an event at the given time only if there are less than {@code limit} events in the window.
+     */
+    synchronized boolean tryAdd(long nowMillis, int limit) {
+        rotate(nowMillis);
+        if (total >= limit) {
+            return false;
+        }
+        counts[slot(latest)]++;
+        total++;
+        return true;
+    }
+
+    /**
+     * Adds an event which might have happened earlier, e.g. when rebuilding the counter. Ignored outside the window.
+     */
+    synchronized void add(long atMillis) {
+        rotate(atMillis);
+        long bucket = floorDiv(atMillis, bucketMillis);
+        if (inWindow(bucket)) {
+            counts[slot(bucket)]++;
+            total++;
+        }
+    }
+
+    /**
+     * Takes back an event added at the given time, e.g. when it didn't happen after all.
+     */
+    synchronized void remove(long atMillis) {
+        long bucket = floorDiv(atMillis, bucketMillis);
+        if (inWindow(bucket) && counts[slot(bucket)] > 0) {
+            counts[slot(bucket)]--;
+            total--;
+        }
+    }
+
+    synchronized int count(long nowMillis) {
+        rotate(nowMillis);
+        return total;
+    }
+
+    private void rotate(long nowMillis) {
+        long current = floorDiv(nowMillis, bucketMillis);
+        if (current <= latest) {
+            return;
+        }
+        // each new bucket takes the slot of the one leaving the window
+        long passed = Math.min(current - latest, counts.length);
+        for (long bucket = current - passed + 1; bucket <= current; bucket++) {
+            total -= counts[slot(bucket)];
+            counts[slot(bucket)] = 0;
+        }
+        latest = current;
+    }
+
+    private boolean inWindow(long bucket) {
+        return bucket <= latest && bucket > latest - counts.length;
+    }
+
+    private int slot(long bucket) {
+        return (int) floorMod(bucket, (long) counts.length);
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codes of country codes and asset ids from the {@code country_codes} and {@code asset_codes} lookup tables, stored
+ * instead of the values themselves ({@link AssetBlob}) and packed in loaded accounts. These are shared by all the
+ * instances and stable across restarts.
+ * <p>
+ * A new value is registered in its own transaction, so its code exists even when the transaction storing the code
+ * rolls back. Codes are cached both ways, just for values stored already, so
+ * the caches are bounded by the lookup tables.
+ */
+class StoredCodes implements AssetCodes {
+    private final Lookup countries;
+    private final Lookup assets;
+
+    /**
+     * @param registering starting a new transaction
+     */
+    StoredCodes(NamedParameterJdbcOperations jdbc, TransactionOperations registering) {
+        countries = new Lookup(jdbc, registering, "country_codes", "country_code");
+        assets = new Lookup(jdbc, registering, "asset_codes", "asset_id");
+    }
+
+    @Override
+    public int encodeCountry(String countryCode) {
+        return countries.encode(countryCode);
+    }
+
+    @Override
+    public int findCountry(String countryCode) {
+        return countries.find(countryCode);
+    }
+
+    @Override
+    public String decodeCountry(int code) {
+        return countries.decode(code);
+    }
+
+    @Override
+    public int encodeAsset(String assetId) {
+        return assets.encode(assetId);
+    }
+
+    @Override
+    public int findAsset(String assetId) {
+        return assets.find(assetId);
+    }
+
+    @Override
+    public String decodeAsset(int code) {
+        return assets.decode(code);
+    }
+
+    private static final class Lookup {
+        private final NamedParameterJdbcOperations jdbc;
+        private final TransactionOperations registering;
+        private final String selectCode;
+        private final String selectValue;
+        private final String insert;
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+
+        Lookup(
+                NamedParameterJdbcOperations jdbc,
+                TransactionOperations registering,
+                String table,
+                String column) {
+            this.jdbc = jdbc;
+            this.registering = registering;
+            selectCode = "select code from " + table + " where " + column + " = :value";
+            selectValue = "select " + column + " from " + table + " where code = :code";
+            insert = "insert into " + table + " (" + column + ") values (:value)";
+        }
+
+        int encode(String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null can't be encoded");
+            }
+            var code = codes.get(value);
+            if (code == null) {
+                code = select(value).orElseGet(() -> register(value));
+                cache(code, value);
+            }
+            return code;
+        }
+
+        /* absent values are not cached, so the cache stays bounded by the lookup table */
+        int find(String value) {
+            if (value == null) {
+                return ABSENT;
+            }
+            var code = codes.get(value);
+            if (code == null) {
+                code = select(value).orElse(ABSENT);
+                if (code != ABSENT) {
+                    cache(code, value);
+                }
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            var value = values.get(code);
+            if (value == null) {
+                value = jdbc.queryForObject(selectValue, Map.of("code", code), String.class);
+                cache(code, Objects.requireNonNull(value));
+            }
+            return value;
+        }
+
+        private Optional<Integer> select(String value) {
+            return jdbc.queryForList(selectCode, Map.of("value", value), Integer.class).stream().findFirst();
+        }
+
+        private int register(String value) {
+            try {
+                return insert(value);
+            } catch (DuplicateKeyException registeredMeanwhile) {
+                // a new transaction sees the row committed by the other one
+                return Objects.requireNonNull(registering.execute(status ->
+                        jdbc.queryForObject(selectCode, Map.of("value", value), Integer.class)));
+            }
+        }
+
+        private int insert(String value) {
+            return Objects.requireNonNull(registering.execute(status -> {
+                var key = new GeneratedKeyHolder();
+                jdbc.update(insert, new MapSqlParameterSource("value", value), key, new String[]{"code"});
+                return Objects.requireNonNull(key.getKey()).intValue();
+            }));
+        }
+
+        private void cache(int code, String value) {
+            // the first cached instance is the canonical one, returned by decode
+            var cached = values.putIfAbsent(code, value);
+            codes.putIfAbsent(cached == null ? value : cached, code);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.event.out.AssetHeldByManyAccounts;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Batch scan of all the downloaded assets for what a single account can't tell: an asset held by unusually many
+ * accounts ({@link AssetHeldByManyAccounts}) and an account holding assets from many countries
+ * ({@link SuspiciousLimitingEvent#manyCountries}).
+ * <p>
+ * Each signal is a pass over {@code downloaded_assets} in the order of an index, split into {@code parallelism} key
+ * ranges of about the same number of rows, each read through its own cursor (fetch size of the given
+ * {@link JdbcOperations}, in a read-only transaction). Rows of an account (or an asset) come one after another within
+ * a single range, sorted by the counted column, so distinct values are counted by comparing neighbours and memory
+ * doesn't grow with the number of rows. At most {@code parallelism} cursors are open at once (each holding a
+ * connection), handing counted groups in batches to a fork-join pool, which checks the thresholds and reports. Just a
+ * few batches per worker wait, so slow reporting holds the cursors back instead of piling the groups up.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class SuspiciousActivityScan {
+    private static final Pass BY_ACCOUNT = new Pass("account", "country_code");
+    private static final Pass BY_ASSET = new Pass("asset_id", "account");
+    private static final String COUNT_ROWS = "select count(*) from downloaded_assets";
+    private static final String NTH_KEY = """
+            select %1$s from downloaded_assets
+            order by %1$s
+            offset ? rows fetch next 1 rows only""";
+    private static final int BATCH_SIZE = 1000;
+    private static final int BATCHES_PER_WORKER = 4;
+
+    private final JdbcOperations streaming;
+    private final TransactionOperations readOnly;
+    private final ReportingFacade reporting;
+    private final Clock clock;
+    private final Thresholds thresholds;
+    private final int parallelism;
+
+    /**
+     * @param countriesPerAccount an account is reported from this many countries of its assets
+     * @param accountsPerAsset    an asset is reported from this many accounts holding it
+     */
+    record Thresholds(int countriesPerAccount, int accountsPerAsset) {
+    }
+
+    /**
+     * @param rows     read by each of the passes
+     * @param accounts reported for many countries
+     * @param assets   reported for many accounts
+     */
+    record Summary(long rows, long accounts, long assets) {
+    }
+
+    Summary scan() {
+        var scannedAt = Clock.fixed(clock.instant(), clock.getZone());
+        var pool = new ForkJoinPool(parallelism);
+        var reports = new Reports(pool, parallelism * BATCHES_PER_WORKER);
+        var accounts = new LongAdder();
+        var assets = new LongAdder();
+        try (var cursors = Executors.newFixedThreadPool(
+                parallelism,
+                Thread.ofPlatform().name("suspicious-activity-scan-", 0).factory())) {
+            Function<CountedGroup, DomainEvent> manyCountries = group ->
+                    group.count() >= thresholds.countriesPerAccount()
+                            ? SuspiciousLimitingEvent.manyCountries(
+                            scannedAt,
+                            AccountId.valueOf(group.key()),
+                            Math.toIntExact(group.count()))
+                            : null;
+            Function<CountedGroup, DomainEvent> manyAccounts = group ->
+                    group.count() >= thresholds.accountsPerAsset()
+                            ? new AssetHeldByManyAccounts(group.key(), group.count(), scannedAt.instant())
+                            : null;
+            var byAccount = ranges(BY_ACCOUNT).stream()
+                    .map(range -> CompletableFuture.supplyAsync(
+                            () -> countDistinct(BY_ACCOUNT, range, reports, manyCountries, accounts),
+                            cursors))
+                    .toList();
+            var byAsset = ranges(BY_ASSET).stream()
+                    .map(range -> CompletableFuture.supplyAsync(
+                            () -> countDistinct(BY_ASSET, range, reports, manyAccounts, assets),
+                            cursors))
+                    .toList();
+            long rows = byAccount.stream().mapToLong(CompletableFuture::join).sum();
+            byAsset.forEach(CompletableFuture::join);
+            reports.awaitAll();
+            var summary = new Summary(rows, accounts.sum(), assets.sum());
+            log.info("Scanned " + rows + " downloaded assets, reported " + summary.accounts() + " accounts and "
+                    + summary.assets() + " assets");
+            return summary;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return consecutive ranges of group keys, each with about the same number of rows, together covering all of them
+     */
+    private List<KeyRange> ranges(Pass pass) {
+        long total = streaming.queryForObject(COUNT_ROWS, Long.class);
+        // in the order of the database, which may compare keys unlike String
+        var bounds = new ArrayList<String>(parallelism);
+        for (int i = 1; i < parallelism; i++) {
+            long skip = total * i / parallelism;
+            streaming.queryForList(NTH_KEY.formatted(pass.group()), String.class, skip).stream()
+                    .filter(bound -> bounds.isEmpty() || !bounds.getLast().equals(bound))
+                    .forEach(bounds::add);
+        }
+        var ranges = new ArrayList<KeyRange>(bounds.size() + 1);
+        String from = null;
+        for (var bound : bounds) {
+            ranges.add(new KeyRange(from, bound));
+            from = bound;
+        }
+        ranges.add(new KeyRange(from, null));
+        return ranges;
+    }
+
+    /**
+     * @return how many rows of the range were read
+     */
+    private long countDistinct(
+            Pass pass,
+            KeyRange range,
+            Reports reports,
+            Function<CountedGroup, DomainEvent> suspicious,
+            LongAdder reported) {
+        var reader = new GroupReader(batch -> reports.submit(batch, suspicious, reported));
+        RowCallbackHandler readRow = row -> reader.read(row.getString(1), row.getString(2));
+        readOnly.executeWithoutResult(status -> streaming.query(pass.query(range), readRow, range.arguments()));
+        reader.finish();
+        return reader.rows;
+    }
+
+    /**
+     * Groups (e.g. accounts) with the counted values (e.g. countries), read ordered by both.
+     */
+    private record Pass(String group, String counted) {
+        String query(KeyRange range) {
+            var conditions = new ArrayList<String>(2);
+            if (range.from() != null) {
+                conditions.add(group + " >= ?");
+            }
+            if (range.to() != null) {
+                conditions.add(group + " < ?");
+            }
+            return "select " + group + ", " + counted + " from downloaded_assets"
+                    + (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions))
+                    + " order by " + group + ", " + counted;
+        }
+    }
+
+    /**
+     * @param from inclusive, {@code null} for the first range
+     * @param to   exclusive, {@code null} for the last range
+     */
+    private record KeyRange(String from, String to) {
+        Object[] arguments() {
+            return Stream.of(from, to).filter(Objects::nonNull).toArray();
+        }
+    }
+
+    private record CountedGroup(String key, long count) {
+    }
+
+    @RequiredArgsConstructor
+    private static final class GroupReader {
+        private final Consumer<List<CountedGroup>> batches;
+        private List<CountedGroup> batch = new ArrayList<>(BATCH_SIZE);
+        private String key;
+        private String lastValue;
+        private long count;
+        private long rows;
+
+        void read(String groupKey, String value) {
+            rows++;
+            if (!groupKey.equals(key)) {
+                finishGroup();
+                key = groupKey;
+                lastValue = null;
+            }
+            if (!Objects.equals(value, lastValue)) {
+                count++;
+                lastValue = value;
+            }
+        }
+
+        void finish() {
+            finishGroup();
+            if (!batch.isEmpty()) {
+                batches.accept(batch);
+            }
+        }
+
+        private void finishGroup() {
+            if (key == null) {
+                return;
+            }
+            batch.add(new CountedGroup(key, count));
+            count = 0;
+            if (batch.size() == BATCH_SIZE) {
+                batches.accept(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    /* reporting on the pool, with a bounded number of batches waiting */
+    private final class Reports {
+        private final ForkJoinPool pool;
+        private final Semaphore waiting;
+        private final int capacity;
+
+        Reports(ForkJoinPool pool, int capacity) {
+            this.pool = pool;
+            this.capacity = capacity;
+            waiting = new Semaphore(capacity);
+        }
+
+        void submit(List<CountedGroup> batch, Function<CountedGroup, DomainEvent> suspicious, LongAdder reported) {
+            waiting.acquireUninterruptibly();
+            pool.execute(() -> {
+                try {
+                    for (var group : batch) {
+                        var event = suspicious.apply(group);
+                        if (event != null) {
+                            reporting.recordEvent(event);
+                            reported.increment();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Reporting suspicious activity failed", e);
+                } finally {
+                    waiting.release();
+                }
+            });
+        }
+
+        void awaitAll() {
+            waiting.acquireUninterruptibly(capacity);
+            waiting.release(capacity);
+        }
+    }
+}
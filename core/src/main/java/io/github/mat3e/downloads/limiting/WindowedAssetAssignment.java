@@ -0,0 +1,235 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.LimitingFacade.DownloadWindowExceeded;
+import io.github.mat3e.downloads.limiting.LimitingFacade.RejectedAsset;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * "At most {@code downloads} per {@code length}" on top of the absolute limit, with the window split into
+ * {@code buckets}. No downloads means no such limit.
+ *
+ * @param refresh how long counters in memory are trusted before rebuilt from {@link DownloadTimes}, i.e. how late
+ *                downloads through other instances are taken into account
+ */
+record DownloadWindow(int downloads, Duration length, int buckets, Duration refresh) {
+    static final DownloadWindow NONE = new DownloadWindow(0, Duration.ofDays(30), 30, Duration.ofSeconds(5));
+
+    DownloadWindow {
+        if (buckets < 1 || length.isNegative() || length.isZero()) {
+            throw new IllegalArgumentException("Download window needs a positive length and at least a single bucket");
+        }
+        if (refresh.isNegative()) {
+            throw new IllegalArgumentException("Download window refresh can't be negative");
+        }
+    }
+
+    boolean enabled() {
+        return downloads > 0;
+    }
+
+    AssetAssignment limiting(AssetAssignment assignment, Clock clock, DownloadTimes downloadTimes) {
+        return enabled() ? new WindowedAssetAssignment(assignment, this, clock, downloadTimes) : assignment;
+    }
+}
+
+/**
+ * Checks {@link DownloadWindow} before the decorated strategy. Each download is recorded in {@link DownloadTimes}
+ * (shared by the instances) and counted per account in memory ({@link SlidingWindowCounter}), so the check doesn't
+ * query anything most of the time. A counter is rebuilt with a single range query of {@link DownloadTimes} when
+ * missing, older than {@link DownloadWindow#refresh()} or about to admit the last downloads allowed, so downloads
+ * through other instances are taken into account. Counters built before that are evicted.
+ * <p>
+ * Downloads count for the whole window, even when the asset is removed meanwhile. Duplicates and assets rejected by
+ * the absolute limit don't count. Any other failure drops the counter of the account, to be rebuilt on the next
+ * assignment.
+ */
+@Slf4j
+class WindowedAssetAssignment implements AssetAssignment {
+    private final AssetAssignment assignment;
+    private final DownloadWindow window;
+    private final Clock clock;
+    private final DownloadTimes downloadTimes;
+    private final long refreshMillis;
+    private final Map<AccountId, WindowCount> counters = new ConcurrentHashMap<>();
+    private final AtomicLong evictedAt;
+
+    WindowedAssetAssignment(AssetAssignment assignment, DownloadWindow window, Clock clock, DownloadTimes downloadTimes) {
+        this.assignment = assignment;
+        this.window = window;
+        this.clock = clock;
+        this.downloadTimes = downloadTimes;
+        refreshMillis = window.refresh().toMillis();
+        evictedAt = new AtomicLong(clock.millis());
+    }
+
+    @Override
+    public List<SuspiciousLimitingEvent> assign(AccountId accountId, Asset asset) {
+        long now = clock.millis();
+        var counter = counter(accountId, now, 1);
+        if (!counter.tryAdd(now, window.downloads())) {
+            throw exceeded();
+        }
+        List<SuspiciousLimitingEvent> events;
+        try {
+            events = assignment.assign(accountId, asset);
+        } catch (AccountLimitExceeded rejected) {
+            counter.remove(now);
+            throw rejected;
+        } catch (RuntimeException failure) {
+            counters.remove(accountId);
+            throw failure;
+        }
+        if (events.stream().anyMatch(SuspiciousLimitingEvent::duplicate)) {
+            counter.remove(now);
+        } else {
+            record(accountId, now, 1);
+        }
+        return events;
+    }
+
+    @Override
+    public List<SuspiciousLimitingEvent> unassign(AccountId accountId, Asset asset) {
+        return assignment.unassign(accountId, asset);
+    }
+
+    @Override
+    public int unassignAll(AccountId accountId, List<ExpiredAsset> expired) {
+        return assignment.unassignAll(accountId, expired);
+    }
+
+    @Override
+    public AssignedBatch assignAll(AccountId accountId, List<Asset> assets) {
+        long now = clock.millis();
+        var counter = counter(accountId, now, assets.size());
+        var admitted = new ArrayList<Asset>(assets.size());
+        var rejections = new ArrayList<RejectedAsset>();
+        for (var asset : assets) {
+            if (counter.tryAdd(now, window.downloads())) {
+                admitted.add(asset);
+            } else {
+                rejections.add(new RejectedAsset(asset, exceeded()));
+            }
+        }
+        AssignedBatch assigned;
+        try {
+            assigned = assignment.assignAll(accountId, admitted);
+        } catch (RuntimeException failure) {
+            counters.remove(accountId);
+            throw failure;
+        }
+        long notCounted = assigned.events().stream().filter(SuspiciousLimitingEvent::duplicate).count()
+                + assigned.rejections().size();
+        for (long i = 0; i < notCounted; i++) {
+            counter.remove(now);
+        }
+        record(accountId, now, admitted.size() - (int) notCounted);
+        rejections.addAll(assigned.rejections());
+        return new AssignedBatch(assigned.events(), rejections);
+    }
+
+    /**
+     * @param admitting how many downloads are about to be admitted
+     */
+    private SlidingWindowCounter counter(AccountId accountId, long now, int admitting) {
+        evictIdle(now);
+        var cached = counters.get(accountId);
+        if (cached != null && now - cached.builtAt() < refreshMillis) {
+            int count = cached.counter().count(now);
+            // downloads counted here happened for sure, so a full counter doesn't need to be checked
+            if (count >= window.downloads() || count + admitting < window.downloads()) {
+                return cached.counter();
+            }
+        }
+        var rebuilt = new WindowCount(new SlidingWindowCounter(window.length(), window.buckets(), now), now);
+        downloadTimes.since(accountId, Instant.ofEpochMilli(rebuilt.counter().windowStart(now)))
+                .forEach(downloadedAt -> rebuilt.counter().add(downloadedAt.toEpochMilli()));
+        counters.put(accountId, rebuilt);
+        return rebuilt.counter();
+    }
+
+    /* at most once per refresh, counters rebuilt before that are outdated anyway */
+    private void evictIdle(long now) {
+        long last = evictedAt.get();
+        if (now - last >= refreshMillis && evictedAt.compareAndSet(last, now)) {
+            counters.values().removeIf(count -> now - count.builtAt() >= refreshMillis);
+        }
+    }
+
+    /* the download happened already, so a failure here just leaves it to the counter in memory */
+    private void record(AccountId accountId, long now, int downloads) {
+        try {
+            for (int i = 0; i < downloads; i++) {
+                downloadTimes.record(accountId, Instant.ofEpochMilli(now));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Download of account " + accountId + " not recorded: " + e.getMessage());
+        }
+    }
+
+    private DownloadWindowExceeded exceeded() {
+        return new DownloadWindowExceeded(window.downloads(), window.length());
+    }
+
+    private record WindowCount(SlidingWindowCounter counter, long builtAt) {
+    }
+}
+
+/**
+ * Deletes downloads which left the window, every {@code interval}.
+ */
+@Slf4j
+class DownloadLogPurger implements AutoCloseable {
+    private final DownloadTimes downloadTimes;
+    private final Clock clock;
+    private final Duration length;
+    private final ScheduledExecutorService scheduler;
+
+    DownloadLogPurger(DownloadTimes downloadTimes, Clock clock, DownloadWindow window, Duration interval) {
+        this.downloadTimes = downloadTimes;
+        this.clock = clock;
+        length = window.length();
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("download-log-purger")
+                .priority(Thread.MIN_PRIORITY)
+                .factory());
+        scheduler.scheduleWithFixedDelay(this::purgeSafely, interval.toMillis(), interval.toMillis(), MILLISECONDS);
+    }
+
+    /**
+     * @return how many downloads were deleted
+     */
+    int purge() {
+        return downloadTimes.forgetBefore(clock.instant().minus(length));
+    }
+
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (DataAccessException e) {
+            log.error("Purging download log failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+}
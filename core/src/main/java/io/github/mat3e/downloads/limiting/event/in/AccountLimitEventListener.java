@@ -1,29 +1,83 @@
 package io.github.mat3e.downloads.limiting.event.in;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Priority;
 import io.github.mat3e.downloads.limiting.LimitingFacade;
 import io.github.mat3e.downloads.limiting.api.AccountId;
 import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+
+import static org.springframework.kafka.retrytopic.TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE;
+
+/**
+ * Failures are retried from separate topics ({@code limit-changes-retry-0}, {@code -retry-1}, ...), so the partition
+ * keeps moving meanwhile. See {@link LimitChangeFailures}.
+ * <p>
+ * When {@link ConcurrencyLimiter} has no room, the consumer waits for it rather than failing the message.
+ */
 @Service
 @RequiredArgsConstructor
 @ConditionalOnProperty("spring.kafka.consumer.group-id")
+@ConditionalOnExpression("!(" + KeyOrderedConsumptionConfiguration.ENABLED + ")")
 class AccountLimitEventListener {
     static final String TOPIC = "limit-changes";
 
     private final LimitingFacade facade;
+    private final LimitChangeFailures failures;
+    private final ConcurrencyLimiter concurrencyLimiter;
 
+    @RetryableTopic(
+            kafkaTemplate = "kafkaTemplate",
+            attempts = LimitChangeFailures.ATTEMPTS,
+            backoff = @Backoff(
+                    delayExpression = LimitChangeFailures.DELAY,
+                    multiplierExpression = LimitChangeFailures.MULTIPLIER),
+            exclude = BusinessException.class,
+            topicSuffixingStrategy = SUFFIX_WITH_INDEX_VALUE)
     @KafkaListener(topics = TOPIC)
-    public void execute(@Payload Message message) {
-        facade.overrideAccountLimit(message.accountId, message.limit);
+    public void execute(@Payload Message message, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
+        if (!TOPIC.equals(topic)) {
+            failures.retrying();
+        }
+        concurrencyLimiter.call(Priority.WRITE, () -> facade.overrideAccountLimit(message.accountId, message.limit));
     }
 
-    record Message(AccountId accountId, int limit) {
-        Message(String accountId, int limit) {
+    @DltHandler
+    public void handleDeadLetter(ConsumerRecord<String, Message> deadLetter) {
+        var reason = deadLetter.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        failures.deadLettered(
+                deadLetter.value(),
+                reason == null ? null : new String(reason.value(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Written back the way it's read (e.g. to {@link LimitChangeFailures#DLT}), with a plain account id.
+     */
+    record Message(@JsonIgnore AccountId accountId, int limit) {
+        @JsonCreator
+        Message(@JsonProperty("accountId") String accountId, @JsonProperty("limit") int limit) {
             this(AccountId.valueOf(accountId), limit);
         }
+
+        @JsonProperty("accountId")
+        String rawAccountId() {
+            return accountId.getId();
+        }
     }
 }
@@ -0,0 +1,118 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.limiting.event.in.AssetDownloadEventListener.Message;
+import io.github.mat3e.downloads.limiting.event.in.AssetDownloadEventListener.Rejection;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Download records applied to accounts, but maybe not committed to Kafka yet, with the rejections of their assets.
+ * Kept in {@code applied_download_records}, so records redelivered after a failed batch, a restart or a rebalance (to
+ * another instance too) are not assigned again.
+ * <p>
+ * A partition is consumed from its committed offset, so records below the first one of a batch are committed and
+ * forgotten then. Rejections of records applied together were sent before their first record got committed, so they
+ * are not given again once it is.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty("spring.kafka.consumer.group-id")
+class AppliedDownloadRecords {
+    private static final String FIND = """
+            select record_offset, group_offset, rejection, limitation from applied_download_records
+            where topic = :topic and record_partition = :partition and record_offset between :from and :to""";
+    private static final String INSERT = """
+            insert into applied_download_records
+                (topic, record_partition, record_offset, group_offset, rejection, limitation)
+            values (:topic, :partition, :offset, :groupOffset, :rejection, :limit)""";
+    private static final String FORGET = """
+            delete from applied_download_records
+            where topic = :topic and record_partition = :partition and record_offset < :offset""";
+
+    private final NamedParameterJdbcOperations jdbc;
+
+    /**
+     * Forgets records committed before the batch.
+     *
+     * @return records of the batch applied already, by their index, with their rejections not sent for sure
+     */
+    Map<Integer, Optional<Rejection>> appliedOf(List<ConsumerRecord<String, Message>> batch) {
+        var offsets = new LinkedHashMap<TopicPartition, long[]>();
+        for (var record : batch) {
+            offsets.merge(
+                    new TopicPartition(record.topic(), record.partition()),
+                    new long[]{record.offset(), record.offset()},
+                    (range, next) -> new long[]{Math.min(range[0], next[0]), Math.max(range[1], next[1])});
+        }
+        var stored = new HashMap<TopicPartition, Map<Long, Optional<StoredRejection>>>();
+        offsets.forEach((partition, range) -> {
+            var params = Map.<String, Object>of(
+                    "topic", partition.topic(),
+                    "partition", partition.partition(),
+                    "offset", range[0],
+                    "from", range[0],
+                    "to", range[1]);
+            jdbc.update(FORGET, params);
+            var applied = new HashMap<Long, Optional<StoredRejection>>();
+            jdbc.query(FIND, params, row -> {
+                var rejection = row.getString("rejection");
+                boolean sent = row.getLong("group_offset") < range[0];
+                applied.put(row.getLong("record_offset"), rejection == null || sent
+                        ? Optional.empty()
+                        : Optional.of(new StoredRejection(rejection, row.getObject("limitation", Integer.class))));
+            });
+            stored.put(partition, applied);
+        });
+        var result = new HashMap<Integer, Optional<Rejection>>();
+        for (int i = 0; i < batch.size(); i++) {
+            var record = batch.get(i);
+            var outcome = stored.get(new TopicPartition(record.topic(), record.partition())).get(record.offset());
+            if (outcome != null) {
+                result.put(i, outcome.map(rejection -> rejection.of(record.value())));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param records    applied together, starting from the first one
+     * @param rejections of the records at the same indexes, {@code null} for assigned ones
+     */
+    void markApplied(List<ConsumerRecord<String, Message>> records, List<Rejection> rejections) {
+        var params = new MapSqlParameterSource[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            var record = records.get(i);
+            var rejection = Optional.ofNullable(rejections.get(i));
+            params[i] = new MapSqlParameterSource()
+                    .addValue("topic", record.topic())
+                    .addValue("partition", record.partition())
+                    .addValue("offset", record.offset())
+                    .addValue("groupOffset", records.getFirst().offset())
+                    .addValue("rejection", rejection.map(Rejection::message).orElse(null))
+                    .addValue("limit", rejection.map(Rejection::limit).orElse(null));
+        }
+        jdbc.batchUpdate(INSERT, params);
+    }
+
+    private record StoredRejection(String message, Integer limit) {
+        Rejection of(Message record) {
+            return new Rejection(
+                    record.accountId().getId(),
+                    record.assetId(),
+                    record.countryCode(),
+                    message,
+                    limit);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.LimitingFacade.RejectedAsset;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * High-volume alternative to assigning assets via REST API: download records (e.g. from CDN edge) in batches.
+ * <p>
+ * Records from a batch are grouped by {@link AccountId}, so each account is loaded and saved just once per batch.
+ * Assets which could not be assigned are published to {@link #REJECTIONS_TOPIC}, and the batch is acknowledged just
+ * after the broker confirmed them. So are records with a blank asset id or country code, never passed to the facade.
+ * <p>
+ * A technical failure of a group (e.g. optimistic locking) fails the batch from the first record of the group on
+ * ({@link BatchListenerFailedException}), so the records before are committed. Groups applied already may have records
+ * further on, so applied records are remembered in {@link AppliedDownloadRecords} and not assigned again when
+ * redelivered (also after a restart or to another instance), just their rejections are published again. They are
+ * remembered right after the facade call, not in its transaction, which would leave listings refreshed by the facade
+ * reading the account before the commit.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty("spring.kafka.consumer.group-id")
+class AssetDownloadEventListener {
+    static final String TOPIC = "asset-downloads";
+    static final String REJECTIONS_TOPIC = "asset-download-rejections";
+
+    private final LimitingFacade facade;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final AppliedDownloadRecords appliedRecords;
+
+    @KafkaListener(
+            topics = TOPIC,
+            batch = "true",
+            properties = {
+                    "spring.json.use.type.headers=false",
+                    "spring.json.value.default.type=io.github.mat3e.downloads.limiting.event.in.AssetDownloadEventListener$Message"
+            })
+    public void execute(List<ConsumerRecord<String, Message>> records) {
+        var groups = new LinkedHashMap<AccountId, List<Integer>>();
+        var publishing = new ArrayList<Publishing>();
+        var applied = appliedRecords.appliedOf(records);
+        for (int i = 0; i < records.size(); i++) {
+            var message = records.get(i).value();
+            if (applied.containsKey(i)) {
+                publishing.add(publish(i, applied.get(i).stream().toList()));
+            } else if (!message.isComplete()) {
+                publishing.add(publish(i, List.of(Rejection.incomplete(message))));
+            } else {
+                groups.computeIfAbsent(records.get(i).value().accountId(), key -> new ArrayList<>()).add(i);
+            }
+        }
+        int failedAt = records.size();
+        RuntimeException failure = null;
+        for (var group : groups.entrySet()) {
+            var indexes = group.getValue();
+            var groupRecords = indexes.stream().map(records::get).toList();
+            List<Rejection> rejections;
+            try {
+                var rejected = facade.assignDownloadedAssets(
+                        group.getKey(),
+                        groupRecords.stream().map(record -> record.value().asset()).toList());
+                rejections = rejectionsOf(group.getKey(), groupRecords, rejected);
+                appliedRecords.markApplied(groupRecords, rejections);
+            } catch (RuntimeException e) {
+                failedAt = indexes.getFirst();
+                failure = e;
+                break;
+            }
+            publishing.add(publish(indexes.getFirst(), rejections.stream().filter(Objects::nonNull).toList()));
+        }
+        for (var published : publishing) {
+            try {
+                published.sent().join();
+            } catch (RuntimeException e) {
+                if (published.index() < failedAt) {
+                    failedAt = published.index();
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw new BatchListenerFailedException("Assigning downloaded assets failed", failure, failedAt);
+        }
+    }
+
+    /**
+     * @return rejections of the records at the same indexes, {@code null} for assigned ones
+     */
+    private static List<Rejection> rejectionsOf(
+            AccountId accountId,
+            List<ConsumerRecord<String, Message>> records,
+            List<RejectedAsset> rejected) {
+        var rejections = new ArrayList<Rejection>(Collections.nCopies(records.size(), null));
+        for (var rejection : rejected) {
+            for (int i = 0; i < records.size(); i++) {
+                if (rejections.get(i) == null && records.get(i).value().asset().equals(rejection.asset())) {
+                    rejections.set(i, Rejection.from(accountId, rejection));
+                    break;
+                }
+            }
+        }
+        return rejections;
+    }
+
+    private Publishing publish(int index, List<Rejection> rejections) {
+        return new Publishing(index, CompletableFuture.allOf(rejections.stream()
+                .map(rejection -> kafkaTemplate.send(REJECTIONS_TOPIC, rejection.accountId(), rejection))
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    private record Publishing(int index, CompletableFuture<Void> sent) {
+    }
+
+    record Message(AccountId accountId, String assetId, String countryCode) {
+        Message(String accountId, String assetId, String countryCode) {
+            this(AccountId.valueOf(accountId), assetId, countryCode);
+        }
+
+        Asset asset() {
+            return Asset.withId(assetId).inCountry(countryCode);
+        }
+
+        /* what the REST API gets validated against, records aren't */
+        boolean isComplete() {
+            return accountId != null && hasText(accountId.getId()) && hasText(assetId) && hasText(countryCode);
+        }
+    }
+
+    record Rejection(String accountId, String assetId, String countryCode, String message, Integer limit) {
+        static Rejection incomplete(Message message) {
+            return new Rejection(
+                    message.accountId() == null ? null : message.accountId().getId(),
+                    message.assetId(),
+                    message.countryCode(),
+                    "Account id, asset id and country code must not be blank",
+                    null);
+        }
+
+        static Rejection from(AccountId accountId, RejectedAsset rejected) {
+            return new Rejection(
+                    accountId.getId(),
+                    rejected.asset().getId(),
+                    rejected.asset().getCountryCode(),
+                    rejected.reason().getMessage(),
+                    rejected.reason() instanceof AccountLimitExceeded exceeded ? exceeded.getLimit() : null);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.eventhandling.KeyOrderedExecutor;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Priority;
+import io.github.mat3e.downloads.limiting.LimitingFacade;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.event.in.AccountLimitEventListener.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+import org.springframework.util.backoff.BackOff;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Alternative to {@link AccountLimitEventListener}, processing records from a partition in parallel, but still in order
+ * for the same account. A slow account doesn't stall other accounts from the same partition.
+ * <p>
+ * Records are acknowledged once processed, possibly out of order, and the container commits just the contiguous prefix
+ * of acknowledged offsets (see {@link KeyOrderedConsumptionConfiguration}).
+ * <p>
+ * Failures are retried in place rather than via retry topics, as a later record for the same account must wait for
+ * the retried one. Delays don't occupy the workers, so other accounts keep going. See {@link LimitChangeFailures}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty("spring.kafka.consumer.group-id")
+@ConditionalOnExpression(KeyOrderedConsumptionConfiguration.ENABLED)
+class KeyOrderedAccountLimitEventListener {
+    private final LimitingFacade facade;
+    private final KeyOrderedExecutor<AccountId> limitChangesExecutor;
+    private final BackOff limitChangesBackOff;
+    private final LimitChangeFailures failures;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    @KafkaListener(
+            topics = AccountLimitEventListener.TOPIC,
+            containerFactory = KeyOrderedConsumptionConfiguration.CONTAINER_FACTORY)
+    public void execute(@Payload Message message, Acknowledgment acknowledgment) {
+        var attempts = new AtomicInteger();
+        limitChangesExecutor.execute(
+                message.accountId(),
+                () -> {
+                    if (attempts.getAndIncrement() > 0) {
+                        failures.retrying();
+                    }
+                    concurrencyLimiter.call(
+                            Priority.WRITE,
+                            () -> facade.overrideAccountLimit(message.accountId(), message.limit()));
+                },
+                limitChangesBackOff,
+                LimitChangeFailures::isRetryable
+        ).whenComplete((result, failure) -> {
+            if (failure == null) {
+                acknowledgment.acknowledge();
+                return;
+            }
+            var cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            failures.deadLettered(message, cause.getMessage());
+            kafkaTemplate.send(LimitChangeFailures.DLT, message.accountId().getId(), message)
+                    .whenComplete((sent, sendingFailure) -> {
+                        if (sendingFailure != null) {
+                            log.error("Dropping limit change: " + message, sendingFailure);
+                        }
+                        acknowledgment.acknowledge();
+                    });
+        });
+    }
+}
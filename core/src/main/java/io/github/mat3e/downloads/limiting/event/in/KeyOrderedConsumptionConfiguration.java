@@ -0,0 +1,53 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.eventhandling.KeyOrderedExecutor;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import static org.springframework.kafka.listener.ContainerProperties.AckMode.MANUAL;
+
+/**
+ * Enabled with {@code downloads.limiting.limit-changes.workers} greater than 0.
+ */
+@Configuration
+@ConditionalOnExpression(KeyOrderedConsumptionConfiguration.ENABLED)
+class KeyOrderedConsumptionConfiguration {
+    static final String ENABLED = "${downloads.limiting.limit-changes.workers:0} > 0";
+    static final String CONTAINER_FACTORY = "keyOrderedListenerContainerFactory";
+
+    @Bean(CONTAINER_FACTORY)
+    ConcurrentKafkaListenerContainerFactory<Object, Object> keyOrderedListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        // out-of-order acks are deferred till the gaps are filled, consumer pauses till the previous poll is processed
+        factory.getContainerProperties().setAckMode(MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        return factory;
+    }
+
+    @Bean
+    KeyOrderedExecutor<AccountId> limitChangesExecutor(
+            @Value("${downloads.limiting.limit-changes.workers}") int workers) {
+        return new KeyOrderedExecutor<>(workers);
+    }
+
+    @Bean
+    BackOff limitChangesBackOff(
+            @Value(LimitChangeFailures.ATTEMPTS) int attempts,
+            @Value(LimitChangeFailures.DELAY) long delay,
+            @Value(LimitChangeFailures.MULTIPLIER) double multiplier) {
+        var backOff = new ExponentialBackOff(delay, multiplier);
+        backOff.setMaxAttempts(attempts - 1);
+        return backOff;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.event.in.AccountLimitEventListener.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Failed limit changes are retried with exponential delays (configured with
+ * {@code downloads.limiting.limit-changes.retry.*}), unless rejected by the business rules. Whatever is still failing
+ * ends up in {@link #DLT}.
+ * <p>
+ * Exposes {@code limit.changes.retries} and {@code limit.changes.dead.letters} counters.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("spring.kafka.consumer.group-id")
+class LimitChangeFailures {
+    static final String DLT = AccountLimitEventListener.TOPIC + "-dlt";
+    static final String ATTEMPTS = "${downloads.limiting.limit-changes.retry.attempts:4}";
+    static final String DELAY = "${downloads.limiting.limit-changes.retry.delay:1000}";
+    static final String MULTIPLIER = "${downloads.limiting.limit-changes.retry.multiplier:2}";
+
+    static boolean isRetryable(Throwable failure) {
+        return !(failure instanceof BusinessException);
+    }
+
+    private final Counter retries;
+    private final Counter deadLetters;
+
+    LimitChangeFailures(MeterRegistry meterRegistry) {
+        retries = Counter.builder("limit.changes.retries")
+                .description("Retried attempts to change the account limit")
+                .register(meterRegistry);
+        deadLetters = Counter.builder("limit.changes.dead.letters")
+                .description("Limit changes given up and sent to " + DLT)
+                .register(meterRegistry);
+    }
+
+    void retrying() {
+        retries.increment();
+    }
+
+    void deadLettered(Message message, String reason) {
+        deadLetters.increment();
+        log.error("Limit change sent to " + DLT + ": " + message + ", reason: " + reason);
+    }
+}
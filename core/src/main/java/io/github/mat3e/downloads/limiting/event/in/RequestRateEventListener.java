@@ -0,0 +1,68 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter.RequestRate;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Request rates of accounts, like {@code limit-changes}, but kept just in memory of {@link RequestRateLimiter}.
+ * <p>
+ * Every instance needs all the rates, so each one consumes the topic in its own consumer group, named after
+ * {@code downloads.instance-id} (host name by default), so restarts don't leave abandoned groups behind. Rates are
+ * just in memory, so the topic is read from the beginning whenever partitions are assigned. The topic is meant to be
+ * compacted, keyed by account. A message without {@code perSecond} brings back the default.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty("spring.kafka.consumer.group-id")
+class RequestRateEventListener implements ConsumerSeekAware {
+    static final String TOPIC = "request-rate-changes";
+
+    private final RequestRateLimiter rateLimiter;
+
+    @KafkaListener(
+            topics = TOPIC,
+            groupId = "request-rates-${downloads.instance-id:${HOSTNAME:local}}",
+            properties = {
+                    "spring.json.use.type.headers=false",
+                    "spring.json.value.default.type=io.github.mat3e.downloads.limiting.event.in.RequestRateEventListener$Message"
+            })
+    public void execute(@Payload Message message) {
+        try {
+            rateLimiter.overrideRate(message.accountId, message.rate());
+        } catch (BusinessException invalidRate) {
+            // retrying won't help, the previous rate stays
+            log.warn("Ignoring request rate change: " + message, invalidRate);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToBeginning(assignments.keySet());
+    }
+
+    record Message(AccountId accountId, Double perSecond, Integer burst) {
+        Message(String accountId, Double perSecond, Integer burst) {
+            this(AccountId.valueOf(accountId), perSecond, burst);
+        }
+
+        RequestRate rate() {
+            if (perSecond == null) {
+                return null;
+            }
+            return new RequestRate(perSecond, burst == null ? (int) Math.ceil(perSecond) : burst);
+        }
+    }
+}
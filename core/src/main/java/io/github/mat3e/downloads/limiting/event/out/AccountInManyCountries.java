@@ -0,0 +1,23 @@
+package io.github.mat3e.downloads.limiting.event.out;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+
+import java.time.Clock;
+
+class AccountInManyCountries extends SuspiciousLimitingEvent {
+    private final int countries;
+
+    AccountInManyCountries(Clock occurrenceClock, AccountId accountId, int countries) {
+        super(occurrenceClock, accountId);
+        this.countries = countries;
+    }
+
+    public int countries() {
+        return countries;
+    }
+
+    @Override
+    String description() {
+        return "holds assets downloaded in " + countries + " countries";
+    }
+}
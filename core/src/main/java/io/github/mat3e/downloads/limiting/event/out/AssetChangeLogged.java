@@ -0,0 +1,30 @@
+package io.github.mat3e.downloads.limiting.event.out;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+
+import java.time.Instant;
+
+/**
+ * Asset assigned to or removed from an account, as read back from the log of the event-sourced storage.
+ *
+ * @param position order in the log, so consumers can tell what they've seen already
+ */
+public record AssetChangeLogged(
+        long position,
+        AccountId accountId,
+        Asset asset,
+        boolean assigned,
+        Instant occurredOn) implements DomainEvent {
+    @Override
+    public String aggregateId() {
+        return accountId.getId();
+    }
+
+    @Override
+    public String toString() {
+        return "Account (" + accountId + ") at " + occurredOn + (assigned ? " assigned " : " removed ") + asset
+                + " [" + position + "]";
+    }
+}
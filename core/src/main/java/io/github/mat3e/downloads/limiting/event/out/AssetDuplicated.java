@@ -17,6 +17,11 @@ class AssetDuplicated extends SuspiciousLimitingEvent {
         return asset;
     }
 
+    @Override
+    public boolean duplicate() {
+        return true;
+    }
+
     @Override
     String description() {
         return "assigned already assigned asset: " + asset;
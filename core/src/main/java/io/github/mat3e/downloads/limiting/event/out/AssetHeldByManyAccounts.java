@@ -0,0 +1,20 @@
+package io.github.mat3e.downloads.limiting.event.out;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+
+import java.time.Instant;
+
+/**
+ * The same asset downloaded by unusually many accounts, e.g. a shared or leaked account, found by a batch scan.
+ */
+public record AssetHeldByManyAccounts(String assetId, long accounts, Instant occurredOn) implements DomainEvent {
+    @Override
+    public boolean suspicious() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Asset (" + assetId + ") at " + occurredOn + " held by " + accounts + " accounts";
+    }
+}
@@ -30,6 +30,13 @@ public abstract class SuspiciousLimitingEvent implements DomainEvent {
         return new UnassignedRemoved(occurrenceClock, accountId, asset);
     }
 
+    public static SuspiciousLimitingEvent manyCountries(
+            Clock occurrenceClock,
+            AccountId accountId,
+            int countries) {
+        return new AccountInManyCountries(occurrenceClock, accountId, countries);
+    }
+
     private final Instant occurredOn;
     private final AccountId accountId;
 
@@ -47,6 +54,11 @@ public abstract class SuspiciousLimitingEvent implements DomainEvent {
         return accountId;
     }
 
+    @Override
+    public final String aggregateId() {
+        return accountId.getId();
+    }
+
     @Override
     public final String toString() {
         return "Account (" + accountId + ") at " + occurredOn() + " " + description().trim();
@@ -54,6 +66,13 @@ public abstract class SuspiciousLimitingEvent implements DomainEvent {
 
     abstract String description();
 
+    /**
+     * @return whether the asset was assigned already, so the assignment changed nothing
+     */
+    public boolean duplicate() {
+        return false;
+    }
+
     @Override
     public boolean suspicious() {
         return true;
@@ -0,0 +1,44 @@
+package io.github.mat3e.downloads.limiting.rest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
+/**
+ * {@code downloads.limiting.idempotency.store} selects where {@link IdempotentResponses} are kept: {@code memory}
+ * (default) or {@code jdbc}.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = SERVLET)
+class IdempotencyConfiguration {
+    private static final String STORE_PROPERTY = "downloads.limiting.idempotency.store";
+
+    @Bean
+    @ConditionalOnProperty(name = STORE_PROPERTY, havingValue = "memory", matchIfMissing = true)
+    IdempotentResponses inMemoryIdempotentResponses(
+            Clock clock,
+            @Value("${downloads.limiting.idempotency.ttl:24h}") Duration ttl,
+            @Value("${downloads.limiting.idempotency.max-entries:100000}") int maxEntries) {
+        return new InMemoryIdempotentResponses(clock, ttl, maxEntries);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = STORE_PROPERTY, havingValue = "jdbc")
+    JdbcIdempotentResponses jdbcIdempotentResponses(
+            NamedParameterJdbcOperations jdbc,
+            Clock clock,
+            @Value("${downloads.limiting.idempotency.ttl:24h}") Duration ttl,
+            @Value("${downloads.limiting.idempotency.lease:1m}") Duration lease,
+            @Value("${downloads.limiting.idempotency.max-entries:100000}") int maxEntries,
+            @Value("${downloads.limiting.idempotency.purge-interval:10m}") Duration purgeInterval) {
+        return new JdbcIdempotentResponses(jdbc, clock, ttl, lease, maxEntries, purgeInterval);
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.mat3e.downloads.limiting.rest;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Responses to requests sent with {@code Idempotency-Key}, so a retried request gets the stored response instead of
+ * being processed again. Entries are kept for a time to live and bounded in number, the oldest go first.
+ * <p>
+ * A key is reserved when its first request starts, then either completed with the response or released when the
+ * request failed for technical reasons (so the retry can go through).
+ */
+interface IdempotentResponses {
+    /**
+     * @return the response stored for the key, empty when the key is new - reserved for the request then
+     * @throws IdempotentRequestInProgress when the first request with the key is still being processed
+     * @throws BusinessException           when the key was used for another request
+     */
+    Optional<IdempotentResponse> reserve(IdempotentRequest request);
+
+    void complete(IdempotentRequest request, IdempotentResponse response);
+
+    void release(IdempotentRequest request);
+}
+
+/**
+ * @param key         {@code Idempotency-Key}, scoped to the account
+ * @param fingerprint what was requested with the key
+ */
+record IdempotentRequest(String key, String fingerprint) {
+    /* idempotency_key column */
+    static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * @throws BusinessException when the key, scoped to the account, is longer than {@link #MAX_KEY_LENGTH}
+     */
+    static IdempotentRequest of(String idempotencyKey, AccountId accountId, Asset asset) {
+        if (accountId.getId().length() + 1 + idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BusinessException("Idempotency-Key too long");
+        }
+        return new IdempotentRequest(
+                accountId.getId() + "/" + idempotencyKey,
+                asset.getId() + "/" + asset.getCountryCode());
+    }
+
+    void verify(String storedFingerprint) {
+        if (!fingerprint.equals(storedFingerprint)) {
+            throw new BusinessException("Idempotency-Key already used for another request");
+        }
+    }
+}
+
+/**
+ * Outcome of a request worth repeating for its retries: created, rejected by the limit, not found or otherwise invalid.
+ *
+ * @param limit just for {@code 422 Unprocessable Entity}
+ */
+record IdempotentResponse(int status, String message, Integer limit) {
+    static final IdempotentResponse CREATED = new IdempotentResponse(HttpStatus.CREATED.value(), null, null);
+
+    static IdempotentResponse rejected(BusinessException exception) {
+        if (exception instanceof AccountLimitExceeded limitExceeded) {
+            return new IdempotentResponse(
+                    HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    limitExceeded.getMessage(),
+                    limitExceeded.getLimit());
+        }
+        return new IdempotentResponse(
+                exception.isNotFound() ? HttpStatus.NOT_FOUND.value() : HttpStatus.BAD_REQUEST.value(),
+                exception.getMessage(),
+                null);
+    }
+}
+
+class IdempotentRequestInProgress extends RuntimeException {
+    IdempotentRequestInProgress() {
+        super("Request with the same Idempotency-Key is still being processed");
+    }
+}
+
+/**
+ * Entries in insertion order, so both the oldest (beyond {@code maxEntries}) and the expired ones are evicted from
+ * the head. Lost on restart.
+ */
+class InMemoryIdempotentResponses implements IdempotentResponses {
+    private final Clock clock;
+    private final Duration ttl;
+    private final Map<String, Entry> entries;
+
+    InMemoryIdempotentResponses(Clock clock, Duration ttl, int maxEntries) {
+        this.clock = clock;
+        this.ttl = ttl;
+        entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Optional<IdempotentResponse> reserve(IdempotentRequest request) {
+        var now = clock.instant();
+        evictExpired(now);
+        var stored = entries.get(request.key());
+        if (stored == null) {
+            entries.put(request.key(), new Entry(request.fingerprint(), null, now));
+            return Optional.empty();
+        }
+        request.verify(stored.fingerprint());
+        if (stored.response() == null) {
+            throw new IdempotentRequestInProgress();
+        }
+        return Optional.of(stored.response());
+    }
+
+    @Override
+    public synchronized void complete(IdempotentRequest request, IdempotentResponse response) {
+        entries.computeIfPresent(request.key(), (key, reserved) ->
+                new Entry(reserved.fingerprint(), response, reserved.createdAt()));
+    }
+
+    @Override
+    public synchronized void release(IdempotentRequest request) {
+        entries.remove(request.key());
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictExpired(Instant now) {
+        var expiredBefore = now.minus(ttl);
+        var oldest = entries.values().iterator();
+        while (oldest.hasNext() && !oldest.next().createdAt().isAfter(expiredBefore)) {
+            oldest.remove();
+        }
+    }
+
+    private record Entry(String fingerprint, IdempotentResponse response, Instant createdAt) {
+    }
+}
+
+/**
+ * Entries in {@code idempotent_responses}, shared by all the instances, so a retry reaching another instance gets
+ * the stored response too. Expired entries are ignored right away and deleted every {@code purgeInterval}, together
+ * with the oldest ones beyond {@code maxEntries}.
+ * <p>
+ * A reservation is held for {@code lease} at most: when the instance processing the first request dies before
+ * completing or releasing it, a retry after the lease takes the key over instead of getting {@code 409} till the
+ * entry expires.
+ */
+@Slf4j
+class JdbcIdempotentResponses implements IdempotentResponses, AutoCloseable {
+    private static final String INSERT = """
+            insert into idempotent_responses (idempotency_key, fingerprint, created_at)
+            values (:key, :fingerprint, :createdAt)""";
+    private static final String SELECT = """
+            select fingerprint, status, message, limitation, created_at from idempotent_responses
+            where idempotency_key = :key""";
+    private static final String COMPLETE = """
+            update idempotent_responses
+            set status = :status, message = :message, limitation = :limit
+            where idempotency_key = :key""";
+    private static final String RELEASE = """
+            delete from idempotent_responses
+            where idempotency_key = :key and status is null""";
+    private static final String DELETE_EXPIRED_KEY = """
+            delete from idempotent_responses
+            where idempotency_key = :key and created_at <= :expiredBefore""";
+    private static final String DELETE_ABANDONED_KEY = """
+            delete from idempotent_responses
+            where idempotency_key = :key and status is null and created_at <= :leasedBefore""";
+    private static final String DELETE_EXPIRED = "delete from idempotent_responses where created_at <= :expiredBefore";
+    /* keeps the newest maxEntries, ties included */
+    private static final String DELETE_OLDEST = """
+            delete from idempotent_responses
+            where created_at < (select created_at from idempotent_responses
+                                order by created_at desc
+                                offset :kept rows fetch next 1 rows only)""";
+
+    private final NamedParameterJdbcOperations jdbc;
+    private final Clock clock;
+    private final Duration ttl;
+    private final Duration lease;
+    private final int maxEntries;
+    private final ScheduledExecutorService scheduler;
+
+    JdbcIdempotentResponses(
+            NamedParameterJdbcOperations jdbc,
+            Clock clock,
+            Duration ttl,
+            Duration lease,
+            int maxEntries,
+            Duration purgeInterval) {
+        this.jdbc = jdbc;
+        this.clock = clock;
+        this.ttl = ttl;
+        this.lease = lease;
+        this.maxEntries = maxEntries;
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("idempotent-responses-purger")
+                .priority(Thread.MIN_PRIORITY)
+                .factory());
+        scheduler.scheduleWithFixedDelay(
+                this::purgeSafely,
+                purgeInterval.toMillis(),
+                purgeInterval.toMillis(),
+                MILLISECONDS);
+    }
+
+    @Override
+    public Optional<IdempotentResponse> reserve(IdempotentRequest request) {
+        var now = clock.instant();
+        var expiredBefore = Timestamp.from(now.minus(ttl));
+        var leasedBefore = Timestamp.from(now.minus(lease));
+        // the second attempt follows deleting an expired or abandoned entry, or one released meanwhile
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                jdbc.update(INSERT, Map.of(
+                        "key", request.key(),
+                        "fingerprint", request.fingerprint(),
+                        "createdAt", Timestamp.from(now)));
+                return Optional.empty();
+            } catch (DuplicateKeyException reservedAlready) {
+                var stored = jdbc.query(SELECT, Map.of("key", request.key()), (row, number) -> new StoredRow(
+                        row.getString("fingerprint"),
+                        (Integer) row.getObject("status"),
+                        row.getString("message"),
+                        (Integer) row.getObject("limitation"),
+                        row.getTimestamp("created_at"))).stream().findFirst();
+                if (stored.isEmpty()) {
+                    continue;
+                }
+                if (!stored.get().createdAt().after(expiredBefore)) {
+                    jdbc.update(DELETE_EXPIRED_KEY, Map.of("key", request.key(), "expiredBefore", expiredBefore));
+                    continue;
+                }
+                request.verify(stored.get().fingerprint());
+                if (stored.get().status() == null && !stored.get().createdAt().after(leasedBefore)) {
+                    jdbc.update(DELETE_ABANDONED_KEY, Map.of("key", request.key(), "leasedBefore", leasedBefore));
+                    continue;
+                }
+                return Optional.of(stored.get().response().orElseThrow(IdempotentRequestInProgress::new));
+            }
+        }
+        throw new IdempotentRequestInProgress();
+    }
+
+    @Override
+    public void complete(IdempotentRequest request, IdempotentResponse response) {
+        var params = new HashMap<String, Object>();
+        params.put("key", request.key());
+        params.put("status", response.status());
+        params.put("message", response.message());
+        params.put("limit", response.limit());
+        jdbc.update(COMPLETE, params);
+    }
+
+    @Override
+    public void release(IdempotentRequest request) {
+        jdbc.update(RELEASE, Map.of("key", request.key()));
+    }
+
+    /**
+     * @return how many entries were deleted
+     */
+    int purge() {
+        var expiredBefore = Timestamp.from(clock.instant().minus(ttl));
+        return jdbc.update(DELETE_EXPIRED, Map.of("expiredBefore", expiredBefore))
+                + jdbc.update(DELETE_OLDEST, Map.of("kept", maxEntries - 1));
+    }
+
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (DataAccessException e) {
+            log.error("Purging idempotent responses failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+
+    private record StoredRow(String fingerprint, Integer status, String message, Integer limit, Timestamp createdAt) {
+        Optional<IdempotentResponse> response() {
+            return Optional.ofNullable(status).map(stored -> new IdempotentResponse(stored, message, limit));
+        }
+    }
+}
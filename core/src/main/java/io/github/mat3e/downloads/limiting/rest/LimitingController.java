@@ -1,12 +1,22 @@
 package io.github.mat3e.downloads.limiting.rest;
 
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.ConcurrencyLimitExceeded;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Priority;
 import io.github.mat3e.downloads.limiting.LimitingFacade;
 import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter.RequestRateExceeded;
 import io.github.mat3e.downloads.limiting.api.AccountId;
 import io.github.mat3e.downloads.limiting.api.Asset;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -14,43 +24,136 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
 import java.util.List;
+import java.util.function.Supplier;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
 
 @RestController
+@ConditionalOnWebApplication(type = SERVLET)
 @RequestMapping("/api/accounts/{accountId}/assets")
 @RequiredArgsConstructor
 class LimitingController {
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final LimitingFacade facade;
+    /* not there in web slices */
+    private final ObjectProvider<RequestRateLimiter> rateLimiter;
+    private final ObjectProvider<ConcurrencyLimiter> concurrencyLimiter;
+    private final ObjectProvider<IdempotentResponses> idempotentResponses;
 
     @GetMapping
     ResponseEntity<List<Asset>> readAssets(@Valid @PathVariable AccountId accountId) {
-        return ResponseEntity.of(facade.findForAccount(accountId));
+        return ResponseEntity.of(limited(Priority.READ, () -> facade.findForAccount(accountId)));
     }
 
+    /**
+     * With {@code Idempotency-Key}, a repeated request gets the response stored for the first one, without touching
+     * the facade. Failures other than business ones (e.g. rate limiting) are not stored, so the retry goes through.
+     */
     @PostMapping
-    ResponseEntity<Void> addAsset(@Valid @PathVariable AccountId accountId, @Valid @RequestBody Asset asset) {
-        facade.assignDownloadedAsset(accountId, asset);
-        return ResponseEntity.created(URI.create("/")).build();
+    ResponseEntity<?> addAsset(
+            @Valid @PathVariable AccountId accountId,
+            @Valid @RequestBody Asset asset,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        var responses = idempotencyKey == null ? null : idempotentResponses.getIfAvailable();
+        if (responses == null) {
+            assign(accountId, asset);
+            return ResponseEntity.created(URI.create("/")).build();
+        }
+        var request = IdempotentRequest.of(idempotencyKey, accountId, asset);
+        var stored = responses.reserve(request);
+        if (stored.isPresent()) {
+            return replay(stored.get());
+        }
+        IdempotentResponse response;
+        try {
+            assign(accountId, asset);
+            response = IdempotentResponse.CREATED;
+        } catch (RequestRateExceeded notProcessed) {
+            responses.release(request);
+            throw notProcessed;
+        } catch (BusinessException rejected) {
+            response = IdempotentResponse.rejected(rejected);
+        } catch (RuntimeException failed) {
+            responses.release(request);
+            throw failed;
+        }
+        responses.complete(request, response);
+        return replay(response);
     }
 
     @SuppressWarnings("java:S6856") // Spring builds Asset from path and query, no need to declare @PathVariable
     @DeleteMapping(path = "/{id}", params = "countryCode")
     ResponseEntity<Void> removeAsset(@Valid @PathVariable AccountId accountId, @Valid Asset asset) {
-        facade.removeDownloadedAsset(accountId, asset);
+        rateLimiter.ifAvailable(limiter -> limiter.acquire(accountId));
+        limited(Priority.WRITE, () -> {
+            facade.removeDownloadedAsset(accountId, asset);
+            return null;
+        });
         return ResponseEntity.noContent().build();
     }
 
+    private void assign(AccountId accountId, Asset asset) {
+        rateLimiter.ifAvailable(limiter -> limiter.acquire(accountId));
+        limited(Priority.WRITE, () -> {
+            facade.assignDownloadedAsset(accountId, asset);
+            return null;
+        });
+    }
+
+    private static ResponseEntity<?> replay(IdempotentResponse response) {
+        return switch (HttpStatus.valueOf(response.status())) {
+            case CREATED -> ResponseEntity.created(URI.create("/")).build();
+            case UNPROCESSABLE_ENTITY -> ResponseEntity.unprocessableEntity()
+                    .body(new ExceededLimit(response.message(), response.limit()));
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+            default -> ResponseEntity.status(response.status()).body(response.message());
+        };
+    }
+
+    private <T> T limited(Priority priority, Supplier<T> call) {
+        var limiter = concurrencyLimiter.getIfAvailable();
+        return limiter == null ? call.get() : limiter.tryCall(priority, call);
+    }
+
     @ExceptionHandler(AccountLimitExceeded.class)
     ResponseEntity<ExceededLimit> handleAccountLimitExceeded(AccountLimitExceeded exception) {
         return ResponseEntity.unprocessableEntity().body(ExceededLimit.from(exception));
     }
 
+    @ExceptionHandler(RequestRateExceeded.class)
+    ResponseEntity<String> handleRequestRateExceeded(RequestRateExceeded exception) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(exception))
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler(ConcurrencyLimitExceeded.class)
+    ResponseEntity<String> handleConcurrencyLimitExceeded(ConcurrencyLimitExceeded exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, exception.getRetryAfter().toSeconds())))
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler(IdempotentRequestInProgress.class)
+    ResponseEntity<String> handleIdempotentRequestInProgress(IdempotentRequestInProgress exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
+
+    static String retryAfterSeconds(RequestRateExceeded exception) {
+        // whole seconds, rounded up, so the retry finds a token
+        long millis = exception.getRetryAfter().toMillis();
+        return String.valueOf(Math.max(1, (millis + 999) / 1000));
+    }
+
     @Value
-    private static class ExceededLimit {
+    static class ExceededLimit {
         static ExceededLimit from(AccountLimitExceeded exception) {
             return new ExceededLimit(exception.getMessage(), exception.getLimit());
         }
@@ -0,0 +1,31 @@
+package io.github.mat3e.downloads.reporting;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Reported events are stored (and can be queried) when {@code downloads.reporting.store.directory} is set.
+ */
+@Configuration
+class ReportingConfiguration {
+    static final String STORE_DIRECTORY = "downloads.reporting.store.directory";
+
+    @Bean
+    @ConditionalOnProperty(STORE_DIRECTORY)
+    ReportingEventStore reportingEventStore(
+            Clock clock,
+            @Value("${" + STORE_DIRECTORY + "}") Path directory,
+            @Value("${downloads.reporting.store.partition:1d}") Duration partition,
+            @Value("${downloads.reporting.store.segment-size:1GB}") DataSize segmentSize,
+            @Value("${downloads.reporting.store.retention:90d}") Duration retention,
+            @Value("${downloads.reporting.store.sync-on-write:false}") boolean syncOnWrite) {
+        return new ReportingEventStore(directory, clock, partition, segmentSize.toBytes(), retention, syncOnWrite);
+    }
+}
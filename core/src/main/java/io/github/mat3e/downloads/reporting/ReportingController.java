@@ -0,0 +1,54 @@
+package io.github.mat3e.downloads.reporting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.SERVLET;
+
+/**
+ * E.g. {@code GET /api/reporting/events?account=1&type=AssetAssignedInDifferentCountry&from=2024-01-01T00:00:00Z}
+ * for how many such events the account had since then, with the first of them.
+ */
+@RestController
+@ConditionalOnWebApplication(type = SERVLET)
+@ConditionalOnProperty(ReportingConfiguration.STORE_DIRECTORY)
+@RequestMapping("/api/reporting/events")
+@RequiredArgsConstructor
+class ReportingController {
+    private static final int MAX_LIMIT = 1000;
+
+    private final ReportingEventStore store;
+    private final Clock clock;
+
+    /**
+     * @param from by default a week before {@code to}
+     * @param to   by default now
+     */
+    @GetMapping
+    EventsPage findEvents(
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) String account,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "100") int limit) {
+        var until = to == null ? clock.instant() : to;
+        var since = from == null ? until.minus(Duration.ofDays(7)) : from;
+        if (!since.isBefore(until)) {
+            throw new BusinessException("Time range must start before it ends");
+        }
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new BusinessException("Limit must be between 0 and " + MAX_LIMIT);
+        }
+        return store.find(new EventQuery(since, until, account, type, limit));
+    }
+}
@@ -0,0 +1,679 @@
+package io.github.mat3e.downloads.reporting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A recorded event, as read back from {@link ReportingEventStore}.
+ *
+ * @param aggregateId e.g. account, {@code null} when the event is not about a single one
+ */
+record StoredEvent(Instant occurredOn, String type, String aggregateId, boolean suspicious, String description) {
+    static StoredEvent of(DomainEvent event) {
+        return new StoredEvent(
+                event.occurredOn(),
+                event.getClass().getSimpleName(),
+                event.aggregateId(),
+                event.suspicious(),
+                event.toString());
+    }
+}
+
+/**
+ * @param from        inclusive
+ * @param to          exclusive
+ * @param aggregateId just events of the aggregate (e.g. account) when given
+ * @param type        just events of the type (simple class name) when given
+ * @param limit       of the returned events, all the matching ones are counted anyway
+ */
+record EventQuery(Instant from, Instant to, String aggregateId, String type, int limit) {
+}
+
+/**
+ * @param count  of all the events matching the query
+ * @param events the oldest matching events, up to the limit of the query
+ */
+record EventsPage(long count, List<StoredEvent> events) {
+}
+
+/**
+ * Durable store of reported events: append-only segment files, a new one for each {@code partition} of the time of
+ * appending (a day by default) and whenever the current one reaches {@code segmentBytes}, deleted as a whole after
+ * {@code retention}. Segments are named after their start: the start of the partition for its first segment, the
+ * time of rolling for the next ones.
+ * <p>
+ * Records are {@code [length][checksum][payload]}, the payload encoded compactly (see {@link EventSegment}). Every
+ * segment keeps a sparse index: the segment split into blocks of about {@value EventSegment#BLOCK_BYTES} bytes, the
+ * time range of each block and, per aggregate (account), the blocks with its events. Queries skip segments and blocks
+ * out of the time range, or without the account, and read the rest from memory-mapped files. The index of a segment
+ * is written next to it once the partition is over, the current segment is indexed again on start.
+ * <p>
+ * A segment is mapped as a whole, so {@code segmentBytes} must stay below 2 GB (a segment can exceed it by the last
+ * record appended).
+ */
+@Slf4j
+class ReportingEventStore implements AutoCloseable {
+    private final Path directory;
+    private final Clock clock;
+    private final long partitionMillis;
+    private final long segmentBytes;
+    private final Duration retention;
+    private final boolean syncOnWrite;
+    /* by the start of the segment, never earlier than the start of its partition */
+    private final TreeMap<Long, EventSegment> segments = new TreeMap<>();
+    private final ScheduledExecutorService scheduler;
+    private EventSegment current;
+
+    ReportingEventStore(
+            Path directory,
+            Clock clock,
+            Duration partition,
+            long segmentBytes,
+            Duration retention,
+            boolean syncOnWrite) {
+        if (segmentBytes <= 0 || segmentBytes >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segments are mapped whole, so must be below 2 GB: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.clock = clock;
+        this.partitionMillis = partition.toMillis();
+        this.segmentBytes = segmentBytes;
+        this.retention = retention;
+        this.syncOnWrite = syncOnWrite;
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                files.map(EventSegment::startOf)
+                        .flatMap(Stream::ofNullable)
+                        .forEach(start -> segments.put(start, new EventSegment(directory, start)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long currentStart = partitionOf(clock.millis());
+        segments.forEach((start, segment) -> segment.open(start >= currentStart && start == segments.lastKey()));
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("reporting-segments")
+                .priority(Thread.MIN_PRIORITY)
+                .factory());
+        long checkMillis = Math.min(partitionMillis, Duration.ofMinutes(10).toMillis());
+        scheduler.scheduleWithFixedDelay(this::rollSafely, checkMillis, checkMillis, MILLISECONDS);
+    }
+
+    synchronized void append(DomainEvent event) {
+        roll();
+        if (current != null && current.size() >= segmentBytes) {
+            current.seal();
+            current = null;
+        }
+        if (current == null) {
+            long now = clock.millis();
+            long start = partitionOf(now);
+            if (!segments.isEmpty() && segments.lastKey() >= start) {
+                // rolled on size, the partition has segments already
+                start = Math.max(now, segments.lastKey() + 1);
+            }
+            current = new EventSegment(directory, start);
+            current.open(true);
+            segments.put(start, current);
+        }
+        current.append(StoredEvent.of(event), syncOnWrite);
+    }
+
+    EventsPage find(EventQuery query) {
+        List<EventSegment> candidates;
+        synchronized (this) {
+            candidates = List.copyOf(segments.values());
+        }
+        var matching = new ArrayList<StoredEvent>();
+        long count = 0;
+        for (var segment : candidates) {
+            count += segment.find(query, matching);
+        }
+        return new EventsPage(count, matching);
+    }
+
+    /**
+     * Seals the segment of a past partition and deletes the segments past retention.
+     */
+    synchronized void roll() {
+        long now = clock.millis();
+        long currentStart = partitionOf(now);
+        if (current != null && current.start() < currentStart) {
+            current.seal();
+            current = null;
+        }
+        long expiredBefore = partitionOf(now - retention.toMillis());
+        var expired = segments.headMap(expiredBefore, false);
+        expired.values().forEach(EventSegment::delete);
+        expired.clear();
+        if (current == null && !segments.isEmpty() && segments.lastKey() >= currentStart) {
+            current = segments.lastEntry().getValue();
+        }
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private long partitionOf(long millis) {
+        return Math.floorDiv(millis, partitionMillis) * partitionMillis;
+    }
+
+    private void rollSafely() {
+        try {
+            roll();
+        } catch (RuntimeException e) {
+            log.error("Rolling reporting segments failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+        synchronized (this) {
+            segments.values().forEach(EventSegment::close);
+        }
+    }
+}
+
+/**
+ * Payload of a record, with variable-length numbers:
+ * <pre>
+ * varlong  occurred on, epoch millis minus the start of the segment (zigzag, can be earlier than the start)
+ * byte     1 when suspicious
+ * string   type, then aggregate id (empty when none), then description: varint length, UTF-8
+ * </pre>
+ */
+@Slf4j
+class EventSegment {
+    static final int BLOCK_BYTES = 4096;
+    private static final String EVENTS_SUFFIX = ".events";
+    private static final String INDEX_SUFFIX = ".index";
+    /* length and checksum */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final long start;
+    private final Path events;
+    private final Path index;
+    private SegmentIndex blocks = new SegmentIndex();
+    private FileChannel appending;
+    private long size;
+    private MappedByteBuffer sealedMapping;
+    private boolean deleted;
+
+    EventSegment(Path directory, long start) {
+        this.start = start;
+        events = directory.resolve(start + EVENTS_SUFFIX);
+        index = directory.resolve(start + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return start of the partition of a segment file, {@code null} for other files
+     */
+    static Long startOf(Path file) {
+        var name = file.getFileName().toString();
+        if (!name.endsWith(EVENTS_SUFFIX)) {
+            return null;
+        }
+        return Long.valueOf(name.substring(0, name.length() - EVENTS_SUFFIX.length()));
+    }
+
+    long start() {
+        return start;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @param forAppending the current segment, indexed again from the records, past ones use their index file
+     */
+    synchronized void open(boolean forAppending) {
+        try {
+            if (!forAppending && Files.exists(index)) {
+                blocks = SegmentIndex.read(index);
+                size = Files.size(events);
+                return;
+            }
+            size = Files.exists(events) ? reindex() : 0;
+            if (forAppending) {
+                appending = FileChannel.open(events, CREATE, WRITE, APPEND);
+            } else {
+                seal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void append(StoredEvent event, boolean sync) {
+        var payload = encode(event);
+        var record = ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(payload))
+                .put(payload)
+                .flip();
+        try {
+            while (record.hasRemaining()) {
+                appending.write(record);
+            }
+            if (sync) {
+                appending.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        blocks.add(size, event.aggregateId(), event.occurredOn().toEpochMilli());
+        size += record.limit();
+    }
+
+    /**
+     * @param matching gets the events matching the query, till its limit
+     * @return how many events match
+     */
+    long find(EventQuery query, List<StoredEvent> matching) {
+        long from = query.from().toEpochMilli();
+        long to = query.to().toEpochMilli();
+        SegmentIndex.Selection selection;
+        ByteBuffer mapping;
+        synchronized (this) {
+            if (deleted) {
+                return 0;
+            }
+            selection = blocks.select(query.aggregateId(), from, to, size);
+            if (selection.isEmpty()) {
+                return 0;
+            }
+            mapping = mapping();
+        }
+        long count = 0;
+        for (int i = 0; i < selection.size(); i++) {
+            count += scan(mapping, selection.startAt(i), selection.endAt(i), query, from, to, matching);
+        }
+        return count;
+    }
+
+    /* closed for appending, index written */
+    synchronized void seal() {
+        close();
+        blocks.write(index);
+    }
+
+    synchronized void delete() {
+        close();
+        sealedMapping = null;
+        deleted = true;
+        try {
+            Files.deleteIfExists(index);
+            Files.deleteIfExists(events);
+        } catch (IOException e) {
+            log.warn("Segment " + events + " not deleted: " + e.getMessage());
+        }
+    }
+
+    synchronized void close() {
+        if (appending == null) {
+            return;
+        }
+        try {
+            appending.force(false);
+            appending.close();
+        } catch (IOException e) {
+            log.warn("Segment " + events + " not closed properly: " + e.getMessage());
+        }
+        appending = null;
+    }
+
+    /* the current segment keeps growing, so it's mapped again for each query */
+    private ByteBuffer mapping() {
+        try {
+            if (appending != null) {
+                try (var channel = FileChannel.open(events, READ)) {
+                    return channel.map(READ_ONLY, 0, size);
+                }
+            }
+            if (sealedMapping == null) {
+                try (var channel = FileChannel.open(events, READ)) {
+                    sealedMapping = channel.map(READ_ONLY, 0, size);
+                }
+            }
+            return sealedMapping;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long scan(
+            ByteBuffer mapping,
+            long startAt,
+            long endAt,
+            EventQuery query,
+            long from,
+            long to,
+            List<StoredEvent> matching) {
+        long count = 0;
+        var records = mapping.slice(Math.toIntExact(startAt), Math.toIntExact(endAt - startAt));
+        while (records.hasRemaining()) {
+            int length = records.getInt();
+            records.getInt(); // checksum, verified when indexing
+            var payload = records.slice(records.position(), length);
+            records.position(records.position() + length);
+            long occurredOn = start + zigzagDecode(readVarLong(payload));
+            if (occurredOn < from || occurredOn >= to) {
+                continue;
+            }
+            boolean suspicious = payload.get() == 1;
+            var type = readString(payload);
+            if (query.type() != null && !query.type().equals(type)) {
+                continue;
+            }
+            var aggregateId = readString(payload);
+            if (query.aggregateId() != null && !query.aggregateId().equals(aggregateId)) {
+                continue;
+            }
+            count++;
+            if (matching.size() < query.limit()) {
+                matching.add(new StoredEvent(
+                        Instant.ofEpochMilli(occurredOn),
+                        type,
+                        aggregateId.isEmpty() ? null : aggregateId,
+                        suspicious,
+                        readString(payload)));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Indexes the records again, truncating a torn one at the end (e.g. after a crash while appending).
+     *
+     * @return size of the valid records
+     */
+    private long reindex() throws IOException {
+        blocks = new SegmentIndex();
+        try (var channel = FileChannel.open(events, READ, WRITE)) {
+            var mapping = channel.map(READ_ONLY, 0, channel.size());
+            long valid = 0;
+            while (mapping.remaining() >= HEADER_BYTES) {
+                int length = mapping.getInt();
+                int checksum = mapping.getInt();
+                if (length <= 0 || length > mapping.remaining()) {
+                    break;
+                }
+                var payload = new byte[length];
+                mapping.get(payload);
+                if (checksum != checksum(payload)) {
+                    break;
+                }
+                var buffer = ByteBuffer.wrap(payload);
+                long occurredOn = start + zigzagDecode(readVarLong(buffer));
+                buffer.get();
+                readString(buffer);
+                var aggregateId = readString(buffer);
+                blocks.add(valid, aggregateId.isEmpty() ? null : aggregateId, occurredOn);
+                valid = mapping.position();
+            }
+            if (valid < channel.size()) {
+                log.warn("Truncating " + (channel.size() - valid) + " bytes of a torn record in " + events);
+                channel.truncate(valid);
+            }
+            return valid;
+        }
+    }
+
+    private byte[] encode(StoredEvent event) {
+        var output = new ByteArrayOutputStream(64);
+        writeVarLong(output, zigzagEncode(event.occurredOn().toEpochMilli() - start));
+        output.write(event.suspicious() ? 1 : 0);
+        writeString(output, event.type());
+        writeString(output, event.aggregateId() == null ? "" : event.aggregateId());
+        writeString(output, event.description());
+        return output.toByteArray();
+    }
+
+    private static int checksum(byte[] payload) {
+        var crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeString(ByteArrayOutputStream output, String value) {
+        var bytes = value.getBytes(UTF_8);
+        writeVarLong(output, bytes.length);
+        output.writeBytes(bytes);
+    }
+
+    /* 7 bits per byte, the highest bit set when more bytes follow */
+    static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    static String readString(ByteBuffer input) {
+        var bytes = new byte[Math.toIntExact(readVarLong(input))];
+        input.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static long readVarLong(ByteBuffer input) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = input.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+    }
+}
+
+/**
+ * Blocks of a segment (offset of the first record, time range) and the blocks of each aggregate.
+ */
+class SegmentIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    private long[] offsets = new long[16];
+    private long[] minMillis = new long[16];
+    private long[] maxMillis = new long[16];
+    private int blockCount;
+    private final Map<String, BlockList> byAggregate = new HashMap<>();
+
+    void add(long offset, String aggregateId, long occurredOn) {
+        if (blockCount == 0 || offset - offsets[blockCount - 1] >= EventSegment.BLOCK_BYTES) {
+            if (blockCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * blockCount);
+                minMillis = Arrays.copyOf(minMillis, 2 * blockCount);
+                maxMillis = Arrays.copyOf(maxMillis, 2 * blockCount);
+            }
+            offsets[blockCount] = offset;
+            minMillis[blockCount] = occurredOn;
+            maxMillis[blockCount] = occurredOn;
+            blockCount++;
+        }
+        int block = blockCount - 1;
+        minMillis[block] = Math.min(minMillis[block], occurredOn);
+        maxMillis[block] = Math.max(maxMillis[block], occurredOn);
+        if (aggregateId != null) {
+            byAggregate.computeIfAbsent(aggregateId, key -> new BlockList()).add(block);
+        }
+    }
+
+    /**
+     * @param size of the records, where the last block ends
+     * @return ranges of records to read, out of the blocks overlapping the time range (and having the aggregate)
+     */
+    Selection select(String aggregateId, long from, long to, long size) {
+        var selection = new Selection();
+        if (aggregateId == null) {
+            for (int block = 0; block < blockCount; block++) {
+                selection.addIfOverlaps(block, from, to, size);
+            }
+            return selection;
+        }
+        var aggregateBlocks = byAggregate.get(aggregateId);
+        if (aggregateBlocks != null) {
+            for (int i = 0; i < aggregateBlocks.size; i++) {
+                selection.addIfOverlaps(aggregateBlocks.blocks[i], from, to, size);
+            }
+        }
+        return selection;
+    }
+
+    void write(Path file) {
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(blockCount);
+            for (int block = 0; block < blockCount; block++) {
+                output.writeLong(offsets[block]);
+                output.writeLong(minMillis[block]);
+                output.writeLong(maxMillis[block]);
+            }
+            output.writeInt(byAggregate.size());
+            for (var aggregate : byAggregate.entrySet()) {
+                output.writeUTF(aggregate.getKey());
+                output.writeInt(aggregate.getValue().size);
+                for (int i = 0; i < aggregate.getValue().size; i++) {
+                    output.writeInt(aggregate.getValue().blocks[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static SegmentIndex read(Path file) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unknown segment index format: " + version);
+            }
+            var index = new SegmentIndex();
+            index.blockCount = input.readInt();
+            index.offsets = new long[Math.max(16, index.blockCount)];
+            index.minMillis = new long[index.offsets.length];
+            index.maxMillis = new long[index.offsets.length];
+            for (int block = 0; block < index.blockCount; block++) {
+                index.offsets[block] = input.readLong();
+                index.minMillis[block] = input.readLong();
+                index.maxMillis[block] = input.readLong();
+            }
+            int aggregates = input.readInt();
+            for (int i = 0; i < aggregates; i++) {
+                var blocks = new BlockList();
+                var aggregateId = input.readUTF();
+                int size = input.readInt();
+                for (int j = 0; j < size; j++) {
+                    blocks.add(input.readInt());
+                }
+                index.byAggregate.put(aggregateId, blocks);
+            }
+            return index;
+        }
+    }
+
+    /* ascending, each block once */
+    private static final class BlockList {
+        private int[] blocks = new int[4];
+        private int size;
+
+        void add(int block) {
+            if (size > 0 && blocks[size - 1] == block) {
+                return;
+            }
+            if (size == blocks.length) {
+                blocks = Arrays.copyOf(blocks, 2 * size);
+            }
+            blocks[size++] = block;
+        }
+    }
+
+    /* byte ranges of consecutive selected blocks merged */
+    final class Selection {
+        private final List<long[]> ranges = new ArrayList<>();
+
+        private void addIfOverlaps(int block, long from, long to, long size) {
+            if (maxMillis[block] < from || minMillis[block] >= to) {
+                return;
+            }
+            long startAt = offsets[block];
+            long endAt = block + 1 < blockCount ? offsets[block + 1] : size;
+            if (!ranges.isEmpty() && ranges.getLast()[1] == startAt) {
+                ranges.getLast()[1] = endAt;
+                return;
+            }
+            ranges.add(new long[]{startAt, endAt});
+        }
+
+        boolean isEmpty() {
+            return ranges.isEmpty();
+        }
+
+        int size() {
+            return ranges.size();
+        }
+
+        long startAt(int range) {
+            return ranges.get(range)[0];
+        }
+
+        long endAt(int range) {
+            return ranges.get(range)[1];
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package io.github.mat3e.downloads.reporting;
 
 import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 public interface ReportingFacade {
@@ -11,8 +19,49 @@ public interface ReportingFacade {
 @Slf4j
 @Service
 class LoggingReportingFacade implements ReportingFacade {
+    /* null when not enabled */
+    private final ReportingEventStore store;
+
+    LoggingReportingFacade() {
+        this((ReportingEventStore) null);
+    }
+
+    @Autowired
+    LoggingReportingFacade(ObjectProvider<ReportingEventStore> store) {
+        this(store.getIfAvailable());
+    }
+
+    LoggingReportingFacade(ReportingEventStore store) {
+        this.store = store;
+    }
+
     @Override
     public void recordEvent(DomainEvent event) {
+        var flightEvent = new ReportingFlightEvent();
+        flightEvent.begin();
+        try {
+            log(event);
+            store(event);
+        } catch (RuntimeException | Error failure) {
+            flightEvent.commit(event, failure.getClass().getSimpleName());
+            throw failure;
+        }
+        flightEvent.commit(event, "ok");
+    }
+
+    /* reporting must not fail the business operation which reported */
+    private void store(DomainEvent event) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.append(event);
+        } catch (RuntimeException e) {
+            log.error("Event not stored: " + event, e);
+        }
+    }
+
+    private static void log(DomainEvent event) {
         if (event.suspicious()) {
             log.warn("Suspicious event recorded: " + event);
             return;
@@ -20,3 +69,29 @@ class LoggingReportingFacade implements ReportingFacade {
         log.info("Event recorded: " + event);
     }
 }
+
+@Name("io.github.mat3e.downloads.Reporting")
+@Label("Reporting")
+@Description("ReportingFacade call")
+@Category({"Downloads", "Reporting"})
+@StackTrace(false)
+class ReportingFlightEvent extends Event {
+    @Label("Event Type")
+    String eventType;
+    @Label("Account Id")
+    String accountId;
+    @Label("Suspicious")
+    boolean suspicious;
+    @Label("Outcome")
+    String outcome;
+
+    void commit(DomainEvent event, String outcome) {
+        if (shouldCommit()) {
+            eventType = event.getClass().getSimpleName();
+            accountId = event.aggregateId();
+            suspicious = event.suspicious();
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+-- outcomes of requests sent with Idempotency-Key, status null while the first request is still being processed
+create table idempotent_responses
+(
+    idempotency_key varchar(255) primary key,
+    fingerprint     varchar(255) not null,
+    status          integer,
+    message         varchar(1024),
+    limitation      integer,
+    created_at      timestamp    not null
+);
+create index idempotent_responses_in_time on idempotent_responses (created_at);
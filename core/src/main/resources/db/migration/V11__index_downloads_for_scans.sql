@@ -0,0 +1,4 @@
+-- scanning for assets held by many accounts reads downloads grouped by asset
+create index downloads_by_asset on downloaded_assets (asset_id, account);
+-- and for accounts holding assets from many countries, grouped by account
+create index downloads_by_account on downloaded_assets (account, country_code);
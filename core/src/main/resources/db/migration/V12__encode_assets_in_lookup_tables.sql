@@ -0,0 +1,18 @@
+-- lookup tables: packed_assets blobs keep these codes instead of repeating country codes and asset ids
+create table country_codes
+(
+    code         smallint auto_increment primary key,
+    country_code varchar(32) not null unique
+);
+
+create table asset_codes
+(
+    code     integer auto_increment primary key,
+    asset_id varchar(32) not null unique
+);
+
+insert into country_codes (country_code)
+select distinct country_code from downloaded_assets where country_code is not null;
+
+insert into asset_codes (asset_id)
+select distinct asset_id from downloaded_assets where asset_id is not null;
@@ -0,0 +1,14 @@
+-- downloads counted by the download window, kept when the asset is removed later on
+create table download_log
+(
+    account       varchar(32) not null,
+    downloaded_at timestamp   not null
+);
+
+-- counting the downloads of an account within the window is a range scan
+create index download_log_in_time on download_log (account, downloaded_at);
+
+insert into download_log (account, downloaded_at)
+select account, downloaded_at
+from downloaded_assets
+where downloaded_at is not null;
@@ -0,0 +1,6 @@
+-- how far account_events were passed on, so restarts continue where the last instance stopped
+create table account_event_readers
+(
+    reader  varchar(32) primary key,
+    last_id bigint not null -- of account_events
+);
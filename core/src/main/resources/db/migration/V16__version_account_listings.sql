@@ -0,0 +1,2 @@
+-- version of the source the listing was built from (assets and limit versions added up), so older refreshes lose
+alter table account_listings add column version integer default 0 not null;
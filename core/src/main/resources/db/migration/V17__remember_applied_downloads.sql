@@ -0,0 +1,11 @@
+-- asset-downloads records applied to accounts, so redelivered ones are not assigned again; dropped once committed
+create table applied_download_records
+(
+    topic            varchar(255) not null,
+    record_partition integer      not null,
+    record_offset    bigint       not null,
+    group_offset     bigint       not null, -- first record of the account in the batch, committed once rejections are sent
+    rejection        varchar(1024), -- message of the rejected asset, null when assigned
+    limitation       integer,
+    primary key (topic, record_partition, record_offset)
+);
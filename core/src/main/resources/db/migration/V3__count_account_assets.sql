@@ -0,0 +1,8 @@
+alter table downloading_accounts add column asset_count integer default 0 not null; -- denormalized for conditional admission
+
+update downloading_accounts
+set asset_count = (select count(*) from downloaded_assets where downloaded_assets.account = downloading_accounts.id);
+
+-- the same asset can be downloaded by many accounts, but just once per account and country
+alter table downloaded_assets drop constraint asset_in_country;
+alter table downloaded_assets add constraint account_asset_in_country unique (account, asset_id, country_code);
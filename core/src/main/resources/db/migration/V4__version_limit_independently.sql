@@ -0,0 +1,3 @@
+-- limit and assets are changed by different paths, so they are versioned independently
+alter table downloading_accounts add column limit_version integer default 0 not null; -- optimistic locking of limit
+alter table downloading_accounts alter column version set default 0; -- optimistic locking of assets
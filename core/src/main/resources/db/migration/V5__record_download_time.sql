@@ -0,0 +1,3 @@
+-- when the asset was assigned, for limits over a sliding window; unknown (null) for assets assigned before
+alter table downloaded_assets add column downloaded_at timestamp;
+create index account_downloads_in_time on downloaded_assets (account, downloaded_at);
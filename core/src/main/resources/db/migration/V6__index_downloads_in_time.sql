@@ -0,0 +1,2 @@
+-- purging expired assets of all the accounts scans the oldest downloads first
+create index downloads_in_time on downloaded_assets (downloaded_at, id);
@@ -0,0 +1,2 @@
+-- all the assets of an account in a single value, for the packed-blob storage; null while kept in downloaded_assets
+alter table downloading_accounts add column packed_assets blob;
@@ -0,0 +1,20 @@
+-- event-sourced storage: changes of assets appended per account, snapshots capping the replay
+create table account_events
+(
+    id           bigint auto_increment primary key, -- order of the whole log, for reading it incrementally
+    account      varchar(32) references downloading_accounts (id),
+    version      integer, -- of the account after the event
+    type         varchar(16), -- ASSIGNED or UNASSIGNED
+    asset_id     varchar(32),
+    country_code varchar(32),
+    occurred_at  timestamp,
+    -- appending the same version twice fails, like optimistic locking; also the index for replaying the tail
+    constraint account_event_version unique (account, version)
+);
+
+create table account_snapshots
+(
+    account       varchar(32) primary key references downloading_accounts (id),
+    version       integer, -- of the last event included
+    packed_assets blob
+);
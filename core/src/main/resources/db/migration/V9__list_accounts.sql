@@ -0,0 +1,9 @@
+-- read model: everything findForAccount needs in a single row, refreshed asynchronously after changes
+create table account_listings
+(
+    account       varchar(32) primary key references downloading_accounts (id),
+    limitation    integer,
+    asset_count   integer,
+    packed_assets blob,
+    refreshed_at  timestamp
+);
@@ -0,0 +1,36 @@
+package io.github.mat3e.downloads.exceptionhandling;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+import reactor.core.publisher.Mono;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
+
+/**
+ * The same mapping as {@link BusinessExceptionHandling}, for router functions of the reactive stack.
+ */
+@Component
+@Order(-2) // before the default error handler of Spring Boot
+@ConditionalOnWebApplication(type = REACTIVE)
+class ReactiveBusinessExceptionHandling implements WebExceptionHandler {
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable exception) {
+        var response = exchange.getResponse();
+        if (exception instanceof EntityNotFoundException) {
+            response.setStatusCode(HttpStatus.NOT_FOUND);
+            return response.setComplete();
+        }
+        if (exception instanceof BusinessException) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(exception.getMessage().getBytes(UTF_8))));
+        }
+        return Mono.error(exception);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.r2dbc.spi.Parameters;
+import io.r2dbc.spi.R2dbcType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Non-blocking counterpart of {@link AccountRepository}: the same tables and the same writes as the Spring Data JDBC
+ * mapping of {@link Account}, including {@code version} checks.
+ */
+@RequiredArgsConstructor
+class ReactiveAccountRepository {
+    private final DatabaseClient database;
+    private final TransactionalOperator transactions;
+
+    Mono<Account> findById(String id) {
+        return database.sql("select limitation, version from downloading_accounts where id = :id")
+                .bind("id", id)
+                .map(row -> new AccountRow(row.get("limitation", Integer.class), row.get("version", Integer.class)))
+                .one()
+                .flatMap(account -> database.sql("""
+                                select asset_id, country_code, downloaded_at from downloaded_assets
+                                where account = :id
+                                order by downloading_accounts_key""")
+                        .bind("id", id)
+                        .map(row -> new AssetRow(
+                                Asset.withId(row.get("asset_id", String.class))
+                                        .inCountry(row.get("country_code", String.class)),
+                                toInstant(row.get("downloaded_at", LocalDateTime.class))))
+                        .all()
+                        .collectList()
+                        .map(assets -> Account.restore(
+                                AccountId.valueOf(id),
+                                assets.stream().map(AssetRow::asset).toList(),
+                                assets.stream().map(AssetRow::downloadedAt).toList(),
+                                account.limit(),
+                                account.version(),
+                                // lookup tables are read with blocking JDBC, so codes are scoped to the account
+                                new CodeDictionary())))
+                .as(transactions::transactional);
+    }
+
+    /**
+     * Saves assets of the existing account: bumps its version and replaces all the asset rows.
+     */
+    Mono<Void> save(Account account) {
+        var id = account.id().getId();
+        var assets = account.assets();
+        var downloadTimes = account.downloadTimes();
+        return database.sql("update downloading_accounts set version = version + 1 where id = :id and version = :version")
+                .bind("id", id)
+                .bind("version", account.version())
+                .fetch()
+                .rowsUpdated()
+                .filter(updated -> updated > 0)
+                .switchIfEmpty(Mono.error(() -> new OptimisticLockingFailureException(
+                        "Account " + id + " changed meanwhile")))
+                .then(database.sql("delete from downloaded_assets where account = :id")
+                        .bind("id", id)
+                        .fetch()
+                        .rowsUpdated())
+                .thenMany(Flux.range(0, assets.size()).concatMap(key -> database.sql("""
+                                insert into downloaded_assets
+                                    (asset_id, country_code, downloaded_at, version, account, downloading_accounts_key)
+                                values (:assetId, :countryCode, :downloadedAt, 0, :account, :key)""")
+                        .bind("assetId", assets.get(key).getId())
+                        .bind("countryCode", assets.get(key).getCountryCode())
+                        .bind("downloadedAt", Parameters.in(R2dbcType.TIMESTAMP, toLocalDateTime(downloadTimes.get(key))))
+                        .bind("account", id)
+                        .bind("key", key)
+                        .fetch()
+                        .rowsUpdated()))
+                .then()
+                .as(transactions::transactional);
+    }
+
+    /* timestamp column, read and written in the same default time zone as JDBC does */
+    private static Instant toInstant(LocalDateTime downloadedAt) {
+        return downloadedAt == null ? null : downloadedAt.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private static LocalDateTime toLocalDateTime(Instant downloadedAt) {
+        return downloadedAt == null ? null : LocalDateTime.ofInstant(downloadedAt, ZoneId.systemDefault());
+    }
+
+    private record AccountRow(int limit, int version) {
+    }
+
+    private record AssetRow(Asset asset, Instant downloadedAt) {
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+
+/**
+ * The reactive API reads and saves {@code downloaded_assets} rows itself, so it just fits {@code aggregate} storage,
+ * without the features deciding within {@link LimitingFacade} (download window, read model). The app fails to start
+ * with those rather than silently bypass them.
+ */
+@Configuration
+@Profile("reactive")
+class ReactiveLimitingConfiguration implements AutoCloseable {
+    // not a bean, which would turn off the DataSource auto-configuration that JDBC repositories and Flyway rely on
+    private final ConnectionFactory connectionFactory;
+
+    ReactiveLimitingConfiguration(@Value("${spring.r2dbc.url}") String r2dbcUrl) {
+        connectionFactory = ConnectionFactories.get(r2dbcUrl);
+    }
+
+    @Bean
+    ReactiveLimitingFacade reactiveFacade(
+            Clock clock,
+            ReportingFacade reporting,
+            ConcurrencyLimiter concurrencyLimiter,
+            @Value("${" + LimitingConfiguration.STORAGE_PROPERTY + ":aggregate}") String storage,
+            @Value("${downloads.limiting.window.downloads:0}") int windowDownloads,
+            @Value("${downloads.limiting.read-model.enabled:false}") boolean readModelEnabled) {
+        failOnUnsupported(!"aggregate".equals(storage), LimitingConfiguration.STORAGE_PROPERTY + "=" + storage);
+        failOnUnsupported(windowDownloads > 0, "downloads.limiting.window.downloads=" + windowDownloads);
+        failOnUnsupported(readModelEnabled, "downloads.limiting.read-model.enabled=true");
+        // not a bean, so the JDBC transaction manager stays the only one in the context
+        var transactions = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        return new ReactiveLimitingFacade(
+                clock,
+                new ReactiveAccountRepository(DatabaseClient.create(connectionFactory), transactions),
+                reporting,
+                concurrencyLimiter);
+    }
+
+    private static void failOnUnsupported(boolean unsupported, String setting) {
+        if (unsupported) {
+            throw new IllegalStateException("Reactive profile doesn't support " + setting);
+        }
+    }
+
+    /* Tomcat is there for the servlet stack and would be picked first */
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Override
+    public void close() {
+        if (connectionFactory instanceof Closeable pool) {
+            Mono.from(pool.close()).block();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Priority;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.function.Function;
+
+import static lombok.AccessLevel.PACKAGE;
+
+/**
+ * Non-blocking variant of {@link LimitingFacade} for the API (reactive profile). Limits are still changed through
+ * {@link LimitingFacade}.
+ * <p>
+ * Calls take room in the same {@link ConcurrencyLimiter} as the servlet API, without waiting for it.
+ */
+@RequiredArgsConstructor(access = PACKAGE)
+public class ReactiveLimitingFacade {
+    private final Clock clock;
+    private final ReactiveAccountRepository accountRepository;
+    private final ReportingFacade reporting;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public Mono<Void> assignDownloadedAsset(AccountId accountId, Asset downloadedAsset) {
+        return saving(accountId, account -> account.assignAsset(downloadedAsset, clock));
+    }
+
+    public Mono<Void> removeDownloadedAsset(AccountId accountId, Asset downloadedAsset) {
+        return saving(accountId, account -> account.unassignAsset(downloadedAsset, clock));
+    }
+
+    /**
+     * @return assets or nothing when there is no such account
+     */
+    public Mono<List<Asset>> findForAccount(AccountId accountId) {
+        return limited(Priority.READ, accountRepository.findById(accountId.getId()).map(Account::assets));
+    }
+
+    private Mono<Void> saving(AccountId accountId, Function<Account, List<SuspiciousLimitingEvent>> accountCommand) {
+        return limited(Priority.WRITE, accountRepository.findById(accountId.getId())
+                .switchIfEmpty(Mono.error(() -> BusinessException.notFound("Account", accountId.getId())))
+                .flatMap(account -> {
+                    var events = accountCommand.apply(account);
+                    return accountRepository.save(account).thenReturn(events);
+                }))
+                .doOnNext(events -> events.forEach(reporting::recordEvent))
+                .then();
+    }
+
+    /* cancelled calls count as failed, as they are most likely timed out */
+    private <T> Mono<T> limited(Priority priority, Mono<T> call) {
+        return Mono.defer(() -> {
+            var permit = concurrencyLimiter.tryAcquire(priority);
+            return call
+                    .doOnSuccess(result -> permit.release(false))
+                    .doOnError(failure -> permit.release(!(failure instanceof BusinessException)))
+                    .doOnCancel(() -> permit.release(true));
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.mat3e.downloads.limiting.rest;
+
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.ConcurrencyLimitExceeded;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.ReactiveLimitingFacade;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter.RequestRateExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.rest.LimitingController.ExceededLimit;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.queryParam;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * The same endpoints as {@link LimitingController}, for the reactive stack. Responses are not stored for
+ * {@code Idempotency-Key}, so requests with it are rejected rather than processed again on retries.
+ */
+@Configuration
+@Profile("reactive")
+class LimitingRoutes {
+    @Bean
+    RouterFunction<ServerResponse> limitingRouter(
+            ReactiveLimitingFacade facade,
+            RequestRateLimiter rateLimiter,
+            Validator validator) {
+        var handler = new LimitingHandler(facade, rateLimiter, validator);
+        return route()
+                .path("/api/accounts/{accountId}/assets", assets -> assets
+                        .GET(handler::readAssets)
+                        .POST(handler::addAsset)
+                        .DELETE("/{id}", queryParam("countryCode", countryCode -> true), handler::removeAsset))
+                .onError(AccountLimitExceeded.class, (exception, request) -> ServerResponse.unprocessableEntity()
+                        .bodyValue(ExceededLimit.from((AccountLimitExceeded) exception)))
+                .onError(ConcurrencyLimitExceeded.class, (exception, request) -> ServerResponse
+                        .status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(
+                                Math.max(1, ((ConcurrencyLimitExceeded) exception).getRetryAfter().toSeconds())))
+                        .bodyValue(exception.getMessage()))
+                .onError(RequestRateExceeded.class, (exception, request) -> ServerResponse
+                        .status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER,
+                                LimitingController.retryAfterSeconds((RequestRateExceeded) exception))
+                        .bodyValue(exception.getMessage()))
+                .build();
+    }
+}
+
+@RequiredArgsConstructor
+class LimitingHandler {
+    private final ReactiveLimitingFacade facade;
+    private final RequestRateLimiter rateLimiter;
+    private final Validator validator;
+
+    Mono<ServerResponse> readAssets(ServerRequest request) {
+        return facade.findForAccount(accountId(request))
+                .flatMap(assets -> ServerResponse.ok().bodyValue(assets))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    Mono<ServerResponse> addAsset(ServerRequest request) {
+        if (request.headers().firstHeader(LimitingController.IDEMPOTENCY_KEY) != null) {
+            return Mono.error(new ServerWebInputException(
+                    LimitingController.IDEMPOTENCY_KEY + " is not supported by the reactive API"));
+        }
+        return Mono.fromRunnable(() -> rateLimiter.acquire(accountId(request)))
+                .then(request.bodyToMono(Asset.class))
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Asset required")))
+                .map(this::valid)
+                .flatMap(asset -> facade.assignDownloadedAsset(accountId(request), asset))
+                .then(ServerResponse.created(URI.create("/")).build());
+    }
+
+    Mono<ServerResponse> removeAsset(ServerRequest request) {
+        return Mono.fromRunnable(() -> rateLimiter.acquire(accountId(request)))
+                .then(Mono.fromCallable(() -> valid(Asset.withId(request.pathVariable("id"))
+                        .inCountry(request.queryParam("countryCode").orElseThrow()))))
+                .flatMap(asset -> facade.removeDownloadedAsset(accountId(request), asset))
+                .then(ServerResponse.noContent().build());
+    }
+
+    private static AccountId accountId(ServerRequest request) {
+        return AccountId.valueOf(request.pathVariable("accountId"));
+    }
+
+    private <T> T valid(T value) {
+        var violations = validator.validate(value);
+        if (!violations.isEmpty()) {
+            throw new ServerWebInputException(new ConstraintViolationException(violations).getMessage());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.api.AssetDeserialization;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.reactive.server.WebTestClient.ResponseSpec;
+
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "spring.r2dbc.url=r2dbc:pool:h2:mem://sa@localhost/testdb?options=DB_CLOSE_DELAY=-1;CASE_INSENSITIVE_IDENTIFIERS=TRUE",
+        "spring.kafka.listener.auto-startup=false",
+        "spring.kafka.admin.auto-create=false"
+})
+@ActiveProfiles({"test", "reactive"})
+class ReactiveLimitingIntTest {
+    @Autowired
+    private WebTestClient webClient;
+
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Test
+    void downloadStarted_storesAssetsTillLimit() {
+        // given
+        limiting.overrideAccountLimit(AccountId.valueOf("reactive-1"), 2);
+        // and
+        postAsset("reactive-1", "{ \"id\": \"123\", \"countryCode\": \"US\" }").expectStatus().isCreated();
+        // and
+        postAsset("reactive-1", "{ \"id\": \"456\", \"countryCode\": \"US\" }").expectStatus().isCreated();
+
+        // when
+        postAsset("reactive-1", "{ \"id\": \"789\", \"countryCode\": \"US\" }")
+                .expectStatus().isEqualTo(422)
+                .expectBody().jsonPath("$.limit").isEqualTo(2);
+
+        then(getAssets("reactive-1")).containsExactly(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US"));
+
+        // when
+        deleteAsset("reactive-1", "123", "US").expectStatus().isNoContent();
+        // and
+        postAsset("reactive-1", "{ \"id\": \"789\", \"countryCode\": \"US\" }").expectStatus().isCreated();
+
+        then(getAssets("reactive-1")).containsExactly(
+                Asset.withId("456").inCountry("US"),
+                Asset.withId("789").inCountry("US"));
+        then(limiting.findForAccount(AccountId.valueOf("reactive-1"))).hasValue(List.of(
+                Asset.withId("456").inCountry("US"),
+                Asset.withId("789").inCountry("US")));
+    }
+
+    @Test
+    void illegalParams_returnsClientError() {
+        // given
+        limiting.overrideAccountLimit(AccountId.valueOf("reactive-2"), 2);
+        var validBody = "{ \"id\": \"123\", \"countryCode\": \"US\" }";
+
+        // expect 404 - no account created, no assets
+        webClient.get().uri("/api/accounts/{id}/assets", "lookMaNotExistingId").exchange().expectStatus().isNotFound();
+        postAsset("lookMaNotExistingId", validBody).expectStatus().isNotFound();
+        deleteAsset("lookMaNotExistingId", "123", "US").expectStatus().isNotFound();
+
+        // expect 400
+        postAsset("reactive-2", "{ \"countryCode\": \"US\" }").expectStatus().isBadRequest();
+        postAsset("reactive-2", "{ \"id\": \"123\" }").expectStatus().isBadRequest();
+        deleteAsset("reactive-2", "  ", "OK").expectStatus().isBadRequest();
+        deleteAsset("reactive-2", "123", "  ").expectStatus().isBadRequest();
+        webClient.post().uri("/api/accounts/{id}/assets", "reactive-2")
+                .header("Idempotency-Key", "key-1")
+                .contentType(APPLICATION_JSON)
+                .bodyValue(validBody)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private ResponseSpec postAsset(String accountId, String json) {
+        return webClient.post().uri("/api/accounts/{id}/assets", accountId)
+                .contentType(APPLICATION_JSON)
+                .bodyValue(json)
+                .exchange();
+    }
+
+    private ResponseSpec deleteAsset(String accountId, String assetId, String countryCode) {
+        return webClient.delete()
+                .uri(builder -> builder.path("/api/accounts/{id}/assets/{assetId}")
+                        .queryParam("countryCode", countryCode)
+                        .build(accountId, assetId))
+                .exchange();
+    }
+
+    private List<Asset> getAssets(String accountId) {
+        return webClient.get().uri("/api/accounts/{id}/assets", accountId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(AssetDeserialization.class)
+                .returnResult()
+                .getResponseBody()
+                .stream()
+                .map(AssetDeserialization::toApi)
+                .toList();
+    }
+}
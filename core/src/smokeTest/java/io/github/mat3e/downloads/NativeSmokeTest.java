@@ -0,0 +1,122 @@
+package io.github.mat3e.downloads;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs against the executable built by {@code nativeCompile}: {@code ./gradlew :core:nativeSmokeTest -Pnative}.
+ * <p>
+ * No Kafka broker, listeners don't start. Uses the sample account from migrations, with the limit of 3.
+ */
+class NativeSmokeTest {
+    private static final String SAMPLE_ASSETS = "/api/accounts/sample-account/assets";
+    private static final HttpClient http = HttpClient.newHttpClient();
+
+    private static Process app;
+    private static String baseUrl;
+
+    @BeforeAll
+    static void startExecutable(@TempDir Path workDir) throws IOException {
+        int port = freePort();
+        app = new ProcessBuilder(
+                System.getProperty("native.executable"),
+                "--server.port=" + port,
+                "--spring.datasource.url=jdbc:h2:file:" + workDir.resolve("smoke") + ";CASE_INSENSITIVE_IDENTIFIERS=TRUE",
+                "--spring.kafka.listener.auto-startup=false",
+                "--spring.kafka.admin.auto-create=false")
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve("app.log").toFile())
+                .start();
+        baseUrl = "http://localhost:" + port;
+        await().atMost(30, SECONDS)
+                .ignoreExceptions()
+                .until(() -> get("/actuator/health").statusCode() == 200);
+    }
+
+    @AfterAll
+    static void stopExecutable() throws InterruptedException {
+        app.destroy();
+        app.waitFor(10, SECONDS);
+    }
+
+    @Test
+    void sampleAccount_storesAssetsTillLimit() throws Exception {
+        // given
+        then(post(SAMPLE_ASSETS, "{\"id\": \"123\", \"countryCode\": \"US\"}").statusCode()).isEqualTo(201);
+        then(post(SAMPLE_ASSETS, "{\"id\": \"456\", \"countryCode\": \"US\"}").statusCode()).isEqualTo(201);
+        then(post(SAMPLE_ASSETS, "{\"id\": \"789\", \"countryCode\": \"PL\"}").statusCode()).isEqualTo(201);
+
+        // when
+        var exceeded = post(SAMPLE_ASSETS, "{\"id\": \"000\", \"countryCode\": \"US\"}");
+
+        then(exceeded.statusCode()).isEqualTo(422);
+        then(exceeded.body()).contains("\"limit\":3");
+        then(get(SAMPLE_ASSETS).body())
+                .contains("\"id\":\"123\"")
+                .contains("\"id\":\"456\"")
+                .contains("\"id\":\"789\"")
+                .doesNotContain("\"id\":\"000\"");
+
+        // when
+        var removed = delete(SAMPLE_ASSETS + "/123?countryCode=US");
+
+        then(removed.statusCode()).isEqualTo(204);
+        then(get(SAMPLE_ASSETS).body()).doesNotContain("\"id\":\"123\"");
+    }
+
+    @Test
+    void unknownAccount_notFound() throws Exception {
+        // when
+        var response = get("/api/accounts/unknown/assets");
+
+        then(response.statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    void invalidAsset_badRequest() throws Exception {
+        // when
+        var response = post(SAMPLE_ASSETS, "{\"countryCode\": null}");
+
+        then(response.statusCode()).isEqualTo(400);
+    }
+
+    private static HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET());
+    }
+
+    private static HttpResponse<String> post(String path, String json) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString(json)));
+    }
+
+    private static HttpResponse<String> delete(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).DELETE());
+    }
+
+    private static HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return http.send(request.build(), BodyHandlers.ofString());
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
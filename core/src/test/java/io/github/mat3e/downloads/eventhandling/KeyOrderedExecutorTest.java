@@ -0,0 +1,124 @@
+package io.github.mat3e.downloads.eventhandling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.awaitility.Awaitility.await;
+
+class KeyOrderedExecutorTest {
+    private final KeyOrderedExecutor<String> toTest = new KeyOrderedExecutor<>(4);
+
+    @AfterEach
+    void tearDown() {
+        toTest.close();
+    }
+
+    @Test
+    void execute_sameKey_keepsOrder() {
+        // given
+        var processed = new CopyOnWriteArrayList<Integer>();
+
+        // when
+        var executions = IntStream.range(0, 100)
+                .mapToObj(i -> toTest.execute("key", () -> processed.add(i)))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(executions).join();
+
+        then(processed).containsExactlyElementsOf(IntStream.range(0, 100).boxed().toList());
+        // the key is dropped after its last task completes, possibly after allOf
+        await().atMost(5, SECONDS).untilAsserted(() -> then(toTest.pendingKeys()).isZero());
+    }
+
+    @Test
+    void execute_sameKeyFailure_continuesWithNextTask() {
+        // given
+        var processed = new CopyOnWriteArrayList<String>();
+
+        // when
+        var failed = toTest.execute("key", () -> {
+            throw new IllegalStateException("failure");
+        });
+        var next = toTest.execute("key", () -> processed.add("next"));
+        next.join();
+
+        then(failed).isCompletedExceptionally();
+        then(processed).containsExactly("next");
+    }
+
+    @Test
+    void execute_slowKey_doesNotBlockOtherKeys() {
+        // given
+        var slowKeyReleased = new CountDownLatch(1);
+        var processed = new CopyOnWriteArrayList<String>();
+        toTest.execute("slow", () -> {
+            waitFor(slowKeyReleased);
+            processed.add("slow");
+        });
+
+        // when
+        List.of("a", "b", "c").forEach(key -> toTest.execute(key, () -> processed.add(key)));
+
+        await().atMost(5, SECONDS).until(() -> processed.size() == 3);
+        then(processed).containsExactlyInAnyOrder("a", "b", "c");
+
+        // when
+        slowKeyReleased.countDown();
+
+        await().atMost(5, SECONDS).until(() -> processed.contains("slow"));
+    }
+
+    @Test
+    void execute_retryableFailure_retriesBeforeNextTask() {
+        // given
+        var attempts = new AtomicInteger();
+        var processed = new CopyOnWriteArrayList<String>();
+
+        // when
+        var retried = toTest.execute("key", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("failure");
+            }
+            processed.add("retried");
+        }, new FixedBackOff(10, 5), failure -> true);
+        var next = toTest.execute("key", () -> processed.add("next"));
+        next.join();
+
+        then(retried).isCompleted();
+        then(attempts).hasValue(3);
+        then(processed).containsExactly("retried", "next");
+    }
+
+    @Test
+    void execute_nonRetryableFailure_failsAtOnce() {
+        // given
+        var attempts = new AtomicInteger();
+
+        // when
+        var failed = toTest.execute("key", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("failure");
+        }, new FixedBackOff(10, 5), failure -> !(failure instanceof IllegalArgumentException));
+
+        then(catchThrowable(failed::join)).hasRootCauseInstanceOf(IllegalArgumentException.class);
+        then(attempts).hasValue(1);
+    }
+
+    private static void waitFor(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.read-model.enabled=true",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class AccountListingsIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private AccountListings listings;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void assetsChanged_servesThemFromListing() {
+        // given
+        var accountId = AccountId.valueOf("listed");
+        limiting.overrideAccountLimit(accountId, 2);
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("PL"));
+
+        await().atMost(5, SECONDS).ignoreExceptions().untilAsserted(() -> then(listedAssetCount(accountId)).isEqualTo(2));
+        then(meterRegistry.get("account.listings.pending").gauge().value()).isZero();
+        // and not read from the source anymore
+        jdbc.update("delete from downloaded_assets where account = ?", accountId.getId());
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("123").inCountry("DE"),
+                Asset.withId("456").inCountry("PL"));
+    }
+
+    @Test
+    void refreshFromOlderSource_keepsNewerListing() {
+        // given
+        var accountId = AccountId.valueOf("listed-newer");
+        limiting.overrideAccountLimit(accountId, 2);
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        await().atMost(5, SECONDS).ignoreExceptions().untilAsserted(() -> then(listedAssetCount(accountId)).isEqualTo(1));
+        // and listed from a newer version meanwhile
+        jdbc.update("update account_listings set version = version + 10, asset_count = 2 where account = ?",
+                accountId.getId());
+        var refreshes = meterRegistry.get("account.listings.lag").timer();
+        long refreshedBefore = refreshes.count();
+
+        // when
+        listings.changed(accountId);
+
+        await().atMost(5, SECONDS).until(() -> refreshes.count() > refreshedBefore);
+        then(listedAssetCount(accountId)).isEqualTo(2);
+    }
+
+    @Test
+    void rebuild_listsAccountsChangedBehindFacade() {
+        // given
+        var accountId = AccountId.valueOf("rebuilt");
+        limiting.overrideAccountLimit(accountId, 2);
+        await().atMost(5, SECONDS).ignoreExceptions().untilAsserted(() -> then(listedAssetCount(accountId)).isZero());
+        // and
+        jdbc.update("""
+                        insert into downloaded_assets (asset_id, country_code, version, account, downloading_accounts_key)
+                        values ('123', 'DE', 0, ?, 0)""",
+                accountId.getId());
+
+        // when
+        int rebuilt = listings.rebuild(jdbc);
+
+        then(rebuilt).isPositive();
+        then(listedAssetCount(accountId)).isEqualTo(1);
+        thenFoundIn(limiting, accountId).containsExactly(Asset.withId("123").inCountry("DE"));
+    }
+
+    @Test
+    void rebuild_accountWithoutLimit_listsItWithoutLimit() {
+        // given
+        jdbc.update("insert into downloading_accounts (id) values ('rebuilt-no-limit')");
+
+        // when
+        listings.rebuild(jdbc);
+
+        then(jdbc.queryForObject(
+                "select limitation from account_listings where account = 'rebuilt-no-limit'",
+                Integer.class)).isNull();
+        then(listedAssetCount(AccountId.valueOf("rebuilt-no-limit"))).isZero();
+    }
+
+    private Integer listedAssetCount(AccountId accountId) {
+        return jdbc.queryForObject(
+                "select asset_count from account_listings where account = ?",
+                Integer.class,
+                accountId.getId());
+    }
+}
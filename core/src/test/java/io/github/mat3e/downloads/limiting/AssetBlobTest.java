@@ -0,0 +1,98 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.catchException;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class AssetBlobTest {
+    private final StoredCodes codes = new InMemoryCodes();
+
+    @Test
+    void read_writtenBlob_returnsSameAssetsAndTimes() {
+        // given
+        var assets = List.of(
+                Asset.withId("123").inCountry("DE"),
+                Asset.withId("za\u017c\u00f3\u0142\u0107").inCountry("PL"),
+                Asset.withId("123").inCountry("PL"));
+        var downloadTimes = Arrays.asList(Instant.ofEpochMilli(1_700_000_000_123L), null, Instant.EPOCH);
+
+        // when
+        var read = AssetBlob.read(new AssetBlob(assets, downloadTimes).toBytes(codes), codes);
+
+        then(read.assets()).isEqualTo(assets);
+        then(read.downloadTimes()).isEqualTo(downloadTimes);
+    }
+
+    @Test
+    void read_valuesFormat_returnsAssetsWrittenBeforeLookupTables() {
+        // given
+        var bytes = new byte[]{
+                AssetBlob.VALUES_FORMAT,
+                1, 2, 'D', 'E',
+                1, 3, '1', '2', '3', 0, 0};
+
+        // when
+        var read = AssetBlob.read(bytes, codes);
+
+        then(read.assets()).containsExactly(Asset.withId("123").inCountry("DE"));
+        then(read.downloadTimes()).containsExactly((Instant) null);
+    }
+
+    @Test
+    void read_noBlob_returnsNoAssets() {
+        then(AssetBlob.read(null, codes).assets()).isEmpty();
+    }
+
+    @Test
+    void read_unknownFormat_fails() {
+        // given
+        var bytes = new AssetBlob(List.of(), List.of()).toBytes(codes);
+        bytes[0] = AssetBlob.FORMAT_VERSION + 1;
+
+        // expect
+        then(catchException(() -> AssetBlob.read(bytes, codes))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static class InMemoryCodes extends StoredCodes {
+        private final List<String> countries = new ArrayList<>();
+        private final List<String> assets = new ArrayList<>();
+
+        InMemoryCodes() {
+            super(null, null);
+        }
+
+        @Override
+        public int encodeCountry(String countryCode) {
+            return encode(countries, countryCode);
+        }
+
+        @Override
+        public String decodeCountry(int code) {
+            return countries.get(code);
+        }
+
+        @Override
+        public int encodeAsset(String assetId) {
+            return encode(assets, assetId);
+        }
+
+        @Override
+        public String decodeAsset(int code) {
+            return assets.get(code);
+        }
+
+        private static int encode(List<String> values, String value) {
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+            return values.indexOf(value);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.asset-ttl.global=P30D",
+        "downloads.limiting.asset-ttl.accounts.long-lived=P365D",
+        "downloads.limiting.asset-ttl.purge.chunk-size=2",
+        "downloads.limiting.asset-ttl.purge.duty-cycle=0.5",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class AssetExpiryIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private ExpiredAssetPurger purger;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void purge_deletesJustExpiredAssets() {
+        // given
+        var accountId = AccountId.valueOf("expiring");
+        var longLivedId = AccountId.valueOf("long-lived");
+        limiting.overrideAccountLimit(accountId, 10);
+        limiting.overrideAccountLimit(longLivedId, 10);
+        // and
+        givenAssetDownloaded(accountId, "old-1", Duration.ofDays(40));
+        givenAssetDownloaded(accountId, "old-2", Duration.ofDays(35));
+        givenAssetDownloaded(accountId, "old-3", Duration.ofDays(31));
+        givenAssetDownloaded(longLivedId, "old", Duration.ofDays(40));
+        limiting.assignDownloadedAsset(accountId, Asset.withId("fresh").inCountry("US"));
+        // and read, so later reads must see the purge
+        thenFoundIn(limiting, accountId).hasSize(4);
+
+        // when
+        int deleted = purger.purge();
+
+        // then
+        then(deleted).isEqualTo(3);
+        thenFoundIn(limiting, accountId).containsExactly(Asset.withId("fresh").inCountry("US"));
+        thenFoundIn(limiting, longLivedId).containsExactly(Asset.withId("old").inCountry("US"));
+        then(meterRegistry.counter("assets.purged").count()).isEqualTo(3);
+        then(meterRegistry.get("assets.purge.lag").gauge().value()).isZero();
+    }
+
+    @Test
+    void expireAssets_downloadedAgainSinceFoundExpired_keepsAsset() {
+        // given
+        var accountId = AccountId.valueOf("downloading-again");
+        limiting.overrideAccountLimit(accountId, 10);
+        var asset = Asset.withId("again").inCountry("US");
+        givenAssetDownloaded(accountId, "again", Duration.ofDays(40));
+        // and found expired
+        var expired = new ExpiredAsset(0, accountId, asset, Instant.now().minus(Duration.ofDays(39)));
+        // and downloaded again before the purge got to it
+        limiting.removeDownloadedAsset(accountId, asset);
+        limiting.assignDownloadedAsset(accountId, asset);
+
+        // when
+        int deleted = limiting.expireAssets(accountId, List.of(expired));
+
+        // then
+        then(deleted).isZero();
+        thenFoundIn(limiting, accountId).containsExactly(asset);
+    }
+
+    private void givenAssetDownloaded(AccountId accountId, String assetId, Duration ago) {
+        jdbc.update("""
+                        insert into downloaded_assets
+                            (asset_id, country_code, downloaded_at, version, account, downloading_accounts_key)
+                        values (?, 'US', ?, 0, ?,
+                            (select coalesce(max(downloading_accounts_key) + 1, 0) from downloaded_assets where account = ?))""",
+                assetId,
+                Timestamp.from(Instant.now().minus(ago)),
+                accountId.getId(),
+                accountId.getId());
+    }
+}
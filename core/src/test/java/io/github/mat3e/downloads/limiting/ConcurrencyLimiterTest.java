@@ -0,0 +1,201 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.ConcurrencyLimitExceeded;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Priority;
+import io.github.mat3e.downloads.limiting.ConcurrencyLimiter.Settings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class ConcurrencyLimiterTest {
+    private static final Duration THRESHOLD = Duration.ofMillis(100);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void tryCall_overReadShare_shedsReadsButAdmitsWrites() {
+        // given
+        var toTest = limiter(4, 1, 10, 0.5, Duration.ZERO);
+
+        // when
+        var rejection = toTest.tryCall(Priority.READ, () -> toTest.tryCall(Priority.READ, () -> {
+            var write = toTest.tryCall(Priority.WRITE, () -> "written");
+            then(write).isEqualTo("written");
+            return catchThrowable(() -> toTest.tryCall(Priority.READ, () -> "read"));
+        }));
+
+        then(rejection).isInstanceOf(ConcurrencyLimitExceeded.class);
+        then(((ConcurrencyLimitExceeded) rejection).getRetryAfter()).isEqualTo(Duration.ofSeconds(1));
+        then(meterRegistry.get("limiting.concurrency.shed").tag("priority", "read").counter().count()).isEqualTo(1);
+        then(toTest.inFlight()).isZero();
+    }
+
+    @Test
+    void tryCall_slow_cutsLimitDownToMin() {
+        // given
+        var toTest = limiter(10, 2, 10, 0.8, Duration.ZERO);
+
+        // when
+        toTest.tryCall(Priority.WRITE, () -> nanoTime.addAndGet(THRESHOLD.toNanos() + 1));
+
+        then(toTest.limit()).isEqualTo(5);
+
+        // when
+        toTest.tryCall(Priority.WRITE, () -> nanoTime.addAndGet(THRESHOLD.toNanos() + 1));
+        toTest.tryCall(Priority.WRITE, () -> nanoTime.addAndGet(THRESHOLD.toNanos() + 1));
+
+        then(toTest.limit()).isEqualTo(2);
+    }
+
+    @Test
+    void tryCall_fastWithLimitMostlyUsed_raisesLimitUpToMax() {
+        // given
+        var toTest = limiter(2, 1, 3, 0.8, Duration.ZERO);
+
+        // when
+        toTest.tryCall(Priority.WRITE, () -> nanoTime.addAndGet(THRESHOLD.toNanos()));
+
+        then(toTest.limit()).isEqualTo(2.5);
+
+        // when
+        toTest.tryCall(Priority.WRITE, () -> toTest.tryCall(Priority.WRITE, () -> "nested"));
+        toTest.tryCall(Priority.WRITE, () -> toTest.tryCall(Priority.WRITE, () -> "nested"));
+
+        then(toTest.limit()).isEqualTo(3);
+    }
+
+    @Test
+    void tryCall_failing_cutsLimitJustForTechnicalFailures() {
+        // given
+        var toTest = limiter(10, 1, 10, 0.8, Duration.ZERO);
+
+        // when
+        var rejected = catchThrowable(() -> toTest.tryCall(Priority.WRITE, () -> {
+            throw BusinessException.notFound("Account", "1");
+        }));
+
+        then(rejected).isInstanceOf(BusinessException.class);
+        then(toTest.limit()).isEqualTo(10);
+
+        // when
+        var failed = catchThrowable(() -> toTest.tryCall(Priority.WRITE, () -> {
+            throw new IllegalStateException("connection lost");
+        }));
+
+        then(failed).isInstanceOf(IllegalStateException.class);
+        then(toTest.limit()).isEqualTo(5);
+        then(toTest.inFlight()).isZero();
+    }
+
+    @Test
+    void call_overLimit_waitsThenProceeds() {
+        // given
+        var toTest = limiter(1, 1, 1, 0.8, Duration.ofMillis(50));
+
+        // when
+        long started = System.nanoTime();
+        var inFlight = toTest.tryCall(Priority.WRITE, () -> toTest.call(Priority.WRITE, toTest::inFlight));
+
+        then(inFlight).isEqualTo(2);
+        then(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+    }
+
+    /**
+     * A database with 4 connections, where queries suddenly get 20 times slower. Without the limiter all the clients
+     * would queue for the connections, about 16 * 40 ms each.
+     */
+    @Test
+    void tryCall_databaseSlowingDown_shedsLoadAndKeepsLatencyOfAdmittedCalls() throws Exception {
+        // given
+        var toTest = new ConcurrencyLimiter(
+                new Settings(32, 4, 64, Duration.ofMillis(20), 0.8, 0.5, Duration.ofSeconds(1), Duration.ZERO),
+                meterRegistry);
+        var connections = new Semaphore(4, true);
+        var queryMillis = new AtomicLong(2);
+        var slowedDown = new AtomicBoolean();
+        var slowLatencies = new ConcurrentLinkedQueue<Long>();
+        var slowReads = new AtomicInteger();
+        var slowWrites = new AtomicInteger();
+        var shed = new AtomicInteger();
+        long end = System.nanoTime() + Duration.ofMillis(1500).toNanos();
+
+        // when
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 64; i++) {
+                var priority = i % 2 == 0 ? Priority.READ : Priority.WRITE;
+                clients.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        boolean slow = slowedDown.get();
+                        long started = System.nanoTime();
+                        try {
+                            toTest.tryCall(priority, () -> query(connections, queryMillis.get()));
+                        } catch (ConcurrencyLimitExceeded e) {
+                            shed.incrementAndGet();
+                            sleep(5);
+                            continue;
+                        }
+                        if (slow) {
+                            slowLatencies.add(System.nanoTime() - started);
+                            (priority == Priority.READ ? slowReads : slowWrites).incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            Thread.sleep(500);
+            queryMillis.set(40);
+            Thread.sleep(200);
+            slowedDown.set(true);
+        }
+
+        then(toTest.limit()).isLessThan(8);
+        then(shed.get()).isPositive();
+        then(slowWrites.get()).isGreaterThan(slowReads.get());
+        then(percentile(slowLatencies, 0.99)).isLessThan(Duration.ofMillis(300));
+    }
+
+    private ConcurrencyLimiter limiter(int initial, int min, int max, double readShare, Duration maxWait) {
+        return new ConcurrencyLimiter(
+                new Settings(initial, min, max, THRESHOLD, 0.5, readShare, Duration.ofSeconds(1), maxWait),
+                meterRegistry,
+                nanoTime::get);
+    }
+
+    private static boolean query(Semaphore connections, long millis) {
+        connections.acquireUninterruptibly();
+        try {
+            sleep(millis);
+            return true;
+        } finally {
+            connections.release();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Duration percentile(ConcurrentLinkedQueue<Long> nanos, double percentile) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        sorted.sort(null);
+        return Duration.ofNanos(sorted.get((int) Math.ceil(percentile * sorted.size()) - 1));
+    }
+}
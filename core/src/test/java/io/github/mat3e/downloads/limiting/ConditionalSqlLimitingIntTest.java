@@ -0,0 +1,184 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+import static org.assertj.core.api.Assertions.catchException;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.storage=conditional-sql",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class ConditionalSqlLimitingIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private AssetSlotRepository slots;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void downloadStarted_limitExceeded_doesNotStoreAsset() {
+        // given
+        var accountId = AccountId.valueOf("sql-limit");
+        limiting.overrideAccountLimit(accountId, 1);
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+
+        // when
+        var exception =
+                catchException(() -> limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("US")));
+
+        then(exception).isInstanceOfSatisfying(
+                AccountLimitExceeded.class,
+                limitExceeded -> then(limitExceeded.getLimit()).isEqualTo(1));
+        thenFoundIn(limiting, accountId).containsExactly(Asset.withId("123").inCountry("US"));
+    }
+
+    @Test
+    void downloadStarted_sameAsset_reportsDuplicate() {
+        // given
+        var accountId = AccountId.valueOf("sql-duplicate");
+        limiting.overrideAccountLimit(accountId, 2);
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+
+        thenFoundIn(limiting, accountId).containsExactly(Asset.withId("123").inCountry("US"));
+        then(recordedEvent())
+                .extracting("accountId", "asset")
+                .containsExactly(accountId, Asset.withId("123").inCountry("US"));
+
+        // when at the limit
+        limiting.overrideAccountLimit(accountId, 1);
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+
+        thenFoundIn(limiting, accountId).containsExactly(Asset.withId("123").inCountry("US"));
+    }
+
+    @Test
+    void downloadStarted_sameAssetDifferentCountry_storesAndReportsAsset() {
+        // given
+        var accountId = AccountId.valueOf("sql-country");
+        limiting.overrideAccountLimit(accountId, 2);
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("FR"));
+
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("123").inCountry("DE"),
+                Asset.withId("123").inCountry("FR"));
+        then(recordedEvent())
+                .extracting("accountId", "asset", "existingAssetCountry")
+                .containsExactly(accountId, Asset.withId("123").inCountry("FR"), "DE");
+    }
+
+    @Test
+    void assetRemoved_newDownloadStarted_keepsOrder() {
+        // given
+        var accountId = AccountId.valueOf("sql-removal");
+        limiting.overrideAccountLimit(accountId, 2);
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("DE"));
+
+        // when
+        limiting.removeDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("789").inCountry("DE"));
+
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("456").inCountry("DE"),
+                Asset.withId("789").inCountry("DE"));
+
+        // when
+        limiting.removeDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+
+        then(recordedEvent())
+                .extracting("accountId", "asset")
+                .containsExactly(accountId, Asset.withId("123").inCountry("DE"));
+    }
+
+    @Test
+    void concurrentDownloads_admitExactlyLimit() throws InterruptedException, ExecutionException {
+        // given
+        var accountId = AccountId.valueOf("sql-concurrent");
+        limiting.overrideAccountLimit(accountId, 5);
+
+        // when
+        List<Future<Boolean>> results;
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            results = executor.invokeAll(IntStream.range(0, 20)
+                    .<Callable<Boolean>>mapToObj(i -> () -> {
+                        try {
+                            limiting.assignDownloadedAsset(accountId, Asset.withId("asset-" + i).inCountry("US"));
+                            return true;
+                        } catch (AccountLimitExceeded exceeded) {
+                            return false;
+                        }
+                    })
+                    .toList());
+        }
+
+        int admitted = 0;
+        for (var result : results) {
+            admitted += result.get() ? 1 : 0;
+        }
+        then(admitted).isEqualTo(5);
+        thenFoundIn(limiting, accountId).hasSize(5);
+    }
+
+    @Test
+    void countLeftBehindByOtherStorage_recounted_admitsUpToLimit() {
+        // given
+        var accountId = AccountId.valueOf("sql-recount");
+        limiting.overrideAccountLimit(accountId, 2);
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+        // and
+        jdbc.update("update downloading_accounts set asset_count = 2 where id = ?", accountId.getId());
+
+        // when
+        int recounted = slots.recountAssets();
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("US"));
+
+        then(recounted).isPositive();
+        thenFoundIn(limiting, accountId).hasSize(2);
+    }
+
+    private DomainEvent recordedEvent() {
+        var captor = ArgumentCaptor.forClass(DomainEvent.class);
+        BDDMockito.then(reporting).should().recordEvent(captor.capture());
+        return captor.getValue();
+    }
+}
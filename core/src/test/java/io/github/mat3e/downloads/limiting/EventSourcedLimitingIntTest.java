@@ -0,0 +1,148 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.AssetChangeLogged;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+import static org.assertj.core.api.Assertions.catchException;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.storage=event-sourced",
+        "downloads.limiting.event-sourced.snapshot-every=2",
+        "downloads.limiting.event-sourced.relay.settle=0s",
+        "downloads.limiting.event-sourced.relay.interval=1h",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class EventSourcedLimitingIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private AccountEventRelay relay;
+
+    @Autowired
+    private AccountEventStore store;
+
+    @Autowired
+    private NamedParameterJdbcOperations jdbc;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void assetsChanged_rebuildsAccountFromSnapshotAndTail() {
+        // given
+        var accountId = AccountId.valueOf("event-sourced");
+        limiting.overrideAccountLimit(accountId, 2);
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("DE"));
+        limiting.removeDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("PL"));
+        var exception =
+                catchException(() -> limiting.assignDownloadedAsset(accountId, Asset.withId("789").inCountry("DE")));
+
+        then(exception).isInstanceOf(AccountLimitExceeded.class);
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("456").inCountry("DE"),
+                Asset.withId("123").inCountry("PL"));
+        then(count("select count(*) from account_events where account = :id", accountId)).isEqualTo(4);
+        then(count("select version from account_snapshots where account = :id", accountId)).isEqualTo(4);
+        then(count("select count(*) from downloaded_assets where account = :id", accountId)).isZero();
+    }
+
+    @Test
+    void relay_passesNewEventsToReporting() {
+        // given
+        var accountId = AccountId.valueOf("event-relay");
+        limiting.overrideAccountLimit(accountId, 2);
+        relay.relay();
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        limiting.removeDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+
+        // when
+        int relayed = relay.relay();
+
+        then(relayed).isEqualTo(2);
+        var captor = ArgumentCaptor.forClass(DomainEvent.class);
+        BDDMockito.then(reporting).should(BDDMockito.atLeastOnce()).recordEvent(captor.capture());
+        then(captor.getAllValues())
+                .filteredOn(AssetChangeLogged.class::isInstance)
+                .extracting("accountId", "asset", "assigned")
+                .containsExactly(
+                        tuple(accountId, Asset.withId("123").inCountry("DE"), true),
+                        tuple(accountId, Asset.withId("123").inCountry("DE"), false));
+    }
+
+    @Test
+    void relay_restarted_continuesFromRelayedPosition() {
+        // given
+        var accountId = AccountId.valueOf("event-restart");
+        limiting.overrideAccountLimit(accountId, 2);
+        relay.relay();
+        // and appended while no relay runs
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+
+        // when
+        int relayed;
+        try (var restarted =
+                     new AccountEventRelay(store, reporting, Clock.systemUTC(), Duration.ZERO, Duration.ofHours(1))) {
+            relayed = restarted.relay();
+        }
+
+        then(relayed).isEqualTo(1);
+        then(relay.relay()).isZero();
+    }
+
+    @Test
+    void relay_unsettledEvent_stopsBeforeIt() {
+        // given
+        var accountId = AccountId.valueOf("event-unsettled");
+        limiting.overrideAccountLimit(accountId, 2);
+        relay.relay();
+        // and appended, but not committed yet when the relay runs
+        jdbc.update("""
+                        insert into account_events (account, version, type, asset_id, country_code, occurred_at)
+                        values (:id, 1, 'ASSIGNED', '123', 'DE', :occurredAt)""",
+                Map.of("id", accountId.getId(), "occurredAt", Timestamp.from(Instant.now().plus(Duration.ofHours(1)))));
+        // and appended later, but committed first
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("DE"));
+
+        // expect
+        then(relay.relay()).isZero();
+
+        // when
+        jdbc.update("update account_events set occurred_at = :now where account = :id", Map.of(
+                "id", accountId.getId(),
+                "now", Timestamp.from(Instant.now())));
+
+        then(relay.relay()).isEqualTo(2);
+    }
+
+    private int count(String sql, AccountId accountId) {
+        return jdbc.queryForObject(sql, Map.of("id", accountId.getId()), Integer.class);
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class JournalLimitingTest extends LimitingTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
+
+    @Override
+    LimitingTestSetup setUp(ReportingFacade reporting) {
+        return LimitingTestSetup.journaled(newDirectory(), reporting);
+    }
+
+    @Test
+    void restart_replaysJournal() {
+        // given
+        var directory = newDirectory();
+        try (var store = new JournalAccountStore(directory, Duration.ofDays(1), false)) {
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 2));
+            var account = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            account.assignAsset(Asset.withId("123").inCountry("US"), Clock.systemUTC());
+            store.accounts().save(account);
+        }
+
+        // when
+        try (var restarted = new JournalAccountStore(directory, Duration.ofDays(1), false)) {
+            then(restarted.accounts().findById(ACCOUNT_ID).orElseThrow().assets())
+                    .containsExactly(Asset.withId("123").inCountry("US"));
+            then(restarted.settings().findById(ACCOUNT_ID).orElseThrow().limit()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void restart_afterCompaction_replaysSnapshotAndNewerChanges() {
+        // given
+        var directory = newDirectory();
+        try (var store = new JournalAccountStore(directory, Duration.ofDays(1), false)) {
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 2));
+            store.compact();
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 3));
+        }
+
+        // when
+        try (var restarted = new JournalAccountStore(directory, Duration.ofDays(1), false)) {
+            then(restarted.settings().findById(ACCOUNT_ID).orElseThrow().limit()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void save_staleVersion_throws() {
+        try (var store = new JournalAccountStore(newDirectory(), Duration.ofDays(1), false)) {
+            // given
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 2));
+            var account = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            var concurrentAccount = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            store.accounts().save(account);
+
+            // expect
+            assertThatExceptionOfType(OptimisticLockingFailureException.class)
+                    .isThrownBy(() -> store.accounts().save(concurrentAccount));
+        }
+    }
+
+    @Test
+    void configuration_downloadWindow_failsStartup() {
+        try (var store = new JournalAccountStore(newDirectory(), Duration.ofDays(1), false)) {
+            // given
+            var configuration = new LimitingConfiguration(Clock.systemUTC(), null, null, null);
+            var window = new DownloadWindow(5, Duration.ofDays(30), 30, Duration.ofSeconds(5));
+
+            // expect
+            assertThatExceptionOfType(IllegalStateException.class)
+                    .isThrownBy(() -> configuration.journalFacade(store, window, new MockEnvironment()))
+                    .withMessageContaining("downloads.limiting.window.downloads");
+        }
+    }
+
+    private static Path newDirectory() {
+        try {
+            return Files.createTempDirectory("journal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.LimitingIntTest.AccountWithLimit;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.group-id=key-ordered",
+        "downloads.limiting.limit-changes.workers=2"
+})
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = "limit-changes")
+class KeyOrderedLimitChangesIntTest {
+    private static final String TOPIC = "limit-changes";
+
+    @Autowired
+    private KafkaTemplate<String, AccountWithLimit> kafkaTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafka;
+
+    @MockBean
+    private LimitingFacade limiting;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void slowAccount_laterRecordsProcessed_commitsJustContiguousPrefix() throws Exception {
+        // given
+        var slowReleased = new CountDownLatch(1);
+        given(limiting.overrideAccountLimit(eq(AccountId.valueOf("slow")), anyInt())).willAnswer(invocation -> {
+            slowReleased.await();
+            return true;
+        });
+        given(limiting.overrideAccountLimit(eq(AccountId.valueOf("fast")), anyInt())).willReturn(true);
+
+        // when
+        kafkaTemplate.send(TOPIC, new AccountWithLimit("slow", 1)).get();
+        kafkaTemplate.send(TOPIC, new AccountWithLimit("fast", 1)).get();
+        kafkaTemplate.send(TOPIC, new AccountWithLimit("fast", 2)).get();
+
+        await().atMost(10, SECONDS).untilAsserted(() -> BDDMockito.then(limiting).should()
+                .overrideAccountLimit(AccountId.valueOf("fast"), 2));
+        // offsets 1 and 2 acknowledged, but not committed past the slow offset 0
+        Thread.sleep(Duration.ofSeconds(1));
+        then(committedOffset()).isNull();
+
+        // when
+        slowReleased.countDown();
+
+        await().atMost(10, SECONDS).untilAsserted(() -> then(committedOffset())
+                .isNotNull()
+                .extracting(OffsetAndMetadata::offset)
+                .isEqualTo(3L));
+    }
+
+    private OffsetAndMetadata committedOffset() throws Exception {
+        return KafkaTestUtils.getCurrentOffset(embeddedKafka.getBrokersAsString(), "key-ordered", TOPIC, 0);
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+
+@SpringBootTest(properties = "spring.kafka.listener.auto-startup=false")
+@ActiveProfiles("test")
+class LimitingConcurrencyIntTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("concurrent");
+    private static final int OPERATIONS = 100;
+
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Test
+    void limitChangesAndDownloads_doNotConflict() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, OPERATIONS);
+        var conflicts = new AtomicInteger();
+
+        // when
+        var limitChanges = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int limit = OPERATIONS + i % 2;
+                countingConflicts(conflicts, () -> limiting.overrideAccountLimit(ACCOUNT_ID, limit));
+            }
+        });
+        var downloads = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                var asset = Asset.withId("asset-" + i).inCountry("US");
+                countingConflicts(conflicts, () -> limiting.assignDownloadedAsset(ACCOUNT_ID, asset));
+            }
+        });
+        CompletableFuture.allOf(limitChanges, downloads).join();
+
+        then(conflicts).hasValue(0);
+        thenFoundIn(limiting, ACCOUNT_ID).hasSize(OPERATIONS);
+    }
+
+    private static void countingConflicts(AtomicInteger conflicts, Runnable operation) {
+        try {
+            operation.run();
+        } catch (RuntimeException exception) {
+            if (!isConflict(exception)) {
+                throw exception;
+            }
+            conflicts.incrementAndGet();
+        }
+    }
+
+    private static boolean isConflict(Throwable exception) {
+        for (var cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockingFailureException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
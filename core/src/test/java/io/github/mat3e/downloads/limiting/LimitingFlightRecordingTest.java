@@ -0,0 +1,74 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.groups.Tuple.tuple;
+
+class LimitingFlightRecordingTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void facadeOperations_recordedWithOutcomes() throws IOException {
+        // given
+        var facade = new LimitingTestSetup(event -> {
+        }).facade();
+
+        // when
+        var events = recorded(() -> {
+            facade.overrideAccountLimit(ACCOUNT_ID, 1);
+            facade.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+            then(catchThrowable(() -> facade.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"))))
+                    .isInstanceOf(AccountLimitExceeded.class);
+            facade.findForAccount(ACCOUNT_ID);
+        });
+
+        then(events)
+                .filteredOn(event -> event.getEventType().getName().equals(LimitingOperationEvent.NAME))
+                .extracting(
+                        event -> event.getString("operation"),
+                        event -> event.getString("accountId"),
+                        event -> event.getString("outcome"))
+                .containsExactly(
+                        tuple("override", "1", "ok"),
+                        tuple("assign", "1", "ok"),
+                        tuple("assign", "1", "AccountLimitExceeded"),
+                        tuple("find", "1", "ok"));
+        then(events)
+                .filteredOn(event -> event.getEventType().getName().equals(AccountStorageEvent.NAME))
+                .extracting(event -> event.getString("operation"), event -> event.getInt("assetCount"))
+                .containsExactly(
+                        tuple("load", 0),
+                        tuple("save", 1),
+                        tuple("load", 1),
+                        tuple("load", 1));
+    }
+
+    private List<RecordedEvent> recorded(Runnable action) throws IOException {
+        try (var recording = new Recording()) {
+            recording.enable(LimitingOperationEvent.class);
+            recording.enable(AccountStorageEvent.class);
+            recording.start();
+            action.run();
+            recording.stop();
+            var file = directory.resolve("limiting.jfr");
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }
+    }
+}
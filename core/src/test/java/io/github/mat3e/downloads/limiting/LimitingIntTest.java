@@ -3,22 +3,35 @@ package io.github.mat3e.downloads.limiting;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import io.github.mat3e.downloads.limiting.api.AccountId;
 import io.github.mat3e.downloads.limiting.api.Asset;
 import io.github.mat3e.downloads.limiting.api.AssetDeserialization;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletResponse;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -30,6 +43,7 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @Transactional
@@ -37,9 +51,13 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest
 @TestInstance(PER_CLASS)
 @ActiveProfiles("test")
-@EmbeddedKafka(partitions = 1, brokerProperties = {"listeners=PLAINTEXT://localhost:9092", "port=9092"})
+@EmbeddedKafka(
+        partitions = 1,
+        topics = {"asset-download-rejections", "limit-changes-dlt"},
+        brokerProperties = {"listeners=PLAINTEXT://localhost:9092", "port=9092"})
 class LimitingIntTest {
     private static final String ACCOUNT_ID = "1";
+    private static final String STREAMING_ACCOUNT_ID = "2";
 
     @Autowired
     private MockMvc mockMvc;
@@ -47,6 +65,24 @@ class LimitingIntTest {
     @Autowired
     private KafkaTemplate<String, AccountWithLimit> kafkaTemplate;
 
+    @Autowired
+    private KafkaTemplate<String, AssetDownload> downloadsTemplate;
+
+    @Autowired
+    private KafkaTemplate<String, RequestRateChange> ratesTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafka;
+
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
     @Test
     void downloadStarted_storesAssetsTillLimit() throws Exception {
         givenAccountLimitMessage(2);
@@ -91,6 +127,109 @@ class LimitingIntTest {
                 Asset.withId("789").inCountry("US"));
     }
 
+    @Test
+    void downloadRecords_storesAssetsTillLimit() throws Exception {
+        givenAccountLimitMessage(STREAMING_ACCOUNT_ID, 1);
+        // and
+        await().atMost(5, SECONDS).until(apiExposesData(STREAMING_ACCOUNT_ID));
+
+        try (var rejections = consumer("asset-download-rejections")) {
+            // when
+            whenDownloadRecord(new AssetDownload(STREAMING_ACCOUNT_ID, "123", "US"));
+            // and
+            whenDownloadRecord(new AssetDownload(STREAMING_ACCOUNT_ID, "456", "US"));
+
+            then(KafkaTestUtils.getSingleRecord(rejections, "asset-download-rejections", Duration.ofSeconds(5)).value())
+                    .contains("\"assetId\":\"456\"")
+                    .contains("\"limit\":1");
+        }
+        then(httpSuccessfulGetAssets(STREAMING_ACCOUNT_ID)).containsExactly(Asset.withId("123").inCountry("US"));
+    }
+
+    @Test
+    void invalidLimit_goesStraightToDeadLetterTopic() throws Exception {
+        try (var deadLetters = consumer("limit-changes-dlt")) {
+            // when
+            givenAccountLimitMessage("4", -1);
+
+            then(KafkaTestUtils.getSingleRecord(deadLetters, "limit-changes-dlt", Duration.ofSeconds(5)).value())
+                    .contains("\"limit\":-1");
+        }
+        await().atMost(5, SECONDS).until(() -> meterRegistry.counter("limit.changes.dead.letters").count() == 1);
+        then(meterRegistry.counter("limit.changes.retries").count()).isZero();
+        then(limiting.findForAccount(AccountId.valueOf("4"))).isEmpty();
+    }
+
+    @Test
+    void overrideLimit_sameLimit_reportsNoChange() {
+        var accountId = AccountId.valueOf("3");
+
+        then(limiting.overrideAccountLimit(accountId, 1)).isTrue();
+        then(limiting.overrideAccountLimit(accountId, 1)).isFalse();
+        then(limiting.overrideAccountLimit(accountId, 2)).isTrue();
+        then(limiting.findForAccount(accountId)).hasValue(List.of());
+    }
+
+    @Test
+    void overrideLimit_noLimitYet_setsIt() {
+        // given
+        jdbc.update("insert into downloading_accounts (id) values ('no-limit')");
+
+        // expect
+        then(limiting.overrideAccountLimit(AccountId.valueOf("no-limit"), 1)).isTrue();
+        then(jdbc.queryForObject("select limitation from downloading_accounts where id = 'no-limit'", Integer.class))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void requestRateExceeded_returnsTooManyRequests() throws Exception {
+        // given
+        var validBody = "{ \"id\": \"123\", \"countryCode\": \"US\" }";
+
+        // when
+        ratesTemplate.send("request-rate-changes", new RequestRateChange("5", 0.001, 1)).get();
+
+        // expect a single request reaching the (missing) account, then 429 without touching the DB
+        await().atMost(5, SECONDS).until(() -> httpPostAssetForAccount("5", validBody)
+                .andReturn().getResponse().getStatus() == HttpStatus.TOO_MANY_REQUESTS.value());
+        httpPostAssetForAccount("5", validBody)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1000"));
+    }
+
+    @Test
+    void downloadStarted_recordsDownloadTimeKeptOnLaterChanges() {
+        // given
+        var accountId = AccountId.valueOf("6");
+        limiting.overrideAccountLimit(accountId, 2);
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("US"));
+        var downloadedAt = downloadTimes(accountId);
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("US"));
+
+        then(downloadedAt).hasSize(1);
+        then(downloadTimes(accountId)).hasSize(2).containsAll(downloadedAt).allMatch(Objects::nonNull);
+    }
+
+    @Test
+    void assetAssignedAndAnotherRemoved_encodesJustTheStoredOneInLookupTables() {
+        // given
+        var accountId = AccountId.valueOf("7");
+        limiting.overrideAccountLimit(accountId, 1);
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("stored").inCountry("PL"));
+        limiting.removeDownloadedAsset(accountId, Asset.withId("never-stored").inCountry("ZZ"));
+
+        then(jdbc.queryForList("select asset_id from asset_codes", String.class))
+                .contains("stored")
+                .doesNotContain("never-stored");
+        then(jdbc.queryForList("select country_code from country_codes", String.class))
+                .contains("PL")
+                .doesNotContain("ZZ");
+    }
+
     @Test
     void illegalParams_returnsClientError() throws Exception {
         // given
@@ -123,8 +262,12 @@ class LimitingIntTest {
     }
 
     private Collection<Asset> httpSuccessfulGetAssets() {
+        return httpSuccessfulGetAssets(ACCOUNT_ID);
+    }
+
+    private Collection<Asset> httpSuccessfulGetAssets(String accountId) {
         try {
-            String jsonResponse = httpGetAssets(ACCOUNT_ID)
+            String jsonResponse = httpGetAssets(accountId)
                     .andExpect(status().isOk())
                     .andReturn().getResponse().getContentAsString();
             JavaType returnType =
@@ -160,15 +303,50 @@ class LimitingIntTest {
     }
 
     void givenAccountLimitMessage(int limit) throws ExecutionException, InterruptedException {
-        kafkaTemplate.send("limit-changes", new AccountWithLimit(ACCOUNT_ID, limit)).get();
+        givenAccountLimitMessage(ACCOUNT_ID, limit);
+    }
+
+    void givenAccountLimitMessage(String accountId, int limit) throws ExecutionException, InterruptedException {
+        kafkaTemplate.send("limit-changes", new AccountWithLimit(accountId, limit)).get();
+    }
+
+    private void whenDownloadRecord(AssetDownload download) throws ExecutionException, InterruptedException {
+        downloadsTemplate.send("asset-downloads", download.accountId(), download).get();
+    }
+
+    private List<Timestamp> downloadTimes(AccountId accountId) {
+        return jdbc.queryForList(
+                "select downloaded_at from downloaded_assets where account = ?",
+                Timestamp.class,
+                accountId.getId());
+    }
+
+    private Consumer<String, String> consumer(String topic) {
+        var consumer = new DefaultKafkaConsumerFactory<>(
+                KafkaTestUtils.consumerProps(topic, "true", embeddedKafka),
+                new StringDeserializer(),
+                new StringDeserializer()
+        ).createConsumer();
+        embeddedKafka.consumeFromAnEmbeddedTopic(consumer, topic);
+        return consumer;
     }
 
     private Callable<Boolean> apiExposesData() {
+        return apiExposesData(ACCOUNT_ID);
+    }
+
+    private Callable<Boolean> apiExposesData(String accountId) {
         return () -> HttpServletResponse.SC_OK == mockMvc.perform(
-                get("/api/accounts/{id}/assets", ACCOUNT_ID).contentType(APPLICATION_JSON)
+                get("/api/accounts/{id}/assets", accountId).contentType(APPLICATION_JSON)
         ).andReturn().getResponse().getStatus();
     }
 
     record AccountWithLimit(String accountId, int limit) {
     }
+
+    record RequestRateChange(String accountId, Double perSecond, Integer burst) {
+    }
+
+    record AssetDownload(String accountId, String assetId, String countryCode) {
+    }
 }
@@ -2,11 +2,16 @@ package io.github.mat3e.downloads.limiting;
 
 import io.github.mat3e.downloads.exceptionhandling.BusinessException;
 import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.LimitingFacade.RejectedAsset;
 import io.github.mat3e.downloads.limiting.api.AccountId;
 import io.github.mat3e.downloads.limiting.api.Asset;
 import io.github.mat3e.downloads.reporting.CapturingReportingFacade;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
 import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -18,9 +23,18 @@ class LimitingTest {
     private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
 
     private final CapturingReportingFacade reporting = new CapturingReportingFacade();
-    private final LimitingTestSetup setup = new LimitingTestSetup(reporting);
+    private final LimitingTestSetup setup = setUp(reporting);
     private final LimitingFacade limiting = setup.facade();
 
+    LimitingTestSetup setUp(ReportingFacade reporting) {
+        return new LimitingTestSetup(reporting);
+    }
+
+    @AfterEach
+    void tearDown() {
+        setup.close();
+    }
+
     @Test
     void findAccount_unknownAccount_returnsEmpty() {
         assertThat(limiting.findForAccount(ACCOUNT_ID)).isEmpty();
@@ -49,6 +63,13 @@ class LimitingTest {
                 .withMessageContaining("negative");
     }
 
+    @Test
+    void overrideLimit_sameLimit_reportsNoChange() {
+        then(limiting.overrideAccountLimit(ACCOUNT_ID, 1)).isTrue();
+        then(limiting.overrideAccountLimit(ACCOUNT_ID, 1)).isFalse();
+        then(limiting.overrideAccountLimit(ACCOUNT_ID, 2)).isTrue();
+    }
+
     @Test
     void downloadStarted_limitNotExceeded_storesAsset() {
         // given
@@ -75,6 +96,38 @@ class LimitingTest {
         thenFoundIn(limiting, ACCOUNT_ID).containsExactly(Asset.withId("123").inCountry("US"));
     }
 
+    @Test
+    void downloadsBatch_limitExceeded_storesAssetsTillLimit() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 2);
+
+        // when
+        var rejected = limiting.assignDownloadedAssets(ACCOUNT_ID, List.of(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US"),
+                Asset.withId("789").inCountry("US")));
+
+        then(rejected)
+                .extracting(RejectedAsset::asset)
+                .containsExactly(Asset.withId("789").inCountry("US"));
+        then(rejected.get(0).reason()).isInstanceOf(AccountLimitExceeded.class);
+        thenFoundIn(limiting, ACCOUNT_ID).containsExactly(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US"));
+    }
+
+    @Test
+    void downloadsBatch_notExistingAccount_rejectsAll() {
+        // when
+        var rejected = limiting.assignDownloadedAssets(ACCOUNT_ID, List.of(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US")));
+
+        then(rejected).hasSize(2).allSatisfy(rejectedAsset -> then(rejectedAsset.reason().getMessage())
+                .contains("not found")
+                .contains(ACCOUNT_ID.getId()));
+    }
+
     @Test
     void downloadStarted_sameAsset_doesNotStoreAsset() {
         // given
@@ -123,6 +176,19 @@ class LimitingTest {
                 .containsExactly(tuple(ACCOUNT_ID, Asset.withId("123").inCountry("US")));
     }
 
+    @Test
+    void rejectedOrRemovedNeverStored_doesNotEncodeAsset() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 0);
+
+        // when
+        catchException(() -> limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("never-stored").inCountry("US")));
+        limiting.removeDownloadedAsset(ACCOUNT_ID, Asset.withId("never-stored").inCountry("ZZ"));
+
+        then(setup.codes().findAsset("never-stored")).isEqualTo(AssetCodes.ABSENT);
+        then(setup.codes().findCountry("ZZ")).isEqualTo(AssetCodes.ABSENT);
+    }
+
     @Test
     void assetRemoved_newDownloadStarted_storesAsset() {
         // given
@@ -0,0 +1,32 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class MigrationsTest {
+    @Test
+    void migrate_freshH2_appliesAllMigrations() {
+        // given
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:migrations;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+        var flyway = Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration", "classpath:db/vendor/h2")
+                .load();
+
+        // when
+        var result = flyway.migrate();
+
+        then(result.success).isTrue();
+        then(flyway.info().pending()).isEmpty();
+        then(new JdbcTemplate(dataSource).queryForList(
+                "select data_type from information_schema.columns where column_name = 'PACKED_ASSETS'",
+                String.class))
+                .hasSize(3)
+                .containsOnly("BINARY LARGE OBJECT");
+    }
+}
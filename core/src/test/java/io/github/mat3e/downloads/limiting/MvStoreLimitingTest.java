@@ -0,0 +1,67 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class MvStoreLimitingTest extends LimitingTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
+
+    @Override
+    LimitingTestSetup setUp(ReportingFacade reporting) {
+        return LimitingTestSetup.mvStore(newFile(), reporting);
+    }
+
+    @Test
+    void restart_readsCommittedAccounts() {
+        // given
+        var file = newFile();
+        try (var store = new MvStoreAccountStore(file, false)) {
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 2));
+            var account = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            account.assignAsset(Asset.withId("123").inCountry("US"), Clock.systemUTC());
+            store.accounts().save(account);
+        }
+
+        // when
+        try (var restarted = new MvStoreAccountStore(file, false)) {
+            then(restarted.accounts().findById(ACCOUNT_ID).orElseThrow().assets())
+                    .containsExactly(Asset.withId("123").inCountry("US"));
+            then(restarted.settings().findById(ACCOUNT_ID).orElseThrow().limit()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void save_staleVersion_throws() {
+        try (var store = new MvStoreAccountStore(newFile(), false)) {
+            // given
+            store.settings().upsertLimit(AccountSetting.newFor(ACCOUNT_ID, 2));
+            var account = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            var concurrentAccount = store.accounts().findById(ACCOUNT_ID).orElseThrow();
+            store.accounts().save(account);
+
+            // expect
+            assertThatExceptionOfType(OptimisticLockingFailureException.class)
+                    .isThrownBy(() -> store.accounts().save(concurrentAccount));
+        }
+    }
+
+    private static Path newFile() {
+        try {
+            return Files.createTempDirectory("mvstore").resolve("accounts.mv");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
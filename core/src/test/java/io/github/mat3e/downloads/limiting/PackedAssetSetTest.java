@@ -0,0 +1,76 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static io.github.mat3e.downloads.limiting.PackedAssetSet.pack;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class PackedAssetSetTest {
+    private final PackedAssetSet toTest = new PackedAssetSet(0);
+
+    @Test
+    void add_manyAssets_keepsInsertionOrder() {
+        // when
+        IntStream.range(0, 10_000).forEach(asset -> toTest.add(pack(asset, asset % 7)));
+        // and
+        toTest.remove(pack(0, 0));
+
+        then(toTest.size()).isEqualTo(9_999);
+        then(IntStream.range(0, toTest.size()).mapToLong(toTest::get).toArray())
+                .containsExactly(IntStream.range(1, 10_000).mapToLong(asset -> pack(asset, asset % 7)).toArray());
+        then(toTest.contains(pack(0, 0))).isFalse();
+        then(toTest.contains(pack(9_999, 9_999 % 7))).isTrue();
+    }
+
+    @Test
+    void otherCountries_sameAssetInManyCountries_returnsThemInInsertionOrder() {
+        // given
+        toTest.add(pack(1, 3));
+        toTest.add(pack(2, 3));
+        toTest.add(pack(1, 1));
+        toTest.add(pack(1, 2));
+
+        // when
+        toTest.remove(pack(1, 1));
+
+        then(toTest.otherCountries(pack(1, 2))).containsExactly(3);
+        then(toTest.otherCountries(pack(1, 4))).containsExactly(3, 2);
+        then(toTest.add(pack(1, 2))).isFalse();
+    }
+
+    @Test
+    void stamp_followsItsEntry() {
+        // given
+        IntStream.range(0, 100).forEach(asset -> toTest.add(pack(asset, 1), 1_000 + asset));
+
+        // when
+        toTest.remove(pack(0, 1));
+
+        then(toTest.stamp(0)).isEqualTo(1_001);
+        then(toTest.stamp(98)).isEqualTo(1_099);
+    }
+
+    @Test
+    void removeAll_removesMatchingEntriesKeepingOrderOfTheRest() {
+        // given
+        IntStream.range(0, 100).forEach(asset -> toTest.add(pack(asset, asset % 3), 1_000 + asset));
+
+        // when
+        int removed = toTest.removeAll((packed, stamp) -> stamp % 2 == 0);
+
+        then(removed).isEqualTo(50);
+        then(IntStream.range(0, toTest.size()).mapToLong(toTest::get).toArray())
+                .containsExactly(IntStream.range(0, 100)
+                        .filter(asset -> asset % 2 == 1)
+                        .mapToLong(asset -> pack(asset, asset % 3))
+                        .toArray());
+        then(toTest.stamp(0)).isEqualTo(1_001);
+        then(toTest.contains(pack(0, 0))).isFalse();
+        then(toTest.contains(pack(99, 0))).isTrue();
+        then(toTest.otherCountries(pack(4, 0))).isEmpty();
+        then(toTest.otherCountries(pack(5, 1))).containsExactly(2);
+        then(toTest.add(pack(4, 1))).isTrue();
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade.AccountLimitExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.Map;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.then;
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+import static org.assertj.core.api.Assertions.catchException;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.storage=packed-blob",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class PackedBlobLimitingIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private NamedParameterJdbcOperations jdbc;
+
+    @Autowired
+    private TransactionOperations transactions;
+
+    @Autowired
+    private StoredCodes storedCodes;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void downloadStarted_keepsAssetsInAccountRowOnly() {
+        // given
+        var accountId = AccountId.valueOf("packed");
+        limiting.overrideAccountLimit(accountId, 2);
+        // and
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+        limiting.assignDownloadedAsset(accountId, Asset.withId("456").inCountry("PL"));
+        limiting.removeDownloadedAsset(accountId, Asset.withId("123").inCountry("DE"));
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("123").inCountry("FR"));
+        var exception =
+                catchException(() -> limiting.assignDownloadedAsset(accountId, Asset.withId("789").inCountry("DE")));
+
+        then(exception).isInstanceOf(AccountLimitExceeded.class);
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("456").inCountry("PL"),
+                Asset.withId("123").inCountry("FR"));
+        then(countRows(accountId)).isZero();
+    }
+
+    @Test
+    void downloadStarted_registersCodesOfStoredAssetsOnly() {
+        // given
+        var accountId = AccountId.valueOf("packed-codes");
+        limiting.overrideAccountLimit(accountId, 1);
+        limiting.assignDownloadedAsset(accountId, Asset.withId("packed-stored").inCountry("DE"));
+
+        // when
+        catchException(() ->
+                limiting.assignDownloadedAsset(accountId, Asset.withId("packed-rejected").inCountry("DE")));
+
+        then(jdbc.queryForList(
+                "select asset_id from asset_codes where asset_id like 'packed-%'",
+                Map.of(),
+                String.class)).containsExactly("packed-stored");
+    }
+
+    @Test
+    void migration_movesAssetsBothWays() {
+        // given
+        var accountId = AccountId.valueOf("packed-migration");
+        limiting.overrideAccountLimit(accountId, 3);
+        // and
+        givenRow(accountId, "123", "DE", 0);
+        givenRow(accountId, "456", "DE", 1);
+        var migration = new PackedBlobMigration(jdbc, transactions, storedCodes);
+
+        // when
+        migration.pack();
+
+        thenFoundIn(limiting, accountId).containsExactly(
+                Asset.withId("123").inCountry("DE"),
+                Asset.withId("456").inCountry("DE"));
+        then(countRows(accountId)).isZero();
+
+        // when
+        limiting.assignDownloadedAsset(accountId, Asset.withId("789").inCountry("US"));
+        // and
+        migration.unpack();
+
+        then(countRows(accountId)).isEqualTo(3);
+        then(jdbc.queryForList(
+                "select asset_id from downloaded_assets where account = :id order by downloading_accounts_key",
+                Map.of("id", accountId.getId()),
+                String.class)).containsExactly("123", "456", "789");
+        thenFoundIn(limiting, accountId).isEmpty();
+    }
+
+    private void givenRow(AccountId accountId, String assetId, String countryCode, int key) {
+        jdbc.update("""
+                        insert into downloaded_assets (asset_id, country_code, version, account, downloading_accounts_key)
+                        values (:assetId, :countryCode, 0, :id, :key)""",
+                Map.of("assetId", assetId, "countryCode", countryCode, "id", accountId.getId(), "key", key));
+    }
+
+    private int countRows(AccountId accountId) {
+        return jdbc.queryForObject(
+                "select count(*) from downloaded_assets where account = :id",
+                Map.of("id", accountId.getId()),
+                Integer.class);
+    }
+}
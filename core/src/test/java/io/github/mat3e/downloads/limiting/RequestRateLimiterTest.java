@@ -0,0 +1,128 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter.RequestRate;
+import io.github.mat3e.downloads.limiting.RequestRateLimiter.RequestRateExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class RequestRateLimiterTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
+    private static final AccountId OTHER_ACCOUNT_ID = AccountId.valueOf("2");
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final RequestRateLimiter toTest =
+            new RequestRateLimiter(new RequestRate(2, 3), Duration.ofMinutes(1), nanoTime::get);
+
+    @AfterEach
+    void close() {
+        toTest.close();
+    }
+
+    @Test
+    void acquire_burstUsed_rejectsWithTimeTillNextToken() {
+        // given
+        IntStream.range(0, 3).forEach(i -> toTest.acquire(ACCOUNT_ID));
+
+        // when
+        var rejection = catchThrowable(() -> toTest.acquire(ACCOUNT_ID));
+
+        then(rejection).isInstanceOf(RequestRateExceeded.class);
+        then(((RequestRateExceeded) rejection).getRetryAfter()).isEqualTo(Duration.ofMillis(500));
+        // and
+        toTest.acquire(OTHER_ACCOUNT_ID);
+    }
+
+    @Test
+    void acquire_afterWaiting_refillsUpToBurst() {
+        // given
+        IntStream.range(0, 3).forEach(i -> toTest.acquire(ACCOUNT_ID));
+
+        // when
+        nanoTime.addAndGet(Duration.ofMillis(500).toNanos());
+
+        // expect
+        toTest.acquire(ACCOUNT_ID);
+        then(catchThrowable(() -> toTest.acquire(ACCOUNT_ID))).isInstanceOf(RequestRateExceeded.class);
+
+        // when
+        nanoTime.addAndGet(Duration.ofMinutes(10).toNanos());
+
+        // expect
+        IntStream.range(0, 3).forEach(i -> toTest.acquire(ACCOUNT_ID));
+        then(catchThrowable(() -> toTest.acquire(ACCOUNT_ID))).isInstanceOf(RequestRateExceeded.class);
+    }
+
+    @Test
+    void overrideRate_appliesToAccountTillReset() {
+        // given
+        toTest.acquire(ACCOUNT_ID);
+
+        // when
+        toTest.overrideRate(ACCOUNT_ID, new RequestRate(1, 1));
+
+        // expect
+        toTest.acquire(ACCOUNT_ID);
+        then(catchThrowable(() -> toTest.acquire(ACCOUNT_ID))).isInstanceOf(RequestRateExceeded.class);
+
+        // when
+        toTest.overrideRate(ACCOUNT_ID, null);
+
+        // expect
+        IntStream.range(0, 3).forEach(i -> toTest.acquire(ACCOUNT_ID));
+    }
+
+    @Test
+    void requestRate_notPositive_throws() {
+        then(catchThrowable(() -> new RequestRate(0, 1))).isInstanceOf(BusinessException.class);
+        then(catchThrowable(() -> new RequestRate(1, 0))).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void evictIdle_removesJustFullBuckets() {
+        // given
+        toTest.acquire(ACCOUNT_ID);
+        nanoTime.addAndGet(Duration.ofMinutes(2).toNanos());
+        // and
+        IntStream.range(0, 3).forEach(i -> toTest.acquire(OTHER_ACCOUNT_ID));
+
+        // when
+        toTest.evictIdle();
+
+        then(toTest.bucketCount()).isEqualTo(1);
+    }
+
+    @Test
+    void acquire_concurrently_grantsExactlyBurst() {
+        // given
+        var granted = new AtomicInteger();
+
+        // when
+        try (var clients = Executors.newFixedThreadPool(8)) {
+            IntStream.range(0, 100)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        try {
+                            toTest.acquire(ACCOUNT_ID);
+                            granted.incrementAndGet();
+                        } catch (RequestRateExceeded ignored) {
+                            // expected for most of the calls
+                        }
+                    }, clients))
+                    .toList()
+                    .forEach(CompletableFuture::join);
+        }
+
+        then(granted).hasValue(3);
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.awaitility.Awaitility.await;
+
+class SingleFlightTest {
+    private final SingleFlight<String, String> toTest = new SingleFlight<>();
+
+    @Test
+    void load_concurrentCalls_shareSingleLoad() {
+        // given
+        var loads = new AtomicInteger();
+        var released = new CountDownLatch(1);
+        var leader = loadInThread(() -> {
+            loads.incrementAndGet();
+            waitFor(released);
+            return "loaded";
+        });
+        await().atMost(5, SECONDS).until(() -> loads.get() == 1);
+
+        // when
+        var followers = IntStream.range(0, 10)
+                .mapToObj(i -> loadInThread(() -> "loaded again " + loads.incrementAndGet()))
+                .toList();
+        await().atMost(5, SECONDS).until(() -> followers.stream().allMatch(Flight::waiting));
+        released.countDown();
+
+        then(leader.result().join()).isEqualTo("loaded");
+        then(followers).extracting(follower -> follower.result().join()).containsOnly("loaded");
+        then(loads).hasValue(1);
+    }
+
+    @Test
+    void load_afterForget_startsNewLoad() {
+        // given
+        var released = new CountDownLatch(1);
+        var staleLoad = loadInThread(() -> {
+            waitFor(released);
+            return "before write";
+        });
+        await().atMost(5, SECONDS).until(staleLoad::waiting);
+
+        // when
+        toTest.forget("key");
+
+        then(toTest.load("key", () -> "after write")).isEqualTo("after write");
+        released.countDown();
+        then(staleLoad.result().join()).isEqualTo("before write");
+    }
+
+    @Test
+    void load_failure_propagatesAndIsNotKept() {
+        // when
+        var failure = catchThrowable(() -> toTest.load("key", () -> {
+            throw new IllegalStateException("failure");
+        }));
+
+        then(failure).isInstanceOf(IllegalStateException.class);
+        then(toTest.load("key", () -> "loaded")).isEqualTo("loaded");
+    }
+
+    private Flight loadInThread(Supplier<String> loader) {
+        var result = new CompletableFuture<String>();
+        var thread = Thread.ofPlatform().start(() -> result.complete(toTest.load("key", loader)));
+        return new Flight(thread, result);
+    }
+
+    private static void waitFor(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Flight(Thread thread, CompletableFuture<String> result) {
+        boolean waiting() {
+            return thread.getState() == Thread.State.WAITING;
+        }
+    }
+}
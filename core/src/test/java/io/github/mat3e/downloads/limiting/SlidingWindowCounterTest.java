@@ -0,0 +1,68 @@
+package io.github.mat3e.downloads.limiting;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class SlidingWindowCounterTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    private final SlidingWindowCounter toTest = new SlidingWindowCounter(Duration.ofDays(30), 30, 100 * DAY);
+
+    @Test
+    void tryAdd_limitReached_rejects() {
+        // given
+        IntStream.range(0, 3).forEach(i -> toTest.tryAdd(100 * DAY, 3));
+
+        // expect
+        then(toTest.tryAdd(100 * DAY + 1, 3)).isFalse();
+        then(toTest.count(100 * DAY + 1)).isEqualTo(3);
+    }
+
+    @Test
+    void count_oldBucketsLeaveTheWindow() {
+        // given
+        toTest.tryAdd(100 * DAY, 10);
+        toTest.tryAdd(110 * DAY, 10);
+        toTest.tryAdd(110 * DAY, 10);
+
+        // expect
+        then(toTest.count(129 * DAY)).isEqualTo(3);
+        then(toTest.count(130 * DAY)).isEqualTo(2);
+        then(toTest.count(140 * DAY)).isZero();
+        then(toTest.tryAdd(1_000 * DAY, 1)).isTrue();
+        then(toTest.count(1_000 * DAY)).isEqualTo(1);
+    }
+
+    @Test
+    void add_rebuildingFromPast_countsJustTheWindow() {
+        // given
+        var rebuilt = new SlidingWindowCounter(Duration.ofDays(30), 30, 100 * DAY);
+
+        // when
+        rebuilt.add(60 * DAY);
+        rebuilt.add(rebuilt.windowStart(100 * DAY));
+        rebuilt.add(99 * DAY);
+        rebuilt.add(100 * DAY);
+
+        then(rebuilt.windowStart(100 * DAY)).isEqualTo(71 * DAY);
+        then(rebuilt.count(100 * DAY)).isEqualTo(3);
+    }
+
+    @Test
+    void remove_takesBackFromTheBucket() {
+        // given
+        toTest.tryAdd(100 * DAY, 1);
+
+        // when
+        toTest.remove(100 * DAY);
+
+        then(toTest.tryAdd(100 * DAY, 1)).isTrue();
+        // and outside the window nothing to take back
+        toTest.remove(10 * DAY);
+        then(toTest.count(100 * DAY)).isEqualTo(1);
+    }
+}
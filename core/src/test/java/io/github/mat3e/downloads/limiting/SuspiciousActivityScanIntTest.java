@@ -0,0 +1,81 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.out.AssetHeldByManyAccounts;
+import io.github.mat3e.downloads.limiting.event.out.SuspiciousLimitingEvent;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "downloads.limiting.suspicious-scan.countries-per-account=3",
+        "downloads.limiting.suspicious-scan.accounts-per-asset=3",
+        "downloads.limiting.suspicious-scan.parallelism=2",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class SuspiciousActivityScanIntTest {
+    @Autowired
+    private LimitingFacade limiting;
+
+    @Autowired
+    private SuspiciousActivityScan scan;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void scan_reportsCrossAccountSignals() {
+        // given
+        var traveller = AccountId.valueOf("scan-traveller");
+        limiting.overrideAccountLimit(traveller, 5);
+        limiting.assignDownloadedAsset(traveller, Asset.withId("scan-1").inCountry("US"));
+        limiting.assignDownloadedAsset(traveller, Asset.withId("scan-2").inCountry("PL"));
+        limiting.assignDownloadedAsset(traveller, Asset.withId("scan-3").inCountry("DE"));
+        limiting.assignDownloadedAsset(traveller, Asset.withId("scan-3").inCountry("PL"));
+        // and
+        var homebody = AccountId.valueOf("scan-homebody");
+        limiting.overrideAccountLimit(homebody, 5);
+        limiting.assignDownloadedAsset(homebody, Asset.withId("scan-1").inCountry("US"));
+        limiting.assignDownloadedAsset(homebody, Asset.withId("scan-shared").inCountry("US"));
+        limiting.assignDownloadedAsset(homebody, Asset.withId("scan-shared").inCountry("PL"));
+        // and
+        for (var sharing : new String[]{"scan-sharing-1", "scan-sharing-2"}) {
+            limiting.overrideAccountLimit(AccountId.valueOf(sharing), 1);
+            limiting.assignDownloadedAsset(AccountId.valueOf(sharing), Asset.withId("scan-shared").inCountry("US"));
+        }
+        clearInvocations(reporting);
+
+        // when
+        var summary = scan.scan();
+
+        then(summary.rows()).isGreaterThanOrEqualTo(9);
+        var reported = ArgumentCaptor.forClass(DomainEvent.class);
+        verify(reporting, atLeastOnce()).recordEvent(reported.capture());
+        var manyCountries = reported.getAllValues().stream()
+                .filter(SuspiciousLimitingEvent.class::isInstance)
+                .map(event -> ((SuspiciousLimitingEvent) event).accountId())
+                .toList();
+        then(manyCountries).contains(traveller).doesNotContain(homebody);
+        var manyAccounts = reported.getAllValues().stream()
+                .filter(AssetHeldByManyAccounts.class::isInstance)
+                .map(AssetHeldByManyAccounts.class::cast)
+                .toList();
+        then(manyAccounts).anySatisfy(event -> {
+            then(event.assetId()).isEqualTo("scan-shared");
+            then(event.accounts()).isEqualTo(3);
+        });
+        then(manyAccounts).noneSatisfy(event -> then(event.assetId()).isEqualTo("scan-1"));
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.mat3e.downloads.limiting;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade.DownloadWindowExceeded;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.CapturingReportingFacade;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static io.github.mat3e.downloads.limiting.BusinessAssertions.thenFoundIn;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class WindowedLimitingTest {
+    private static final AccountId ACCOUNT_ID = AccountId.valueOf("1");
+
+    private final MovingClock clock = new MovingClock();
+    private final LimitingTestSetup setup = LimitingTestSetup.windowed(
+            clock,
+            new DownloadWindow(2, Duration.ofDays(30), 30, Duration.ofSeconds(5)),
+            new CapturingReportingFacade());
+    private final LimitingFacade limiting = setup.facade();
+
+    @Test
+    void downloadStarted_windowExceeded_doesNotStoreAsset() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        // expect
+        assertThatExceptionOfType(DownloadWindowExceeded.class)
+                .isThrownBy(() -> limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("789").inCountry("US")))
+                .withMessageContaining("2 downloads per 30 days");
+        thenFoundIn(limiting, ACCOUNT_ID).containsExactly(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US"));
+    }
+
+    @Test
+    void downloadStarted_windowPassed_storesAsset() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+        clock.move(Duration.ofDays(20));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        // when
+        clock.move(Duration.ofDays(10));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("789").inCountry("US"));
+
+        // expect
+        assertThatExceptionOfType(DownloadWindowExceeded.class)
+                .isThrownBy(() -> limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("012").inCountry("US")));
+    }
+
+    @Test
+    void downloadStarted_newInstance_rebuildsWindowFromDownloadTimes() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        // when
+        var restarted = setup.facade();
+
+        // expect
+        assertThatExceptionOfType(DownloadWindowExceeded.class)
+                .isThrownBy(() -> restarted.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("789").inCountry("US")));
+    }
+
+    @Test
+    void assetRemoved_stillCountsInTheWindow() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        // when
+        limiting.removeDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+
+        // expect
+        assertThatExceptionOfType(DownloadWindowExceeded.class)
+                .isThrownBy(() -> limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US")));
+        thenFoundIn(limiting, ACCOUNT_ID).containsExactly(Asset.withId("456").inCountry("US"));
+    }
+
+    @Test
+    void downloadStarted_otherInstance_checkedBeforeLastDownloadAllowed() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        var otherInstance = setup.facade();
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+
+        // when
+        otherInstance.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        // expect
+        assertThatExceptionOfType(DownloadWindowExceeded.class)
+                .isThrownBy(() -> limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("789").inCountry("US")));
+    }
+
+    @Test
+    void downloadStarted_sameAsset_doesNotCount() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+
+        // when
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("123").inCountry("US"));
+        limiting.assignDownloadedAsset(ACCOUNT_ID, Asset.withId("456").inCountry("US"));
+
+        thenFoundIn(limiting, ACCOUNT_ID).hasSize(2);
+    }
+
+    @Test
+    void downloadsBatch_windowExceeded_rejectsTheRest() {
+        // given
+        limiting.overrideAccountLimit(ACCOUNT_ID, 10);
+
+        // when
+        var rejected = limiting.assignDownloadedAssets(ACCOUNT_ID, List.of(
+                Asset.withId("123").inCountry("US"),
+                Asset.withId("456").inCountry("US"),
+                Asset.withId("789").inCountry("US")));
+
+        then(rejected).singleElement().satisfies(rejection -> {
+            then(rejection.asset()).isEqualTo(Asset.withId("789").inCountry("US"));
+            then(rejection.reason()).isInstanceOf(DownloadWindowExceeded.class);
+        });
+    }
+
+    private static class MovingClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void move(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.mat3e.downloads.limiting.event.in;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import io.github.mat3e.downloads.limiting.LimitingFacade;
+import io.github.mat3e.downloads.limiting.LimitingFacade.RejectedAsset;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.limiting.event.in.AssetDownloadEventListener.Message;
+import io.github.mat3e.downloads.limiting.event.in.AssetDownloadEventListener.Rejection;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+class AssetDownloadEventListenerTest {
+    private static final AccountId FIRST = AccountId.valueOf("first");
+    private static final AccountId SECOND = AccountId.valueOf("second");
+
+    private final LimitingFacade facade = mock(LimitingFacade.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final AppliedDownloadRecords appliedRecords = new AppliedDownloadRecords(migratedDatabase());
+    private final AssetDownloadEventListener toTest =
+            new AssetDownloadEventListener(facade, kafkaTemplate, appliedRecords);
+
+    @Test
+    void execute_groupFailing_failsFromItsFirstRecordAndSkipsAppliedOnRedelivery() {
+        // given
+        var batch = List.of(record(0, FIRST, "1"), record(1, SECOND, "2"), record(2, FIRST, "3"));
+        given(facade.assignDownloadedAssets(eq(FIRST), any())).willReturn(List.of(rejected("3")));
+        given(facade.assignDownloadedAssets(eq(SECOND), any()))
+                .willThrow(new OptimisticLockingFailureException("concurrent change"))
+                .willReturn(List.of());
+        given(kafkaTemplate.send(anyString(), anyString(), any())).willReturn(sent());
+
+        // when
+        var failure = catchThrowable(() -> toTest.execute(batch));
+
+        then(failure).isInstanceOfSatisfying(
+                BatchListenerFailedException.class,
+                failed -> then(failed.getIndex()).isEqualTo(1));
+
+        // when redelivered from the failed record
+        toTest.execute(batch.subList(1, 3));
+
+        BDDMockito.then(facade).should(times(1)).assignDownloadedAssets(eq(FIRST), any());
+        BDDMockito.then(facade).should(times(2)).assignDownloadedAssets(eq(SECOND), any());
+        BDDMockito.then(kafkaTemplate).should(times(1))
+                .send(eq(AssetDownloadEventListener.REJECTIONS_TOPIC), eq(FIRST.getId()), any());
+    }
+
+    @Test
+    void execute_rejectionNotSent_redeliveredToAnotherInstance_sendsItAgainWithoutAssigning() {
+        // given
+        var batch = List.of(record(0, FIRST, "1"), record(1, SECOND, "2"), record(2, FIRST, "3"));
+        given(facade.assignDownloadedAssets(eq(FIRST), any())).willReturn(List.of(rejected("3")));
+        given(facade.assignDownloadedAssets(eq(SECOND), any())).willReturn(List.of());
+        given(kafkaTemplate.send(anyString(), anyString(), any()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")))
+                .willReturn(sent());
+        catchThrowable(() -> toTest.execute(batch));
+
+        // when redelivered after a restart
+        new AssetDownloadEventListener(facade, kafkaTemplate, appliedRecords).execute(batch);
+
+        BDDMockito.then(facade).should(times(1)).assignDownloadedAssets(eq(FIRST), any());
+        BDDMockito.then(facade).should(times(1)).assignDownloadedAssets(eq(SECOND), any());
+        BDDMockito.then(kafkaTemplate).should(times(2)).send(
+                eq(AssetDownloadEventListener.REJECTIONS_TOPIC),
+                eq(FIRST.getId()),
+                eq(new Rejection(FIRST.getId(), "3", "US", "Limit exceeded", null)));
+    }
+
+    @Test
+    void execute_rejectionNotSent_failsFromItsGroup() {
+        // given
+        var batch = List.of(record(0, FIRST, "1"), record(1, SECOND, "2"));
+        given(facade.assignDownloadedAssets(eq(FIRST), any())).willReturn(List.of());
+        given(facade.assignDownloadedAssets(eq(SECOND), any())).willReturn(List.of(rejected("2")));
+        given(kafkaTemplate.send(anyString(), anyString(), any()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        // when
+        var failure = catchThrowable(() -> toTest.execute(batch));
+
+        then(failure).isInstanceOfSatisfying(
+                BatchListenerFailedException.class,
+                failed -> then(failed.getIndex()).isEqualTo(1));
+    }
+
+    @Test
+    void execute_blankAssetId_rejectsWithoutAssigning() {
+        // given
+        var batch = List.of(record(0, FIRST, "1"), record(1, FIRST, null));
+        given(facade.assignDownloadedAssets(eq(FIRST), any())).willReturn(List.of());
+        given(kafkaTemplate.send(anyString(), anyString(), any())).willReturn(sent());
+
+        // when
+        toTest.execute(batch);
+
+        BDDMockito.then(facade).should().assignDownloadedAssets(FIRST, List.of(Asset.withId("1").inCountry("US")));
+        BDDMockito.then(kafkaTemplate).should()
+                .send(eq(AssetDownloadEventListener.REJECTIONS_TOPIC), eq(FIRST.getId()), any());
+    }
+
+    private static NamedParameterJdbcTemplate migratedDatabase() {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration", "classpath:db/vendor/h2").load()
+                .migrate();
+        return new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    private static ConsumerRecord<String, Message> record(long offset, AccountId accountId, String assetId) {
+        return new ConsumerRecord<>(
+                AssetDownloadEventListener.TOPIC,
+                0,
+                offset,
+                accountId.getId(),
+                new Message(accountId, assetId, "US"));
+    }
+
+    private static RejectedAsset rejected(String assetId) {
+        return new RejectedAsset(Asset.withId(assetId).inCountry("US"), new BusinessException("Limit exceeded"));
+    }
+
+    private static CompletableFuture<SendResult<String, Object>> sent() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.mat3e.downloads.limiting.rest;
+
+import io.github.mat3e.downloads.limiting.LimitingFacade;
+import io.github.mat3e.downloads.limiting.api.AccountId;
+import io.github.mat3e.downloads.limiting.api.Asset;
+import io.github.mat3e.downloads.reporting.ReportingFacade;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {
+        "downloads.limiting.idempotency.store=jdbc",
+        "spring.kafka.listener.auto-startup=false"
+})
+@ActiveProfiles("test")
+class IdempotencyIntTest {
+    private static final String ASSET = "{ \"id\": \"123\", \"countryCode\": \"US\" }";
+    private static final String OTHER_ASSET = "{ \"id\": \"456\", \"countryCode\": \"US\" }";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcIdempotentResponses responses;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @SpyBean
+    private LimitingFacade limiting;
+
+    @MockBean
+    private ReportingFacade reporting;
+
+    @Test
+    void repeatedKey_returnsStoredResponseWithoutAssigningAgain() throws Exception {
+        // given
+        var accountId = AccountId.valueOf("idempotent");
+        limiting.overrideAccountLimit(accountId, 1);
+
+        // when
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isCreated());
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isCreated());
+        // and
+        httpPostAsset(accountId, "second", OTHER_ASSET).andExpect(status().isUnprocessableEntity());
+        httpPostAsset(accountId, "second", OTHER_ASSET)
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.limit").value(1));
+
+        then(limiting.findForAccount(accountId)).hasValue(List.of(Asset.withId("123").inCountry("US")));
+        verify(limiting, times(2)).assignDownloadedAsset(eq(accountId), any());
+        // and no AssetDuplicated for the retry
+        verifyNoInteractions(reporting);
+    }
+
+    @Test
+    void repeatedKey_missingAccount_returnsStoredNotFound() throws Exception {
+        // given
+        var accountId = AccountId.valueOf("idempotent-missing");
+
+        // when
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isNotFound());
+
+        // expect
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isNotFound());
+        verify(limiting, times(1)).assignDownloadedAsset(eq(accountId), any());
+    }
+
+    @Test
+    void keyReusedForAnotherAsset_returnsBadRequest() throws Exception {
+        // given
+        var accountId = AccountId.valueOf("idempotent-reused");
+        limiting.overrideAccountLimit(accountId, 2);
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isCreated());
+
+        // when
+        httpPostAsset(accountId, "first", OTHER_ASSET).andExpect(status().isBadRequest());
+
+        // expect the same key is fine for another account
+        limiting.overrideAccountLimit(AccountId.valueOf("idempotent-other"), 1);
+        httpPostAsset(AccountId.valueOf("idempotent-other"), "first", OTHER_ASSET).andExpect(status().isCreated());
+        // and purging keeps entries neither expired nor beyond the bound
+        then(responses.purge()).isZero();
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isCreated());
+        verify(limiting, times(1)).assignDownloadedAsset(eq(accountId), any());
+    }
+
+    @Test
+    void abandonedKey_afterLease_processedAgain() throws Exception {
+        // given
+        var accountId = AccountId.valueOf("idempotent-abandoned");
+        limiting.overrideAccountLimit(accountId, 1);
+        // and reserved by an instance which died before completing the request
+        jdbc.update(
+                "insert into idempotent_responses (idempotency_key, fingerprint, created_at) values (?, ?, ?)",
+                accountId.getId() + "/first",
+                "123/US",
+                Timestamp.from(Instant.now().minus(Duration.ofMinutes(5))));
+
+        // when
+        httpPostAsset(accountId, "first", ASSET).andExpect(status().isCreated());
+
+        then(limiting.findForAccount(accountId)).hasValue(List.of(Asset.withId("123").inCountry("US")));
+    }
+
+    @Test
+    void tooLongKey_returnsBadRequest() throws Exception {
+        // given
+        var accountId = AccountId.valueOf("idempotent-long");
+        limiting.overrideAccountLimit(accountId, 1);
+
+        // expect
+        httpPostAsset(accountId, "k".repeat(255), ASSET).andExpect(status().isBadRequest());
+        verify(limiting, times(0)).assignDownloadedAsset(eq(accountId), any());
+    }
+
+    private ResultActions httpPostAsset(AccountId accountId, String idempotencyKey, String body) throws Exception {
+        return mockMvc.perform(post("/api/accounts/{id}/assets", accountId.getId())
+                .header(LimitingController.IDEMPOTENCY_KEY, idempotencyKey)
+                .contentType(APPLICATION_JSON)
+                .content(body));
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.mat3e.downloads.limiting.rest;
+
+import io.github.mat3e.downloads.exceptionhandling.BusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class InMemoryIdempotentResponsesTest {
+    private static final IdempotentRequest REQUEST = new IdempotentRequest("1/key", "123/US");
+
+    private final MovingClock clock = new MovingClock();
+    private final InMemoryIdempotentResponses toTest = new InMemoryIdempotentResponses(clock, Duration.ofHours(1), 2);
+
+    @Test
+    void reserve_reservesNewKeyTillCompleted() {
+        // when
+        var stored = toTest.reserve(REQUEST);
+
+        then(stored).isEmpty();
+        then(catchThrowable(() -> toTest.reserve(REQUEST))).isInstanceOf(IdempotentRequestInProgress.class);
+
+        // when
+        toTest.complete(REQUEST, IdempotentResponse.CREATED);
+
+        then(toTest.reserve(REQUEST)).hasValue(IdempotentResponse.CREATED);
+    }
+
+    @Test
+    void reserve_released_reservesAgain() {
+        // given
+        toTest.reserve(REQUEST);
+
+        // when
+        toTest.release(REQUEST);
+
+        then(toTest.reserve(REQUEST)).isEmpty();
+    }
+
+    @Test
+    void reserve_anotherRequestWithKey_throws() {
+        // given
+        toTest.reserve(REQUEST);
+        toTest.complete(REQUEST, IdempotentResponse.CREATED);
+
+        // when
+        var reused = catchThrowable(() -> toTest.reserve(new IdempotentRequest("1/key", "456/US")));
+
+        then(reused).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void reserve_evictsExpiredAndOldestBeyondBound() {
+        // given
+        toTest.reserve(REQUEST);
+        toTest.complete(REQUEST, IdempotentResponse.CREATED);
+
+        // when
+        clock.move(Duration.ofHours(1));
+
+        then(toTest.reserve(REQUEST)).isEmpty();
+        then(toTest.size()).isOne();
+
+        // when
+        toTest.reserve(new IdempotentRequest("1/second", "123/US"));
+        toTest.reserve(new IdempotentRequest("1/third", "123/US"));
+
+        then(toTest.size()).isEqualTo(2);
+        then(toTest.reserve(REQUEST)).isEmpty();
+    }
+
+    private static class MovingClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void move(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -9,6 +9,9 @@ import org.springframework.boot.test.system.OutputCaptureExtension;
 import java.time.Instant;
 
 import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
 
 @ExtendWith(OutputCaptureExtension.class)
 class LoggingReportingFacadeTest {
@@ -27,6 +30,19 @@ class LoggingReportingFacadeTest {
         then(output.getOut()).contains("WARN").contains("warn event");
     }
 
+    @Test
+    void recordEvent_storeFailing_stillRecords(CapturedOutput output) {
+        // given
+        var store = mock(ReportingEventStore.class);
+        willThrow(new IllegalStateException("segment full")).given(store).append(any());
+        var withStore = new LoggingReportingFacade(store);
+
+        // when
+        withStore.recordEvent(new StringEvent("stored event"));
+
+        then(output.getOut()).contains("stored event").contains("Event not stored");
+    }
+
     private static class SuspiciousStringEvent extends StringEvent {
         SuspiciousStringEvent(String value) {
             super(value);
@@ -0,0 +1,199 @@
+package io.github.mat3e.downloads.reporting;
+
+import io.github.mat3e.downloads.eventhandling.DomainEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class ReportingEventStoreTest {
+    private static final Duration PARTITION = Duration.ofDays(1);
+    private static final Duration RETENTION = Duration.ofDays(3);
+    private static final long SEGMENT_BYTES = 1 << 30;
+
+    @TempDir
+    private Path directory;
+
+    private final MovingClock clock = new MovingClock();
+    private ReportingEventStore toTest;
+
+    @AfterEach
+    void close() {
+        toTest.close();
+    }
+
+    @Test
+    void find_filtersByTimeAccountAndType() {
+        // given
+        toTest = newStore();
+        var start = clock.instant();
+        toTest.append(new Downloaded(start, "1"));
+        toTest.append(new Duplicated(start.plusSeconds(10), "1"));
+        toTest.append(new Duplicated(start.plusSeconds(20), "2"));
+        toTest.append(new Duplicated(start.plusSeconds(30), "1"));
+
+        // when
+        var page = toTest.find(new EventQuery(start, start.plusSeconds(31), "1", "Duplicated", 1));
+
+        then(page.count()).isEqualTo(2);
+        then(page.events()).singleElement().satisfies(event -> {
+            then(event.occurredOn()).isEqualTo(start.plusSeconds(10));
+            then(event.type()).isEqualTo("Duplicated");
+            then(event.aggregateId()).isEqualTo("1");
+            then(event.suspicious()).isTrue();
+            then(event.description()).isEqualTo("Duplicated by 1");
+        });
+        // and
+        then(toTest.find(new EventQuery(start, start.plusSeconds(30), null, null, 10)).count()).isEqualTo(3);
+        then(toTest.find(new EventQuery(start, start.plusSeconds(31), "3", null, 10)).count()).isZero();
+    }
+
+    @Test
+    void find_manyBlocksAcrossPartitionsAndRestart_countsEveryEvent() {
+        // given
+        toTest = newStore();
+        var start = clock.instant();
+        for (int day = 0; day < 2; day++) {
+            for (int i = 0; i < 5_000; i++) {
+                toTest.append(new Downloaded(clock.instant(), String.valueOf(i % 100)));
+                clock.move(Duration.ofSeconds(1));
+            }
+            clock.move(PARTITION);
+        }
+
+        // when
+        toTest.close();
+        toTest = newStore();
+
+        then(toTest.segmentCount()).isEqualTo(2);
+        then(Files.exists(directory.resolve(start.toEpochMilli() + ".index"))).isTrue();
+        var all = new EventQuery(start, clock.instant(), null, null, 0);
+        then(toTest.find(all).count()).isEqualTo(10_000);
+        var account = new EventQuery(start, clock.instant(), "42", null, 1000);
+        then(toTest.find(account).count()).isEqualTo(100);
+        then(toTest.find(account).events()).allSatisfy(event -> then(event.aggregateId()).isEqualTo("42"));
+        var firstHour = new EventQuery(start, start.plus(Duration.ofHours(1)), null, null, 0);
+        then(toTest.find(firstHour).count()).isEqualTo(3_600);
+    }
+
+    @Test
+    void restart_tornRecordAtEnd_truncatesItAndKeepsAppending() throws IOException {
+        // given
+        toTest = newStore();
+        var start = clock.instant();
+        toTest.append(new Downloaded(start, "1"));
+        toTest.close();
+        Files.write(
+                directory.resolve(start.toEpochMilli() + ".events"),
+                new byte[]{0, 0, 0, 42, 1, 2},
+                StandardOpenOption.APPEND);
+
+        // when
+        toTest = newStore();
+        toTest.append(new Downloaded(start.plusSeconds(1), "1"));
+
+        then(toTest.find(new EventQuery(start, start.plusSeconds(2), "1", null, 10)).events())
+                .extracting(StoredEvent::occurredOn)
+                .containsExactly(start, start.plusSeconds(1));
+    }
+
+    @Test
+    void append_beyondSegmentSize_rollsWithinPartition() {
+        // given
+        toTest = newStore(16 * 1024);
+        var start = clock.instant();
+        for (int i = 0; i < 3_000; i++) {
+            toTest.append(new Downloaded(clock.instant(), String.valueOf(i % 100)));
+            if (i % 2 == 0) {
+                clock.move(Duration.ofMillis(1));
+            }
+        }
+
+        // when
+        toTest.close();
+        toTest = newStore(16 * 1024);
+        toTest.append(new Downloaded(clock.instant(), "42"));
+
+        then(toTest.segmentCount()).isGreaterThan(2);
+        then(Files.exists(directory.resolve(start.toEpochMilli() + ".index"))).isTrue();
+        then(toTest.find(new EventQuery(start, clock.instant().plusMillis(1), null, null, 0)).count())
+                .isEqualTo(3_001);
+        then(toTest.find(new EventQuery(start, clock.instant().plusMillis(1), "42", null, 0)).count())
+                .isEqualTo(31);
+    }
+
+    @Test
+    void roll_dropsSegmentsPastRetention() {
+        // given
+        toTest = newStore();
+        var start = clock.instant();
+        toTest.append(new Downloaded(start, "1"));
+        clock.move(PARTITION);
+        toTest.append(new Downloaded(clock.instant(), "1"));
+
+        // when
+        clock.move(RETENTION);
+        toTest.roll();
+
+        then(toTest.segmentCount()).isOne();
+        then(toTest.find(new EventQuery(start, clock.instant(), "1", null, 10)).count()).isOne();
+        then(directory.resolve(start.toEpochMilli() + ".events")).doesNotExist();
+    }
+
+    private ReportingEventStore newStore() {
+        return newStore(SEGMENT_BYTES);
+    }
+
+    private ReportingEventStore newStore(long segmentBytes) {
+        return new ReportingEventStore(directory, clock, PARTITION, segmentBytes, RETENTION, false);
+    }
+
+    private record Downloaded(Instant occurredOn, String aggregateId) implements DomainEvent {
+    }
+
+    private record Duplicated(Instant occurredOn, String aggregateId) implements DomainEvent {
+        @Override
+        public boolean suspicious() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Duplicated by " + aggregateId;
+        }
+    }
+
+    private static class MovingClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void move(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
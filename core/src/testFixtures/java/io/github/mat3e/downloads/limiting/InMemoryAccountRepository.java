@@ -1,19 +1,28 @@
 package io.github.mat3e.downloads.limiting;
 
+import io.github.mat3e.downloads.limiting.api.AccountId;
 import lombok.RequiredArgsConstructor;
 
 import java.time.Clock;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 class InMemoryAccountRepository implements AccountRepository {
     private final Map<String, Account> db = new HashMap<>();
+    private final CodeDictionary codes = new CodeDictionary();
+
+    AssetCodes codes() {
+        return codes;
+    }
 
     @Override
     public Account save(Account account) {
-        return db.put(account.id().getId(), account);
+        db.put(account.id().getId(), account);
+        return account;
     }
 
     @Override
@@ -22,19 +31,60 @@ class InMemoryAccountRepository implements AccountRepository {
     }
 }
 
+class InMemoryDownloadTimes implements DownloadTimes {
+    private final Map<AccountId, List<Instant>> db = new HashMap<>();
+
+    @Override
+    public List<Instant> since(AccountId accountId, Instant from) {
+        return db.getOrDefault(accountId, List.of()).stream()
+                .filter(downloadedAt -> !downloadedAt.isBefore(from))
+                .toList();
+    }
+
+    @Override
+    public void record(AccountId accountId, Instant downloadedAt) {
+        db.computeIfAbsent(accountId, id -> new ArrayList<>()).add(downloadedAt);
+    }
+
+    @Override
+    public int forgetBefore(Instant before) {
+        int forgotten = 0;
+        for (var downloads : db.values()) {
+            int size = downloads.size();
+            downloads.removeIf(downloadedAt -> downloadedAt.isBefore(before));
+            forgotten += size - downloads.size();
+        }
+        return forgotten;
+    }
+}
+
 @RequiredArgsConstructor
 class InMemoryAccountSettingRepository implements AccountSettingRepository {
     private final Clock clock;
     private final InMemoryAccountRepository accountRepository;
     private final Map<String, AccountSetting> db = new HashMap<>();
 
-    @Override
-    public AccountSetting save(AccountSetting account) {
-        var accountOverride = new Account(account.id().getId(), new ArrayList<>(), account.limit(), null);
+    private void save(AccountSetting account) {
+        var accountOverride = new Account(
+                account.id().getId(),
+                new ArrayList<>(),
+                account.limit(),
+                null,
+                accountRepository.codes());
         accountRepository.findById(account.id()).ifPresent(existingAccount -> existingAccount.assets()
                 .forEach(asset -> accountOverride.assignAsset(asset, clock)));
         accountRepository.save(accountOverride);
-        return db.put(account.id().getId(), account);
+        db.put(account.id().getId(), account);
+    }
+
+    @Override
+    public boolean upsertLimit(AccountSetting setting) {
+        var existingSetting = db.get(setting.id().getId());
+        if (existingSetting != null && existingSetting.limit() == setting.limit()) {
+            return false;
+        }
+        save(setting);
+        return true;
     }
 
     @Override
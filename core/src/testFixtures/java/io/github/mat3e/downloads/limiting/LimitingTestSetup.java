@@ -2,12 +2,48 @@ package io.github.mat3e.downloads.limiting;
 
 import io.github.mat3e.downloads.reporting.ReportingFacade;
 
+import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 
 class LimitingTestSetup {
+    static LimitingTestSetup journaled(Path directory, ReportingFacade reportingFacade) {
+        var clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+        var store = new JournalAccountStore(directory, Duration.ofDays(1), false);
+        return new LimitingTestSetup(
+                new LimitingConfiguration(clock, store.accounts(), store.settings(), reportingFacade),
+                store.codes(),
+                store);
+    }
+
+    static LimitingTestSetup windowed(Clock clock, DownloadWindow window, ReportingFacade reportingFacade) {
+        var accountRepository = new InMemoryAccountRepository();
+        var settingsRepository = new InMemoryAccountSettingRepository(clock, accountRepository);
+        return new LimitingTestSetup(
+                new LimitingConfiguration(clock, accountRepository, settingsRepository, reportingFacade),
+                window,
+                new InMemoryDownloadTimes(),
+                accountRepository.codes(),
+                () -> {
+                });
+    }
+
+    static LimitingTestSetup mvStore(Path file, ReportingFacade reportingFacade) {
+        var clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+        var store = new MvStoreAccountStore(file, false);
+        return new LimitingTestSetup(
+                new LimitingConfiguration(clock, store.accounts(), store.settings(), reportingFacade),
+                store.codes(),
+                store);
+    }
+
     private final LimitingConfiguration creator;
+    private final DownloadWindow window;
+    private final DownloadTimes downloadTimes;
+    private final AssetCodes codes;
+    private final AutoCloseable storage;
 
     LimitingTestSetup(ReportingFacade reportingFacade) {
         this(Clock.fixed(Instant.EPOCH, ZoneOffset.UTC), reportingFacade);
@@ -17,9 +53,43 @@ class LimitingTestSetup {
         var accountRepository = new InMemoryAccountRepository();
         var settingsRepository = new InMemoryAccountSettingRepository(clock, accountRepository);
         creator = new LimitingConfiguration(clock, accountRepository, settingsRepository, reportingFacade);
+        window = DownloadWindow.NONE;
+        downloadTimes = new InMemoryDownloadTimes();
+        codes = accountRepository.codes();
+        storage = () -> {
+        };
+    }
+
+    private LimitingTestSetup(LimitingConfiguration creator, AssetCodes codes, AutoCloseable storage) {
+        this(creator, DownloadWindow.NONE, new InMemoryDownloadTimes(), codes, storage);
+    }
+
+    private LimitingTestSetup(
+            LimitingConfiguration creator,
+            DownloadWindow window,
+            DownloadTimes downloadTimes,
+            AssetCodes codes,
+            AutoCloseable storage) {
+        this.creator = creator;
+        this.window = window;
+        this.downloadTimes = downloadTimes;
+        this.codes = codes;
+        this.storage = storage;
     }
 
     LimitingFacade facade() {
-        return creator.facade();
+        return creator.facade(window, downloadTimes);
+    }
+
+    AssetCodes codes() {
+        return codes;
+    }
+
+    void close() {
+        try {
+            storage.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
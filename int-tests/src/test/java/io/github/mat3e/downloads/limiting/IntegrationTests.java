@@ -154,12 +154,15 @@ class IntegrationTests {
         @Autowired
         private JdbcTemplate jdbc;
 
+        @Autowired
+        private StoredCodes codes;
+
         private final Clock clock = Clock.fixed(Instant.now(), ZoneOffset.UTC);
 
         @Test
         void accountLifecycle() {
             // given
-            var account = new Account("test", emptyList(), 1, null);
+            var account = new Account("test", emptyList(), 1, null, codes);
 
             // when
             systemUnderTest.save(account);
@@ -184,7 +187,7 @@ class IntegrationTests {
         @Test
         void accountDbConstraints() {
             // given
-            var account = new Account("test", new ArrayList<>(), 10, null);
+            var account = new Account("test", new ArrayList<>(), 10, null, codes);
             // and
             account.assignAsset(Asset.withId("test-asset").inCountry("US"), clock);
 
@@ -216,19 +219,18 @@ class IntegrationTests {
             var accountSetting = AccountSetting.newFor(AccountId.valueOf("test"), 1);
 
             // when
-            systemUnderTest.save(accountSetting);
+            boolean inserted = systemUnderTest.upsertLimit(accountSetting);
 
+            then(inserted).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(insertedAccount -> {
                 then(insertedAccount.limit()).isEqualTo(1);
                 then(insertedAccount).extracting("version").isEqualTo(0);
             });
 
             // when
-            systemUnderTest.findById("test").ifPresent(existingAccount -> {
-                existingAccount.overrideLimit(2);
-                systemUnderTest.save(existingAccount);
-            });
+            boolean updated = systemUnderTest.upsertLimit(AccountSetting.newFor(AccountId.valueOf("test"), 2));
 
+            then(updated).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(updatedAccount -> {
                 then(updatedAccount.limit()).isEqualTo(2);
                 then(updatedAccount).extracting("version").isEqualTo(1);
@@ -171,12 +171,15 @@ class SharedReusedTestcontainersIntegrationTests {
         @Autowired
         private JdbcTemplate jdbc;
 
+        @Autowired
+        private StoredCodes codes;
+
         private final Clock clock = Clock.fixed(Instant.now(), ZoneOffset.UTC);
 
         @Test
         void accountLifecycle() {
             // given
-            var account = new Account("test", emptyList(), 1, null);
+            var account = new Account("test", emptyList(), 1, null, codes);
 
             // when
             systemUnderTest.save(account);
@@ -201,7 +204,7 @@ class SharedReusedTestcontainersIntegrationTests {
         @Test
         void accountDbConstraints() {
             // given
-            var account = new Account("test", new ArrayList<>(), 10, null);
+            var account = new Account("test", new ArrayList<>(), 10, null, codes);
             // and
             account.assignAsset(Asset.withId("test-asset").inCountry("US"), clock);
 
@@ -233,19 +236,18 @@ class SharedReusedTestcontainersIntegrationTests {
             var accountSetting = AccountSetting.newFor(AccountId.valueOf("test"), 1);
 
             // when
-            systemUnderTest.save(accountSetting);
+            boolean inserted = systemUnderTest.upsertLimit(accountSetting);
 
+            then(inserted).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(insertedAccount -> {
                 then(insertedAccount.limit()).isEqualTo(1);
                 then(insertedAccount).extracting("version").isEqualTo(0);
             });
 
             // when
-            systemUnderTest.findById("test").ifPresent(existingAccount -> {
-                existingAccount.overrideLimit(2);
-                systemUnderTest.save(existingAccount);
-            });
+            boolean updated = systemUnderTest.upsertLimit(AccountSetting.newFor(AccountId.valueOf("test"), 2));
 
+            then(updated).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(updatedAccount -> {
                 then(updatedAccount.limit()).isEqualTo(2);
                 then(updatedAccount).extracting("version").isEqualTo(1);
@@ -16,14 +16,20 @@ import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -185,12 +191,26 @@ class SlicedIntegrationTests {
         @Autowired
         private JdbcTemplate jdbc;
 
+        @Autowired
+        private StoredCodes codes;
+
+        /* as the slice doesn't load LimitingConfiguration, Spring Data passes this bean to loaded accounts */
+        @TestConfiguration
+        static class Codes {
+            @Bean
+            StoredCodes storedCodes(NamedParameterJdbcOperations jdbc, PlatformTransactionManager transactionManager) {
+                var registering = new TransactionTemplate(transactionManager);
+                registering.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                return new StoredCodes(jdbc, registering);
+            }
+        }
+
         private final Clock clock = Clock.fixed(Instant.now(), ZoneOffset.UTC);
 
         @Test
         void accountLifecycle() {
             // given
-            var account = new Account("test", emptyList(), 1, null);
+            var account = new Account("test", emptyList(), 1, null, codes);
 
             // when
             systemUnderTest.save(account);
@@ -215,7 +235,7 @@ class SlicedIntegrationTests {
         @Test
         void accountDbConstraints() {
             // given
-            var account = new Account("test", new ArrayList<>(), 10, null);
+            var account = new Account("test", new ArrayList<>(), 10, null, codes);
             // and
             account.assignAsset(Asset.withId("test-asset").inCountry("US"), clock);
 
@@ -248,19 +268,18 @@ class SlicedIntegrationTests {
             var accountSetting = AccountSetting.newFor(AccountId.valueOf("test"), 1);
 
             // when
-            systemUnderTest.save(accountSetting);
+            boolean inserted = systemUnderTest.upsertLimit(accountSetting);
 
+            then(inserted).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(insertedAccount -> {
                 then(insertedAccount.limit()).isEqualTo(1);
                 then(insertedAccount).extracting("version").isEqualTo(0);
             });
 
             // when
-            systemUnderTest.findById("test").ifPresent(existingAccount -> {
-                existingAccount.overrideLimit(2);
-                systemUnderTest.save(existingAccount);
-            });
+            boolean updated = systemUnderTest.upsertLimit(AccountSetting.newFor(AccountId.valueOf("test"), 2));
 
+            then(updated).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(updatedAccount -> {
                 then(updatedAccount.limit()).isEqualTo(2);
                 then(updatedAccount).extracting("version").isEqualTo(1);
@@ -164,12 +164,15 @@ class TestcontainersIntegrationTests {
         @Autowired
         private JdbcTemplate jdbc;
 
+        @Autowired
+        private StoredCodes codes;
+
         private final Clock clock = Clock.fixed(Instant.now(), ZoneOffset.UTC);
 
         @Test
         void accountLifecycle() {
             // given
-            var account = new Account("test", emptyList(), 1, null);
+            var account = new Account("test", emptyList(), 1, null, codes);
 
             // when
             systemUnderTest.save(account);
@@ -194,7 +197,7 @@ class TestcontainersIntegrationTests {
         @Test
         void accountDbConstraints() {
             // given
-            var account = new Account("test", new ArrayList<>(), 10, null);
+            var account = new Account("test", new ArrayList<>(), 10, null, codes);
             // and
             account.assignAsset(Asset.withId("test-asset").inCountry("US"), clock);
 
@@ -214,6 +217,38 @@ class TestcontainersIntegrationTests {
         }
     }
 
+    @Nested
+    @IntegrationTest
+    class PackedAssetsColumnsTest {
+        // well above 64 KB, which plain blob holds on MariaDB
+        private static final byte[] MANY_ASSETS = new byte[256 * 1024];
+
+        @Autowired
+        private JdbcTemplate jdbc;
+
+        @Test
+        void packedAssets_overBlobSize_storedWhole() {
+            // when
+            jdbc.update(
+                    "insert into downloading_accounts (id, limitation, packed_assets) values ('big', 1, ?)",
+                    (Object) MANY_ASSETS);
+            jdbc.update(
+                    "insert into account_snapshots (account, version, packed_assets) values ('big', 1, ?)",
+                    (Object) MANY_ASSETS);
+            jdbc.update("insert into account_listings (account, packed_assets) values ('big', ?)", (Object) MANY_ASSETS);
+
+            then(storedSize("downloading_accounts", "id")).isEqualTo(MANY_ASSETS.length);
+            then(storedSize("account_snapshots", "account")).isEqualTo(MANY_ASSETS.length);
+            then(storedSize("account_listings", "account")).isEqualTo(MANY_ASSETS.length);
+        }
+
+        private int storedSize(String table, String idColumn) {
+            return jdbc.queryForObject(
+                    "select length(packed_assets) from " + table + " where " + idColumn + " = 'big'",
+                    Integer.class);
+        }
+    }
+
     @Nested
     @IntegrationTest
     class AccountSettingRepositoryTest {
@@ -226,19 +261,18 @@ class TestcontainersIntegrationTests {
             var accountSetting = AccountSetting.newFor(AccountId.valueOf("test"), 1);
 
             // when
-            systemUnderTest.save(accountSetting);
+            boolean inserted = systemUnderTest.upsertLimit(accountSetting);
 
+            then(inserted).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(insertedAccount -> {
                 then(insertedAccount.limit()).isEqualTo(1);
                 then(insertedAccount).extracting("version").isEqualTo(0);
             });
 
             // when
-            systemUnderTest.findById("test").ifPresent(existingAccount -> {
-                existingAccount.overrideLimit(2);
-                systemUnderTest.save(existingAccount);
-            });
+            boolean updated = systemUnderTest.upsertLimit(AccountSetting.newFor(AccountId.valueOf("test"), 2));
 
+            then(updated).isTrue();
             then(systemUnderTest.findById(accountSetting.id())).hasValueSatisfying(updatedAccount -> {
                 then(updatedAccount.limit()).isEqualTo(2);
                 then(updatedAccount).extracting("version").isEqualTo(1);
@@ -13,10 +13,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Clock;
-import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.BDDAssertions.and;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
@@ -39,34 +39,33 @@ class UnitTests {
         }
 
         @Test
-        void newAccount_overrideLimit_createsAccount() {
+        void overrideLimit_upsertsAccountSetting() {
             // given
             var accountId = AccountId.valueOf("1");
-            when(accountSettingRepository.findById(accountId)).thenReturn(Optional.empty());
+            when(accountSettingRepository.upsertLimit(any(AccountSetting.class))).thenReturn(true);
 
             // when
-            systemUnderTest.overrideAccountLimit(accountId, 1);
+            boolean changed = systemUnderTest.overrideAccountLimit(accountId, 1);
 
             // then
+            assertThat(changed).isTrue();
             var accountSettingCaptor = ArgumentCaptor.forClass(AccountSetting.class);
-            verify(accountSettingRepository).save(accountSettingCaptor.capture());
+            verify(accountSettingRepository).upsertLimit(accountSettingCaptor.capture());
             assertThat(accountSettingCaptor.getValue().id()).isEqualTo(accountId);
             assertThat(accountSettingCaptor.getValue().limit()).isEqualTo(1);
         }
 
         @Test
-        void existingAccount_overrideLimit_updatesAccount() {
+        void sameLimit_overrideLimit_reportsNoChange() {
             // given
             var accountId = AccountId.valueOf("1");
-            var existingAccount = mock(AccountSetting.class);
-            when(accountSettingRepository.findById(accountId)).thenReturn(Optional.of(existingAccount));
+            when(accountSettingRepository.upsertLimit(any(AccountSetting.class))).thenReturn(false);
 
             // when
-            systemUnderTest.overrideAccountLimit(accountId, 1);
+            boolean changed = systemUnderTest.overrideAccountLimit(accountId, 1);
 
             // then
-            verify(existingAccount).overrideLimit(1);
-            verify(accountSettingRepository).save(existingAccount);
+            assertThat(changed).isFalse();
         }
     }
 
@@ -90,30 +89,29 @@ class UnitTests {
         private ArgumentCaptor<AccountSetting> accountSettingCaptor;
 
         @Test
-        void newAccount_overrideLimit_createsAccount() {
+        void overrideLimit_upsertsAccountSetting() {
             var accountId = AccountId.valueOf("1");
-            given(accountSettingRepository.findById(accountId)).willReturn(Optional.empty());
+            given(accountSettingRepository.upsertLimit(any(AccountSetting.class))).willReturn(true);
 
             // when
-            systemUnderTest.overrideAccountLimit(accountId, 1);
+            boolean changed = systemUnderTest.overrideAccountLimit(accountId, 1);
 
-            then(accountSettingRepository).should().save(accountSettingCaptor.capture());
+            and.then(changed).isTrue();
+            then(accountSettingRepository).should().upsertLimit(accountSettingCaptor.capture());
             var account = accountSettingCaptor.getValue();
             and.then(account.id()).isEqualTo(accountId);
             and.then(account.limit()).isEqualTo(1);
         }
 
         @Test
-        void existingAccount_overrideLimit_updatesAccount() {
+        void sameLimit_overrideLimit_reportsNoChange() {
             var accountId = AccountId.valueOf("1");
-            var existingAccount = new AccountSetting(accountId.getId(), 2, 1);
-            given(accountSettingRepository.findById(accountId)).willReturn(Optional.of(existingAccount));
+            given(accountSettingRepository.upsertLimit(any(AccountSetting.class))).willReturn(false);
 
             // when
-            systemUnderTest.overrideAccountLimit(accountId, 1);
+            boolean changed = systemUnderTest.overrideAccountLimit(accountId, 1);
 
-            then(accountSettingRepository).should().save(existingAccount);
-            and.then(existingAccount.limit()).isEqualTo(1);
+            and.then(changed).isFalse();
         }
     }
 }